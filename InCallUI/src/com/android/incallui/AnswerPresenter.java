@@ -225,6 +225,8 @@ public class AnswerPresenter extends Presenter<AnswerPresenter.AnswerUi>
             mVideoState = call.getVideoState();
             final List<String> textMsgs = mCalls.getTextResponses(call.getId());
             configureAnswerTargetsForSms(call, textMsgs);
+            CallSetupTracer.getInstance().mark(call.getId(),
+                    CallSetupTracer.MILESTONE_ANSWER_UI_INTERACTIVE);
         }
     }
 
@@ -34,6 +34,7 @@ import android.telecom.TelecomManager;
 import android.telecom.VideoProfile;
 import android.telephony.SubscriptionManager;
 import android.text.TextUtils;
+import android.view.Choreographer;
 
 import com.android.contacts.common.CallUtil;
 import com.android.contacts.common.compat.CallSdkCompat;
@@ -41,6 +42,8 @@ import com.android.contacts.common.compat.CompatUtils;
 import com.android.contacts.common.compat.SdkVersionOverride;
 import com.android.contacts.common.compat.telecom.TelecomManagerCompat;
 import com.android.contacts.common.testing.NeededForTesting;
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
 import com.android.dialer.util.IntentUtil;
 import com.android.incallui.util.TelecomCallUtil;
 
@@ -302,81 +305,111 @@ public class Call {
 
     private static final String ID_PREFIX = Call.class.getSimpleName() + "_";
     private static int sIdCounter = 0;
+    /** Bumped on every {@link #setState}, so indexes of calls by state can detect changes. */
+    private static int sStateVersion = 0;
 
     private final android.telecom.Call.Callback mTelecomCallCallback =
         new android.telecom.Call.Callback() {
             @Override
             public void onStateChanged(android.telecom.Call call, int newState) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call + " newState="
-                        + newState);
-                update();
+                if (Log.DEBUG) {
+                    Log.dFormat(this, "TelecomCallCallback onStateChanged call=%s newState=%d",
+                            call, newState);
+                }
+                // State changes are latency sensitive, so flush them right away.
+                updateNow();
             }
 
             @Override
             public void onParentChanged(android.telecom.Call call,
                     android.telecom.Call newParent) {
-                Log.d(this, "TelecomCallCallback onParentChanged call=" + call + " newParent="
-                        + newParent);
-                update();
+                if (Log.DEBUG) {
+                    Log.dFormat(this, "TelecomCallCallback onParentChanged call=%s newParent=%s",
+                            call, newParent);
+                }
+                scheduleUpdate();
             }
 
             @Override
             public void onChildrenChanged(android.telecom.Call call,
                     List<android.telecom.Call> children) {
-                update();
+                scheduleUpdate();
             }
 
             @Override
             public void onDetailsChanged(android.telecom.Call call,
                     android.telecom.Call.Details details) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call + " details="
-                        + details);
-                update();
+                if (Log.DEBUG) {
+                    Log.dFormat(this, "TelecomCallCallback onDetailsChanged call=%s details=%s",
+                            call, details);
+                }
+                scheduleUpdate();
             }
 
             @Override
             public void onCannedTextResponsesLoaded(android.telecom.Call call,
                     List<String> cannedTextResponses) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call
-                        + " cannedTextResponses=" + cannedTextResponses);
-                update();
+                if (Log.DEBUG) {
+                    Log.dFormat(this, "TelecomCallCallback onCannedTextResponsesLoaded call=%s"
+                            + " cannedTextResponses=%s", call, cannedTextResponses);
+                }
+                scheduleUpdate();
             }
 
             @Override
             public void onPostDialWait(android.telecom.Call call,
                     String remainingPostDialSequence) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call
-                        + " remainingPostDialSequence=" + remainingPostDialSequence);
-                update();
+                if (Log.DEBUG) {
+                    Log.dFormat(this, "TelecomCallCallback onPostDialWait call=%s"
+                            + " remainingPostDialSequence=%s", call, remainingPostDialSequence);
+                }
+                scheduleUpdate();
             }
 
             @Override
             public void onVideoCallChanged(android.telecom.Call call,
                     VideoCall videoCall) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call + " videoCall="
-                        + videoCall);
-                update();
+                if (Log.DEBUG) {
+                    Log.dFormat(this, "TelecomCallCallback onVideoCallChanged call=%s videoCall=%s",
+                            call, videoCall);
+                }
+                scheduleUpdate();
             }
 
             @Override
             public void onCallDestroyed(android.telecom.Call call) {
-                Log.d(this, "TelecomCallCallback onStateChanged call=" + call);
+                if (Log.DEBUG) {
+                    Log.dFormat(this, "TelecomCallCallback onCallDestroyed call=%s", call);
+                }
                 call.unregisterCallback(this);
+                cancelPendingUpdate();
             }
 
             @Override
             public void onConferenceableCallsChanged(android.telecom.Call call,
                     List<android.telecom.Call> conferenceableCalls) {
-                update();
+                scheduleUpdate();
             }
 
             @Override
             public void onConnectionEvent(android.telecom.Call call, String event, Bundle extras) {
-                Log.d(this, "TelecomCallCallback onConnectionEvent call=" + call);
-                update();
+                if (Log.DEBUG) {
+                    Log.dFormat(this, "TelecomCallCallback onConnectionEvent call=%s", call);
+                }
+                scheduleUpdate();
             }
     };
 
+    private final Choreographer.FrameCallback mUpdateFrameCallback =
+            new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    mIsUpdatePending = false;
+                    update();
+                }
+            };
+    private boolean mIsUpdatePending;
+
     boolean mIsActiveSub = false;
     public static final String ACTIVE_SUBSCRIPTION = "active_sub";
     private android.telecom.Call mTelecomCall;
@@ -465,6 +498,38 @@ public class Call {
         return mVideoSettings;
     }
 
+    /**
+     * Folds a telecom callback into a single update on the next frame. IMS conference calls in
+     * particular deliver bursts of details, children and conferenceable-call changes within a few
+     * milliseconds; each of them used to trigger a full CallList and InCallPresenter fan-out.
+     */
+    private void scheduleUpdate() {
+        if (mIsUpdatePending) {
+            Logger.incrementCounter(PerformanceMetric.INCALL_UPDATE_COALESCED);
+            return;
+        }
+        mIsUpdatePending = true;
+        Choreographer.getInstance().postFrameCallback(mUpdateFrameCallback);
+    }
+
+    /**
+     * Runs an update immediately, absorbing any update that was scheduled for the next frame.
+     */
+    private void updateNow() {
+        if (mIsUpdatePending) {
+            Logger.incrementCounter(PerformanceMetric.INCALL_UPDATE_COALESCED);
+            cancelPendingUpdate();
+        }
+        update();
+    }
+
+    private void cancelPendingUpdate() {
+        if (mIsUpdatePending) {
+            mIsUpdatePending = false;
+            Choreographer.getInstance().removeFrameCallback(mUpdateFrameCallback);
+        }
+    }
+
     private void update() {
         Trace.beginSection("Update");
         int oldState = getState();
@@ -479,7 +544,9 @@ public class Call {
     }
 
     private void updateFromTelecomCall(boolean registerCallback) {
-        Log.d(this, "updateFromTelecomCall: " + mTelecomCall.toString());
+        if (Log.DEBUG) {
+            Log.dFormat(this, "updateFromTelecomCall: %s", mTelecomCall);
+        }
         final int translatedState = translateState(mTelecomCall.getState());
         if (mState != State.BLOCKED) {
             setState(translatedState);
@@ -487,7 +554,8 @@ public class Call {
             maybeCancelVideoUpgrade(mTelecomCall.getDetails().getVideoState());
         }
 
-        if (registerCallback && mTelecomCall.getVideoCall() != null) {
+        if (registerCallback && mTelecomCall.getVideoCall() != null
+                && mRegisteredVideoCall != mTelecomCall.getVideoCall()) {
             if (mVideoCallCallback == null) {
                 mVideoCallCallback = new InCallVideoCallCallback(this);
             }
@@ -711,7 +779,17 @@ public class Call {
         return mState;
     }
 
+    /**
+     * Returns a counter that changes whenever {@link #setState} is called on any call.
+     */
+    static int getStateVersion() {
+        return sStateVersion;
+    }
+
     public void setState(int state) {
+        if (mState != state) {
+            sStateVersion++;
+        }
         mState = state;
         if (mState == State.INCOMING) {
             mLogState.isIncoming = true;
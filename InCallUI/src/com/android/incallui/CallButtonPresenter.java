@@ -557,8 +557,10 @@ public class CallButtonPresenter extends Presenter<CallButtonPresenter.CallButto
             //is mean that call can upgrade to Rx video call for voice call only.
             showRx = (VideoProfile.isBidirectional(mCall.getVideoState()) || isAudioAndVtCap);
             showVolte = VideoProfile.isVideo(mCall.getVideoState());
-            Log.v(this, "updateButtonsState showRxTx = " + showRxTx +
-                    " showRx" + showRx + " showVolte = " + showVolte);
+            if (Log.VERBOSE) {
+                Log.vFormat(this, "updateButtonsState showRxTx = %b showRx = %b showVolte = %b",
+                        showRxTx, showRx, showVolte);
+            }
         }
 
         ui.showButton(BUTTON_AUDIO, true);
@@ -569,7 +571,9 @@ public class CallButtonPresenter extends Presenter<CallButtonPresenter.CallButto
         ui.showButton(BUTTON_ADD_CALL, showAddCall);
         ui.showButton(BUTTON_UPGRADE_TO_VIDEO, showUpgradeToVideo && !mEnhanceEnable);
         ui.showButton(BUTTON_DOWNGRADE_TO_AUDIO, showDowngradeToAudio && !useExt);
-        Log.v(this, "updateButtonsState sIsHideMe: " + sIsHideMe);
+        if (Log.VERBOSE) {
+            Log.vFormat(this, "updateButtonsState sIsHideMe: %b", sIsHideMe);
+        }
         ui.setHideMe(sIsHideMe);
         // show switch camera button only if video call is NOT in hideme mode
         ui.showButton(BUTTON_SWITCH_CAMERA, isVideo && !sIsHideMe);
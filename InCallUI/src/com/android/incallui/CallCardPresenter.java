@@ -233,7 +233,9 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi>
 
     @Override
     public void onStateChange(InCallState oldState, InCallState newState, CallList callList) {
-        Log.d(this, "onStateChange() " + newState);
+        if (Log.DEBUG) {
+            Log.dFormat(this, "onStateChange() %s", newState);
+        }
         final CallCardUi ui = getUi();
         if (ui == null) {
             return;
@@ -267,8 +269,10 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi>
             }
         }
 
-        Log.d(this, "Primary call: " + primary);
-        Log.d(this, "Secondary call: " + secondary);
+        if (Log.DEBUG) {
+            Log.dFormat(this, "Primary call: %s", primary);
+            Log.dFormat(this, "Secondary call: %s", secondary);
+        }
 
         final boolean primaryChanged = !(Call.areSame(mPrimary, primary) &&
                 Call.areSameNumber(mPrimary, primary));
@@ -885,7 +889,9 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi>
                     showContactPhoto,
                     hasWorkCallProperty);
         } else if (mPrimaryContactInfo != null) {
-            Log.d(TAG, "Update primary display info for " + mPrimaryContactInfo);
+            if (Log.DEBUG) {
+                Log.dFormat(this, "Update primary display info for %s", mPrimaryContactInfo);
+            }
 
             String name = getNameForCall(mPrimaryContactInfo);
             String number;
@@ -977,7 +983,9 @@ public class CallCardPresenter extends Presenter<CallCardPresenter.CallCardUi>
                     mSecondary.isVideoCall(mContext),
                     mIsFullscreen);
         } else if (mSecondaryContactInfo != null && !notUpdateSecondary) {
-            Log.d(TAG, "updateSecondaryDisplayInfo() " + mSecondaryContactInfo);
+            if (Log.DEBUG) {
+                Log.dFormat(this, "updateSecondaryDisplayInfo() %s", mSecondaryContactInfo);
+            }
             String name = getNameForCall(mSecondaryContactInfo);
             boolean nameIsNumber = name != null && name.equals(mSecondaryContactInfo.number);
             ui.setSecondary(
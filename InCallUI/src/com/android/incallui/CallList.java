@@ -25,6 +25,7 @@ import android.telecom.PhoneAccount;
 import com.android.contacts.common.testing.NeededForTesting;
 import com.android.dialer.database.FilteredNumberAsyncQueryHandler;
 import com.android.dialer.logging.Logger;
+import com.android.dialer.util.TimingWheel;
 import com.android.incallui.util.TelecomCallUtil;
 
 import com.google.common.base.Preconditions;
@@ -32,9 +33,11 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import android.telecom.PhoneAccountHandle;
 import android.telephony.SubscriptionManager;
+import android.util.SparseArray;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -54,7 +57,6 @@ public class CallList {
     private static final int DISCONNECTED_CALL_MEDIUM_TIMEOUT_MS = 2000;
     private static final int DISCONNECTED_CALL_LONG_TIMEOUT_MS = 5000;
 
-    private static final int EVENT_DISCONNECTED_TIMEOUT = 1;
     private static final int EVENT_NOTIFY_CHANGE = 2;
     private static final long BLOCK_QUERY_TIMEOUT_MS = 1000;
 
@@ -63,6 +65,27 @@ public class CallList {
     private final HashMap<String, Call> mCallById = new HashMap<>();
     private final HashMap<android.telecom.Call, Call> mCallByTelecomCall = new HashMap<>();
     private final HashMap<String, List<String>> mCallTextReponsesMap = Maps.newHashMap();
+    private CallListChange mLastChange = CallListChange.UNKNOWN;
+    /** The calls as of the last generic notification, which the next change is computed from. */
+    private CallListSnapshot mNotifiedSnapshot = CallListSnapshot.EMPTY;
+    /**
+     * The current calls, published to readers on any thread. It is immutable, so handing it out
+     * costs nothing. Refreshed on every generic notification, and also when calls are added,
+     * disconnected or removed without one, so that it never shows a call that has ended.
+     */
+    private volatile CallListSnapshot mSnapshot = CallListSnapshot.EMPTY;
+    /** Calls in mCallById grouped by state, each list ordered by the time the call was added. */
+    private final SparseArray<List<Call>> mCallsByState = new SparseArray<>();
+    /** {@link Call#getStateVersion()} when mCallsByState was last rebuilt. */
+    private int mIndexedStateVersion = -1;
+
+    private static final Comparator<Call> CALL_ADDED_ORDER = new Comparator<Call>() {
+        @Override
+        public int compare(Call lhs, Call rhs) {
+            int result = Long.compare(lhs.getTimeAddedMs(), rhs.getTimeAddedMs());
+            return result != 0 ? result : lhs.getId().compareTo(rhs.getId());
+        }
+    };
     /**
      * ConcurrentHashMap constructor params: 8 is initial table size, 0.9f is
      * load factor before resizing, 1 means we only expect a single thread to
@@ -75,6 +98,7 @@ public class CallList {
     private final Set<Call> mPendingDisconnectCalls = Collections.newSetFromMap(
             new ConcurrentHashMap<Call, Boolean>(8, 0.9f, 1));
     private FilteredNumberAsyncQueryHandler mFilteredQueryHandler;
+    private ContactInfoCache mContactInfoCache;
     private int mSubId = SubscriptionManager.INVALID_SUBSCRIPTION_ID;
     private final ArrayList<ActiveSubChangeListener> mActiveSubChangeListeners =
             Lists.newArrayList();
@@ -98,6 +122,11 @@ public class CallList {
         Trace.beginSection("onCallAdded");
         final Call call = new Call(telecomCall);
         Log.d(this, "onCallAdded: callState=" + call.getState());
+        CallSetupTracer.getInstance().onCallCreated(telecomCall, call.getId());
+
+        // Start resolving the caller before listeners react to the new call, so the contact
+        // lookup overlaps with the in-call UI and notification setup.
+        prefetchContactInfo(call);
 
         if (call.getState() == Call.State.INCOMING ||
                 call.getState() == Call.State.CALL_WAITING) {
@@ -116,6 +145,7 @@ public class CallList {
             Logger.logCall(call);
             if (updateCallInMap(call)) {
                 Log.w(this, "Removing call not previously disconnected " + call.getId());
+                updateSnapshot();
             }
             updateCallTextMap(call, null);
         }
@@ -127,6 +157,7 @@ public class CallList {
     public void onDisconnect(Call call) {
         if (updateCallInMap(call)) {
             Log.i(this, "onDisconnect: " + call);
+            updateSnapshot();
             // notify those listening for changes on this specific change
             notifyCallUpdateListeners(call);
             // notify those listening for all disconnects
@@ -138,20 +169,28 @@ public class CallList {
      * Called when a single call has changed.
      */
     public void onIncoming(Call call, List<String> textMessages) {
-        Log.d(this, "onIncoming - " + call);
+        if (Log.DEBUG) {
+            Log.dFormat(this, "onIncoming - %s", call);
+        }
+        CallSetupTracer.getInstance().mark(call.getId(),
+                CallSetupTracer.MILESTONE_CALL_LIST_INCOMING);
 
         // Update active subscription from call object. it will be set by
         // Telecomm service for incoming call and whenever active sub changes.
         if (call.mIsActiveSub) {
             int sub = Integer.parseInt(call.getAccountHandle().getId());
-            Log.d(this, "onIncoming - sub:" + sub + " mSubId:" + mSubId);
+            if (Log.DEBUG) {
+                Log.dFormat(this, "onIncoming - sub:%d mSubId:%d", sub, mSubId);
+            }
             if (sub != mSubId) {
                 setActiveSubId(sub);
             }
         }
 
         if (updateCallInMap(call)) {
-            Log.i(this, "onIncoming - " + call);
+            Log.iFormat(this, "onIncoming - %s %s", call.getId(),
+                    Call.State.toString(call.getState()));
+            updateSnapshot();
         }
         updateCallTextMap(call, textMessages);
 
@@ -172,11 +211,15 @@ public class CallList {
     public void onUpdate(Call call) {
         Trace.beginSection("onUpdate");
         PhoneAccountHandle ph = call.getAccountHandle();
-        Log.d(this, "onUpdate - " + call  + " ph:" + ph);
+        if (Log.DEBUG) {
+            Log.dFormat(this, "onUpdate - %s ph:%s", call, ph);
+        }
         try {
             if (call.mIsActiveSub && ph != null) {
                 int sub = Integer.parseInt(ph.getId());
-                Log.d(this, "onUpdate - sub:" + sub + " mSubId:" + mSubId);
+                if (Log.DEBUG) {
+                    Log.dFormat(this, "onUpdate - sub:%d mSubId:%d", sub, mSubId);
+                }
                 if(sub != mSubId) {
                     setActiveSubId(sub);
                 }
@@ -185,7 +228,7 @@ public class CallList {
                 Log.w(this,"Sub Id is not a number " + e);
         }
         onUpdateCall(call);
-        notifyGenericListeners();
+        notifyGenericListeners(call.getId());
         Trace.endSection();
     }
 
@@ -414,6 +457,25 @@ public class CallList {
         return null;
     }
 
+    /**
+     * Returns what changed between the previous and the current
+     * {@link Listener#onCallListChange} notification. Changes made without a generic
+     * notification (incoming calls, disconnects) are included in the next one.
+     */
+    public CallListChange getLastChange() {
+        return mLastChange;
+    }
+
+    /**
+     * Returns an immutable snapshot of the current calls, including those added, disconnected or
+     * removed since the last {@link Listener#onCallListChange} notification. Unlike the rest of
+     * this class, this may be called from any thread, and it is O(1): the snapshot is maintained
+     * copy-on-write as calls change.
+     */
+    public CallListSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
     public Call getCallById(String callId) {
         return mCallById.get(callId);
     }
@@ -438,8 +500,8 @@ public class CallList {
     }
 
     /**
-     * Returns the [position]th call found in the call map with the specified state.
-     * TODO: Improve this logic to sort by call time.
+     * Returns the [position]th call with the specified state, ordered by the time the calls
+     * were added.
      */
     public Call getCallWithState(int state, int positionToFind) {
         // if DSDA is enabled call getCallWithState with active subscription.
@@ -449,20 +511,35 @@ public class CallList {
             return getCallWithState(state, positionToFind, getActiveSubId());
         }
 
-        Call retval = null;
-        int position = 0;
-        for (Call call : mCallById.values()) {
-            if (call.getState() == state) {
-                if (position >= positionToFind) {
-                    retval = call;
-                    break;
-                } else {
-                    position++;
-                }
-            }
+        final List<Call> calls = getCallsWithState(state);
+        return positionToFind < calls.size() ? calls.get(positionToFind) : null;
+    }
+
+    /**
+     * Returns the calls in the given state, oldest first. The index is rebuilt whenever the call
+     * map changes, or when a call's state was changed directly through {@link Call#setState}.
+     */
+    private List<Call> getCallsWithState(int state) {
+        if (mIndexedStateVersion != Call.getStateVersion()) {
+            rebuildStateIndex();
         }
+        final List<Call> calls = mCallsByState.get(state);
+        return calls == null ? Collections.<Call>emptyList() : calls;
+    }
 
-        return retval;
+    private void rebuildStateIndex() {
+        mCallsByState.clear();
+        final List<Call> sortedCalls = new ArrayList<>(mCallById.values());
+        Collections.sort(sortedCalls, CALL_ADDED_ORDER);
+        for (Call call : sortedCalls) {
+            List<Call> calls = mCallsByState.get(call.getState());
+            if (calls == null) {
+                calls = new ArrayList<>(1);
+                mCallsByState.put(call.getState(), calls);
+            }
+            calls.add(call);
+        }
+        mIndexedStateVersion = Call.getStateVersion();
     }
 
     /**
@@ -505,9 +582,13 @@ public class CallList {
      * @param call The call to update.
      */
     private void onUpdateCall(Call call) {
-        Log.d(this, "\t" + call);
+        if (Log.DEBUG) {
+            Log.dFormat(this, "\t%s", call);
+        }
         if (updateCallInMap(call)) {
-            Log.i(this, "onUpdate - " + call);
+            // The full call was logged above at debug level; keep the always-on line cheap.
+            Log.iFormat(this, "onUpdate - %s %s", call.getId(),
+                    Call.State.toString(call.getState()));
         }
         updateCallTextMap(call, call.getCannedSmsResponses());
         notifyCallUpdateListeners(call);
@@ -515,14 +596,34 @@ public class CallList {
 
     /**
      * Sends a generic notification to all listeners that something has changed.
-     * It is up to the listeners to call back to determine what changed.
+     * Listeners can call {@link #getLastChange()} to find out what changed.
      */
     private void notifyGenericListeners() {
+        notifyGenericListeners(null);
+    }
+
+    /**
+     * @param updatedCallId Id of the call whose update triggered the notification, or null.
+     */
+    private void notifyGenericListeners(String updatedCallId) {
+        mLastChange = CallListChange.compute(mNotifiedSnapshot, mCallById, updatedCallId, mSubId,
+                isDsdaEnabled());
+        mNotifiedSnapshot = mLastChange.getSnapshot();
+        mSnapshot = mNotifiedSnapshot;
         for (Listener listener : mListeners) {
             listener.onCallListChange(this);
         }
     }
 
+    /**
+     * Publishes the current calls without a generic notification. {@link #getLastChange()} keeps
+     * describing the previous notification, so the next one still includes this change.
+     */
+    private void updateSnapshot() {
+        mSnapshot = CallListChange.compute(mSnapshot, mCallById, null, mSubId, isDsdaEnabled())
+                .getSnapshot();
+    }
+
     private void notifyListenersOfDisconnect(Call call) {
         for (Listener listener : mListeners) {
             listener.onDisconnect(call);
@@ -533,7 +634,7 @@ public class CallList {
      * Updates the call entry in the local map.
      * @return false if no call previously existed and no call was added, otherwise true.
      */
-    private boolean updateCallInMap(Call call) {
+    private boolean updateCallInMap(final Call call) {
         Preconditions.checkNotNull(call);
 
         boolean updated = false;
@@ -545,8 +646,13 @@ public class CallList {
                 // UI has a chance to display anything it needs when a call is disconnected.
 
                 // Set up a timer to destroy the call after X seconds.
-                final Message msg = mHandler.obtainMessage(EVENT_DISCONNECTED_TIMEOUT, call);
-                mHandler.sendMessageDelayed(msg, getDelayForDisconnect(call));
+                TimingWheel.getInstance().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.d(this, "Disconnected call timeout ", call);
+                        finishDisconnectedCall(call);
+                    }
+                }, getDelayForDisconnect(call));
                 mPendingDisconnectCalls.add(call);
 
                 mCallById.put(call.getId(), call);
@@ -560,9 +666,15 @@ public class CallList {
         } else if (mCallById.containsKey(call.getId())) {
             mCallById.remove(call.getId());
             mCallByTelecomCall.remove(call.getTelecomCall());
+            if (mContactInfoCache != null) {
+                mContactInfoCache.onCallRemoved(call.getId());
+            }
             updated = true;
         }
 
+        if (updated) {
+            rebuildStateIndex();
+        }
         return updated;
     }
 
@@ -644,17 +756,10 @@ public class CallList {
         }
     }
 
-    /**
-     * Handles the timeout for destroying disconnected calls.
-     */
     private Handler mHandler = new Handler() {
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
-                case EVENT_DISCONNECTED_TIMEOUT:
-                    Log.d(this, "EVENT_DISCONNECTED_TIMEOUT ", msg.obj);
-                    finishDisconnectedCall((Call) msg.obj);
-                    break;
                 case EVENT_NOTIFY_CHANGE:
                     Log.d(this, "EVENT_NOTIFY_CHANGE: ");
                     notifyGenericListeners();
@@ -673,6 +778,26 @@ public class CallList {
         mFilteredQueryHandler = handler;
     }
 
+    public void setContactInfoCache(ContactInfoCache contactInfoCache) {
+        mContactInfoCache = contactInfoCache;
+    }
+
+    private void prefetchContactInfo(Call call) {
+        if (mContactInfoCache == null || call.isConferenceCall()) {
+            return;
+        }
+        final int state = call.getState();
+        // Match the isIncoming flag used by StatusBarNotifier so the memoized entry is reusable.
+        final boolean isIncoming = state == Call.State.INCOMING
+                || state == Call.State.CALL_WAITING
+                || state == Call.State.DIALING
+                || state == Call.State.CONNECTING
+                || state == Call.State.SELECT_PHONE_ACCOUNT;
+        Trace.beginSection("prefetchContactInfo");
+        mContactInfoCache.prefetchInfo(call, isIncoming);
+        Trace.endSection();
+    }
+
     /**
      * Listener interface for any class that wants to be notified of changes
      * to the call list.
@@ -839,29 +964,45 @@ public class CallList {
 
     /**
      * Returns the [position]th call which belongs to provided subscription and
-     * found in the call map with the specified state.
+     * has the specified state, ordered by the time the calls were added.
      */
     Call getCallWithState(int state, int positionToFind, int subId) {
-        Call retval = null;
         int position = 0;
-        for (Call call : mCallById.values()) {
+        for (Call call : getCallsWithState(state)) {
             PhoneAccountHandle ph = call.getAccountHandle();
-            try {
-                if ((call.getState() == state) && ((ph == null) ||
-                        (ph != null && (ph.getId() != null) &&  ((ph.getId().contains("sip")
-                        || ph.getId().contains("@")) || Integer.parseInt(ph.getId()) == subId)))) {
-                    if (position >= positionToFind) {
-                        retval = call;
-                        break;
-                    } else {
-                        position++;
-                    }
+            if (isOnAnySub(ph) || parseSubId(ph) == subId) {
+                if (position >= positionToFind) {
+                    return call;
+                } else {
+                    position++;
                 }
-            } catch (NumberFormatException e) {
-                   Log.w(this,"Sub Id is not a number " + e);
             }
         }
-        return retval;
+        return null;
+    }
+
+    /**
+     * Returns true if a call with the given account belongs to every subscription under DSDA:
+     * calls without an account, and SIP calls.
+     */
+    static boolean isOnAnySub(PhoneAccountHandle ph) {
+        return ph == null || (ph.getId() != null
+                && (ph.getId().contains("sip") || ph.getId().contains("@")));
+    }
+
+    /**
+     * Returns the subscription id of the given account, or
+     * {@link SubscriptionManager#INVALID_SUBSCRIPTION_ID} if its id is not a number.
+     */
+    static int parseSubId(PhoneAccountHandle ph) {
+        if (ph == null || ph.getId() == null) {
+            return SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+        }
+        try {
+            return Integer.parseInt(ph.getId());
+        } catch (NumberFormatException e) {
+            return SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+        }
     }
 
     void addActiveSubChangeListener(ActiveSubChangeListener listener) {
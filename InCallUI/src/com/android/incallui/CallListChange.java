@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import com.android.incallui.util.PersistentHashMap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Describes what changed in the {@link CallList} since the previous notification: which calls
+ * changed, which aspects of them changed, and the state each call changed from. Listeners can
+ * use the aspect mask to skip work for updates that do not affect them.
+ */
+public class CallListChange {
+    /** A call was added to the list. */
+    public static final int ASPECT_ADDED = 1 << 0;
+    /** A call was removed from the list. */
+    public static final int ASPECT_REMOVED = 1 << 1;
+    /** The {@link Call.State} of a call changed. */
+    public static final int ASPECT_STATE = 1 << 2;
+    /** The video state or session modification state of a call changed. */
+    public static final int ASPECT_VIDEO = 1 << 3;
+    /** The capabilities or properties of a call changed. */
+    public static final int ASPECT_CAPABILITIES = 1 << 4;
+    /** The conference parent or children of a call changed. */
+    public static final int ASPECT_CONFERENCE = 1 << 5;
+    /** Something else in the call details changed (extras, wifi quality, ...). */
+    public static final int ASPECT_DETAILS = 1 << 6;
+    /**
+     * The active subscription or DSDA changed. No call changed, but under DSDA which calls the
+     * {@link CallList} getters return did.
+     */
+    public static final int ASPECT_ACTIVE_SUB = 1 << 7;
+
+    /** Aspects that change which calls are present or in which state they are. */
+    public static final int ASPECTS_CALL_STATE = ASPECT_ADDED | ASPECT_REMOVED | ASPECT_STATE
+            | ASPECT_ACTIVE_SUB;
+    public static final int ASPECTS_ALL = ~0;
+
+    /** Change used when the previous contents of the list are not known. */
+    public static final CallListChange UNKNOWN = new CallListChange(
+            Collections.<String, Integer>emptyMap(), Collections.<String, Integer>emptyMap(),
+            ASPECTS_ALL, CallListSnapshot.EMPTY);
+
+    private final Map<String, Integer> mChangedAspectsByCallId;
+    private final Map<String, Integer> mPreviousStateByCallId;
+    private final int mAspects;
+    private final CallListSnapshot mSnapshot;
+
+    private CallListChange(Map<String, Integer> changedAspectsByCallId,
+            Map<String, Integer> previousStateByCallId, int aspects, CallListSnapshot snapshot) {
+        mChangedAspectsByCallId = changedAspectsByCallId;
+        mPreviousStateByCallId = previousStateByCallId;
+        mAspects = aspects;
+        mSnapshot = snapshot;
+    }
+
+    /** Returns the snapshot of the calls after this change, for {@link CallList} to publish. */
+    CallListSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /** Returns the union of all aspects that changed across all calls. */
+    public int getAspects() {
+        return mAspects;
+    }
+
+    /** Returns true if any of the given aspects changed for any call. */
+    public boolean hasAnyAspect(int aspects) {
+        return (mAspects & aspects) != 0;
+    }
+
+    /** Returns the ids of the calls that changed. */
+    public Iterable<String> getChangedCallIds() {
+        return mChangedAspectsByCallId.keySet();
+    }
+
+    /** Returns the aspects that changed for the given call, or 0 if it did not change. */
+    public int getAspects(String callId) {
+        Integer aspects = mChangedAspectsByCallId.get(callId);
+        return aspects == null ? 0 : aspects;
+    }
+
+    /**
+     * Returns the state the given call was in before this change, or {@link Call.State#INVALID}
+     * if its state did not change or it was just added.
+     */
+    public int getPreviousState(String callId) {
+        Integer state = mPreviousStateByCallId.get(callId);
+        return state == null ? Call.State.INVALID : state;
+    }
+
+    @Override
+    public String toString() {
+        return "CallListChange{aspects=0x" + Integer.toHexString(mAspects)
+                + ", calls=" + mChangedAspectsByCallId + "}";
+    }
+
+    /**
+     * Computes the change between the snapshot published at the previous notification and the
+     * current calls. The snapshot after the change reuses the previous snapshots of the calls
+     * that did not change.
+     *
+     * @param previous The snapshot published at the previous notification.
+     * @param calls The calls currently in the list, keyed by call id.
+     * @param forcedCallId Id of the call whose update triggered this notification. It is always
+     *         reported as changed, with {@link #ASPECT_DETAILS} if nothing more specific changed.
+     * @param activeSubId The active subscription. A change is reported as
+     *         {@link #ASPECT_ACTIVE_SUB}.
+     * @param isDsdaEnabled Whether DSDA is enabled. A change is reported as
+     *         {@link #ASPECT_ACTIVE_SUB}.
+     */
+    static CallListChange compute(CallListSnapshot previous, Map<String, Call> calls,
+            String forcedCallId, int activeSubId, boolean isDsdaEnabled) {
+        final Map<String, Integer> changed = new HashMap<>();
+        final Map<String, Integer> previousStates = new HashMap<>();
+        int allAspects = activeSubId != previous.getActiveSubId()
+                || isDsdaEnabled != previous.isDsdaEnabled() ? ASPECT_ACTIVE_SUB : 0;
+        PersistentHashMap<String, CallSnapshot> snapshots = previous.getCallMap();
+
+        for (CallSnapshot old : previous.getCalls()) {
+            final String callId = old.getId();
+            if (!calls.containsKey(callId)) {
+                previousStates.put(callId, old.getState());
+                snapshots = snapshots.minus(callId);
+                changed.put(callId, ASPECT_REMOVED);
+                allAspects |= ASPECT_REMOVED;
+            }
+        }
+
+        for (Map.Entry<String, Call> entry : calls.entrySet()) {
+            final String callId = entry.getKey();
+            final CallSnapshot current = new CallSnapshot(entry.getValue());
+            final CallSnapshot old = snapshots.get(callId);
+            int aspects = old == null ? ASPECT_ADDED : current.diff(old);
+            if (aspects != 0) {
+                snapshots = snapshots.plus(callId, current);
+            }
+            if ((aspects & ASPECT_STATE) != 0) {
+                previousStates.put(callId, old.getState());
+            }
+            if (aspects == 0 && callId.equals(forcedCallId)) {
+                aspects = ASPECT_DETAILS;
+            }
+            if (aspects != 0) {
+                changed.put(callId, aspects);
+                allAspects |= aspects;
+            }
+        }
+        return new CallListChange(changed, previousStates, allAspects,
+                previous.with(snapshots, activeSubId, isDsdaEnabled));
+    }
+}
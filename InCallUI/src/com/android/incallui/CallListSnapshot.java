@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.telephony.SubscriptionManager;
+
+import com.android.incallui.util.PersistentHashMap;
+
+import java.util.Map;
+
+/**
+ * Immutable view of the {@link CallList} as of one notification. Unlike the {@link CallList}
+ * itself, it can be read from any thread, and it does not change while it is being read.
+ * <p>
+ * The calls are held in a {@link PersistentHashMap}, so consecutive snapshots share the
+ * snapshots of the calls that did not change, and publishing a new one only copies the path to
+ * the calls that did.
+ * <p>
+ * The lookups mirror the ones on {@link CallList}, including the filtering by active
+ * subscription when DSDA is enabled.
+ */
+public final class CallListSnapshot {
+
+    public static final CallListSnapshot EMPTY = new CallListSnapshot(
+            PersistentHashMap.<String, CallSnapshot>empty(),
+            SubscriptionManager.INVALID_SUBSCRIPTION_ID, false);
+
+    private final PersistentHashMap<String, CallSnapshot> mCallsById;
+    private final int mActiveSubId;
+    private final boolean mIsDsdaEnabled;
+
+    private CallListSnapshot(PersistentHashMap<String, CallSnapshot> callsById, int activeSubId,
+            boolean isDsdaEnabled) {
+        mCallsById = callsById;
+        mActiveSubId = activeSubId;
+        mIsDsdaEnabled = isDsdaEnabled;
+    }
+
+    /**
+     * Returns a snapshot of the given calls, or this snapshot if nothing differs from it.
+     */
+    CallListSnapshot with(PersistentHashMap<String, CallSnapshot> callsById, int activeSubId,
+            boolean isDsdaEnabled) {
+        if (callsById == mCallsById && activeSubId == mActiveSubId
+                && isDsdaEnabled == mIsDsdaEnabled) {
+            return this;
+        }
+        return new CallListSnapshot(callsById, activeSubId, isDsdaEnabled);
+    }
+
+    /**
+     * Creates a snapshot of the given calls.
+     */
+    static CallListSnapshot create(Map<String, CallSnapshot> callsById, int activeSubId,
+            boolean isDsdaEnabled) {
+        PersistentHashMap<String, CallSnapshot> calls = PersistentHashMap.empty();
+        for (Map.Entry<String, CallSnapshot> entry : callsById.entrySet()) {
+            calls = calls.plus(entry.getKey(), entry.getValue());
+        }
+        return new CallListSnapshot(calls, activeSubId, isDsdaEnabled);
+    }
+
+    PersistentHashMap<String, CallSnapshot> getCallMap() {
+        return mCallsById;
+    }
+
+    int getActiveSubId() {
+        return mActiveSubId;
+    }
+
+    boolean isDsdaEnabled() {
+        return mIsDsdaEnabled;
+    }
+
+    /** Returns the calls, in no particular order. */
+    public Iterable<CallSnapshot> getCalls() {
+        return mCallsById.values();
+    }
+
+    public CallSnapshot getCallById(String callId) {
+        return mCallsById.get(callId);
+    }
+
+    public int size() {
+        return mCallsById.size();
+    }
+
+    public CallSnapshot getIncomingCall() {
+        CallSnapshot call = getFirstCallWithState(Call.State.INCOMING);
+        if (call == null) {
+            call = getFirstCallWithState(Call.State.CALL_WAITING);
+        }
+        return call;
+    }
+
+    public CallSnapshot getPendingOutgoingCall() {
+        return getFirstCallWithState(Call.State.CONNECTING);
+    }
+
+    public CallSnapshot getOutgoingCall() {
+        CallSnapshot call = getFirstCallWithState(Call.State.DIALING);
+        if (call == null) {
+            call = getFirstCallWithState(Call.State.REDIALING);
+        }
+        return call;
+    }
+
+    public CallSnapshot getActiveOrBackgroundCall() {
+        CallSnapshot call = getFirstCallWithState(Call.State.ACTIVE);
+        if (call == null) {
+            call = getFirstCallWithState(Call.State.ONHOLD);
+        }
+        return call;
+    }
+
+    /**
+     * Same as {@link CallList#hasLiveCall()}: whether there is a call that is neither
+     * disconnecting nor disconnected.
+     */
+    public boolean hasLiveCall() {
+        return getIncomingCall() != null
+                || getPendingOutgoingCall() != null
+                || getOutgoingCall() != null
+                || getActiveOrBackgroundCall() != null;
+    }
+
+    /**
+     * Returns the oldest call with the given state, or null if there is none.
+     */
+    public CallSnapshot getFirstCallWithState(int state) {
+        final boolean filterBySub = state != Call.State.SELECT_PHONE_ACCOUNT && mIsDsdaEnabled
+                && mActiveSubId != SubscriptionManager.INVALID_SUBSCRIPTION_ID;
+        CallSnapshot result = null;
+        for (CallSnapshot call : mCallsById.values()) {
+            if (call.getState() != state || (filterBySub && !call.isOnSub(mActiveSubId))) {
+                continue;
+            }
+            if (result == null || isAddedBefore(call, result)) {
+                result = call;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isAddedBefore(CallSnapshot call, CallSnapshot other) {
+        if (call.getTimeAddedMs() != other.getTimeAddedMs()) {
+            return call.getTimeAddedMs() < other.getTimeAddedMs();
+        }
+        return call.getId().compareTo(other.getId()) < 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CallListSnapshot" + mCallsById;
+    }
+}
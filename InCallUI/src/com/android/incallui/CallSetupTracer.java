@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.os.SystemClock;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records when each incoming call reaches the milestones of its setup, from telecom handing the
+ * call to the {@link InCallServiceImpl} to the answer UI being ready for input.
+ * <p>
+ * A trace is started by {@link #onServiceCallAdded}, before the call has an InCallUI call id,
+ * and is tied to the id once the {@link Call} is created. When telecom removes the call the trace
+ * moves into a ring buffer of recent calls, which {@link #dump} prints together with latency
+ * percentiles across those calls. Only the first occurrence of each milestone is kept.
+ */
+public class CallSetupTracer {
+
+    public static final int MILESTONE_SERVICE_CALL_ADDED = 0;
+    public static final int MILESTONE_BLOCK_CHECK_COMPLETE = 1;
+    public static final int MILESTONE_CALL_LIST_INCOMING = 2;
+    public static final int MILESTONE_CALLER_INFO_COMPLETE = 3;
+    public static final int MILESTONE_PHOTO_LOADED = 4;
+    public static final int MILESTONE_NOTIFICATION_POSTED = 5;
+    public static final int MILESTONE_ACTIVITY_FIRST_DRAW = 6;
+    public static final int MILESTONE_ANSWER_UI_INTERACTIVE = 7;
+    @VisibleForTesting
+    static final int MILESTONE_COUNT = 8;
+
+    private static final String[] MILESTONE_NAMES = new String[] {
+            "serviceCallAdded",
+            "blockCheckComplete",
+            "callListIncoming",
+            "callerInfoComplete",
+            "photoLoaded",
+            "notificationPosted",
+            "activityFirstDraw",
+            "answerUiInteractive",
+    };
+
+    private static final int[] PERCENTILES = new int[] {50, 90, 99};
+
+    @VisibleForTesting
+    static final int MAX_COMPLETED_TRACES = 32;
+
+    /** Milestone timestamps of a single call, in {@link SystemClock#elapsedRealtime()} ms. */
+    @VisibleForTesting
+    static final class CallTrace {
+        String callId;
+        final long[] timestamps = new long[MILESTONE_COUNT];
+
+        CallTrace() {
+            Arrays.fill(timestamps, -1);
+        }
+
+        /** Returns the milliseconds from the start of the trace to the milestone, or -1. */
+        long getLatency(int milestone) {
+            final long start = timestamps[MILESTONE_SERVICE_CALL_ADDED];
+            final long timestamp = timestamps[milestone];
+            return start < 0 || timestamp < 0 ? -1 : timestamp - start;
+        }
+    }
+
+    private static CallSetupTracer sInstance = new CallSetupTracer();
+
+    private final Map<android.telecom.Call, CallTrace> mTracesByTelecomCall = new HashMap<>();
+    private final Map<String, CallTrace> mTracesByCallId = new HashMap<>();
+
+    private final CallTrace[] mCompletedTraces = new CallTrace[MAX_COMPLETED_TRACES];
+    private int mNextCompletedIndex;
+    private int mCompletedCount;
+
+    public static CallSetupTracer getInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    CallSetupTracer() {
+    }
+
+    /**
+     * Starts tracing a call handed to the in-call service. Only ringing calls are traced; other
+     * calls are ignored by every later milestone as well.
+     */
+    public synchronized void onServiceCallAdded(android.telecom.Call telecomCall) {
+        if (telecomCall.getState() != android.telecom.Call.STATE_RINGING) {
+            return;
+        }
+        final CallTrace trace = new CallTrace();
+        trace.timestamps[MILESTONE_SERVICE_CALL_ADDED] = now();
+        mTracesByTelecomCall.put(telecomCall, trace);
+    }
+
+    /** Ties the trace of {@code telecomCall}, if any, to the InCallUI call id. */
+    public synchronized void onCallCreated(android.telecom.Call telecomCall, String callId) {
+        final CallTrace trace = mTracesByTelecomCall.get(telecomCall);
+        if (trace != null) {
+            trace.callId = callId;
+            mTracesByCallId.put(callId, trace);
+        }
+    }
+
+    /** Records a milestone for a call that may not have an InCallUI call id yet. */
+    public synchronized void mark(android.telecom.Call telecomCall, int milestone) {
+        mark(mTracesByTelecomCall.get(telecomCall), milestone);
+    }
+
+    /** Records a milestone for the call with the given InCallUI call id. */
+    public synchronized void mark(String callId, int milestone) {
+        if (callId != null) {
+            mark(mTracesByCallId.get(callId), milestone);
+        }
+    }
+
+    private void mark(CallTrace trace, int milestone) {
+        if (trace == null || trace.timestamps[milestone] >= 0) {
+            return;
+        }
+        trace.timestamps[milestone] = now();
+        if (Log.DEBUG) {
+            Log.dFormat(this, "%s %s +%dms", trace.callId, MILESTONE_NAMES[milestone],
+                    trace.getLatency(milestone));
+        }
+    }
+
+    /** Finishes the trace of a call removed by telecom and adds it to the recent calls. */
+    public synchronized void onServiceCallRemoved(android.telecom.Call telecomCall) {
+        final CallTrace trace = mTracesByTelecomCall.remove(telecomCall);
+        if (trace == null) {
+            return;
+        }
+        if (trace.callId != null) {
+            mTracesByCallId.remove(trace.callId);
+        }
+        addCompletedTrace(trace);
+    }
+
+    @VisibleForTesting
+    void addCompletedTrace(CallTrace trace) {
+        mCompletedTraces[mNextCompletedIndex] = trace;
+        mNextCompletedIndex = (mNextCompletedIndex + 1) % MAX_COMPLETED_TRACES;
+        mCompletedCount = Math.min(mCompletedCount + 1, MAX_COMPLETED_TRACES);
+    }
+
+    /**
+     * Returns the given percentile of the latency of {@code milestone} across the recent calls
+     * that reached it, or -1 if none did. Uses the nearest-rank method.
+     */
+    @VisibleForTesting
+    synchronized long getPercentile(int milestone, int percentile) {
+        final long[] latencies = getLatencies(milestone);
+        if (latencies.length == 0) {
+            return -1;
+        }
+        Arrays.sort(latencies);
+        final int rank = (int) Math.ceil(percentile / 100.0 * latencies.length);
+        return latencies[Math.max(rank, 1) - 1];
+    }
+
+    private long[] getLatencies(int milestone) {
+        final long[] latencies = new long[mCompletedCount];
+        int count = 0;
+        for (int i = 0; i < mCompletedCount; i++) {
+            final long latency = mCompletedTraces[i].getLatency(milestone);
+            if (latency >= 0) {
+                latencies[count++] = latency;
+            }
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        pw.println("CallSetupTracer: " + mCompletedCount + " recent calls, "
+                + mTracesByTelecomCall.size() + " in progress");
+
+        pw.println("  Latency since " + MILESTONE_NAMES[MILESTONE_SERVICE_CALL_ADDED]
+                + " (ms): p50 / p90 / p99 (n)");
+        for (int milestone = 1; milestone < MILESTONE_COUNT; milestone++) {
+            pw.print("    " + MILESTONE_NAMES[milestone] + ": ");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                pw.print((i == 0 ? "" : " / ") + getPercentile(milestone, PERCENTILES[i]));
+            }
+            pw.println(" (" + getLatencies(milestone).length + ")");
+        }
+
+        pw.println("  Recent calls, oldest first (ms):");
+        for (int i = 0; i < mCompletedCount; i++) {
+            final int index = (mNextCompletedIndex - mCompletedCount + i + MAX_COMPLETED_TRACES)
+                    % MAX_COMPLETED_TRACES;
+            dumpTrace(pw, mCompletedTraces[index]);
+        }
+    }
+
+    private static void dumpTrace(PrintWriter pw, CallTrace trace) {
+        final StringBuilder sb = new StringBuilder("    ").append(trace.callId);
+        for (int milestone = 1; milestone < MILESTONE_COUNT; milestone++) {
+            final long latency = trace.getLatency(milestone);
+            if (latency >= 0) {
+                sb.append(' ').append(MILESTONE_NAMES[milestone]).append("=+").append(latency);
+            }
+        }
+        pw.println(sb);
+    }
+
+    @VisibleForTesting
+    long now() {
+        return SystemClock.elapsedRealtime();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.telecom.PhoneAccountHandle;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of the fields of a {@link Call} at the time of a {@link CallList} notification.
+ * {@link Call} is mutable and only safe to read on the main thread; snapshots can be read on any
+ * thread.
+ */
+public final class CallSnapshot {
+    private final String mId;
+    private final int mState;
+    private final int mVideoState;
+    private final int mSessionModificationState;
+    private final int mCapabilities;
+    private final int mProperties;
+    private final String mParentId;
+    private final List<String> mChildCallIds;
+    private final int mWifiQuality;
+    private final int mSubId;
+    /** The subscription of the account, as {@link CallList#parseSubId} reads it. */
+    private final int mAccountSubId;
+    /** Whether the call belongs to every subscription, see {@link CallList#isOnAnySub}. */
+    private final boolean mIsOnAnySub;
+    private final long mTimeAddedMs;
+
+    CallSnapshot(Call call) {
+        mId = call.getId();
+        mState = call.getState();
+        mVideoState = call.getVideoState();
+        mSessionModificationState = call.getSessionModificationState();
+        final android.telecom.Call.Details details = call.getTelecomCall().getDetails();
+        mCapabilities = details.getCallCapabilities();
+        mProperties = details.getCallProperties();
+        mParentId = call.getParentId();
+        mChildCallIds = Collections.unmodifiableList(new ArrayList<>(call.getChildCallIds()));
+        mWifiQuality = call.getWifiQuality();
+        mSubId = call.getSubId();
+        mAccountSubId = CallList.parseSubId(call.getAccountHandle());
+        mIsOnAnySub = CallList.isOnAnySub(call.getAccountHandle());
+        mTimeAddedMs = call.getTimeAddedMs();
+    }
+
+    @VisibleForTesting
+    CallSnapshot(String id, int state, int subId, long timeAddedMs) {
+        this(id, state, subId, subId, false, timeAddedMs);
+    }
+
+    @VisibleForTesting
+    CallSnapshot(String id, int state, PhoneAccountHandle account, long timeAddedMs) {
+        this(id, state, CallList.parseSubId(account), CallList.parseSubId(account),
+                CallList.isOnAnySub(account), timeAddedMs);
+    }
+
+    private CallSnapshot(String id, int state, int subId, int accountSubId, boolean isOnAnySub,
+            long timeAddedMs) {
+        mId = id;
+        mState = state;
+        mVideoState = 0;
+        mSessionModificationState = 0;
+        mCapabilities = 0;
+        mProperties = 0;
+        mParentId = null;
+        mChildCallIds = Collections.emptyList();
+        mWifiQuality = 0;
+        mSubId = subId;
+        mAccountSubId = accountSubId;
+        mIsOnAnySub = isOnAnySub;
+        mTimeAddedMs = timeAddedMs;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    public int getVideoState() {
+        return mVideoState;
+    }
+
+    public int getSessionModificationState() {
+        return mSessionModificationState;
+    }
+
+    public int getCapabilities() {
+        return mCapabilities;
+    }
+
+    public int getProperties() {
+        return mProperties;
+    }
+
+    public String getParentId() {
+        return mParentId;
+    }
+
+    public List<String> getChildCallIds() {
+        return mChildCallIds;
+    }
+
+    public int getWifiQuality() {
+        return mWifiQuality;
+    }
+
+    public int getSubId() {
+        return mSubId;
+    }
+
+    /**
+     * Returns true if {@link CallList#getCallWithState} returns this call when filtering by the
+     * given subscription under DSDA.
+     */
+    public boolean isOnSub(int subId) {
+        return mIsOnAnySub || mAccountSubId == subId;
+    }
+
+    public long getTimeAddedMs() {
+        return mTimeAddedMs;
+    }
+
+    /**
+     * Returns the {@link CallListChange} aspects in which this snapshot differs from
+     * {@code other}, or 0 if it does not.
+     */
+    int diff(CallSnapshot other) {
+        int aspects = 0;
+        if (mState != other.mState) {
+            aspects |= CallListChange.ASPECT_STATE;
+        }
+        if (mVideoState != other.mVideoState
+                || mSessionModificationState != other.mSessionModificationState) {
+            aspects |= CallListChange.ASPECT_VIDEO;
+        }
+        if (mCapabilities != other.mCapabilities || mProperties != other.mProperties) {
+            aspects |= CallListChange.ASPECT_CAPABILITIES;
+        }
+        if (!Objects.equal(mParentId, other.mParentId)
+                || !Objects.equal(mChildCallIds, other.mChildCallIds)) {
+            aspects |= CallListChange.ASPECT_CONFERENCE;
+        }
+        if (mWifiQuality != other.mWifiQuality || mSubId != other.mSubId
+                || mAccountSubId != other.mAccountSubId || mIsOnAnySub != other.mIsOnAnySub) {
+            aspects |= CallListChange.ASPECT_DETAILS;
+        }
+        return aspects;
+    }
+
+    @Override
+    public String toString() {
+        return "CallSnapshot{" + mId + ", " + Call.State.toString(mState) + "}";
+    }
+}
@@ -18,27 +18,21 @@ package com.android.incallui;
 
 import com.google.common.base.Preconditions;
 
-import android.os.Handler;
-import android.os.SystemClock;
+import com.android.dialer.util.TimingWheel;
 
 /**
  * Helper class used to keep track of events requiring regular intervals.
+ * <p>
+ * The ticks come from the shared {@link TimingWheel} and are aligned to multiples of the
+ * interval, so all timers with the same interval tick together.
  */
-public class CallTimer extends Handler {
-    private Runnable mInternalCallback;
-    private Runnable mCallback;
-    private long mLastReportedTime;
-    private long mInterval;
-    private boolean mRunning;
+public class CallTimer {
+    private final Runnable mCallback;
+    private TimingWheel.Timer mTimer;
 
     public CallTimer(Runnable callback) {
         Preconditions.checkNotNull(callback);
-
-        mInterval = 0;
-        mLastReportedTime = 0;
-        mRunning = false;
         mCallback = callback;
-        mInternalCallback = new CallTimerCallback();
     }
 
     public boolean start(long interval) {
@@ -49,42 +43,18 @@ public class CallTimer extends Handler {
         // cancel any previous timer
         cancel();
 
-        mInterval = interval;
-        mLastReportedTime = SystemClock.uptimeMillis();
+        mTimer = TimingWheel.getInstance().schedulePeriodic(mCallback, interval);
 
-        mRunning = true;
-        periodicUpdateTimer();
+        // Run the callback
+        mCallback.run();
 
         return true;
     }
 
     public void cancel() {
-        removeCallbacks(mInternalCallback);
-        mRunning = false;
-    }
-
-    private void periodicUpdateTimer() {
-        if (!mRunning) {
-            return;
-        }
-
-        final long now = SystemClock.uptimeMillis();
-        long nextReport = mLastReportedTime + mInterval;
-        while (now >= nextReport) {
-            nextReport += mInterval;
-        }
-
-        postAtTime(mInternalCallback, nextReport);
-        mLastReportedTime = nextReport;
-
-        // Run the callback
-        mCallback.run();
-    }
-
-    private class CallTimerCallback implements Runnable {
-        @Override
-        public void run() {
-            periodicUpdateTimer();
+        if (mTimer != null) {
+            mTimer.cancel();
+            mTimer = null;
         }
     }
 }
@@ -16,11 +16,8 @@
 
 package com.android.incallui;
 
-import com.google.common.primitives.Longs;
-
 import android.Manifest;
 import android.content.AsyncQueryHandler;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -28,26 +25,29 @@ import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
-import android.provider.ContactsContract;
-import android.provider.ContactsContract.Directory;
 import android.telephony.PhoneNumberUtils;
 import android.text.TextUtils;
 
-import com.android.contacts.common.ContactsUtils;
-import com.android.contacts.common.compat.DirectoryCompat;
 import com.android.contacts.common.util.PermissionsUtil;
 import com.android.contacts.common.util.TelephonyManagerUtils;
 import com.android.dialer.R;
 import com.android.dialer.calllog.ContactInfoHelper;
+import com.android.dialer.contactinfo.DirectoryIdCache;
 import com.android.dialer.service.CachedNumberLookupService;
 import com.android.dialer.service.CachedNumberLookupService.CachedContactInfo;
 import com.android.dialerbind.ObjectFactory;
+import com.google.common.annotations.VisibleForTesting;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Helper class to make it easier to run asynchronous caller-id lookup queries.
@@ -66,6 +66,14 @@ public class CallerInfoAsyncQuery {
 
     private CallerInfoAsyncQueryHandler mHandler;
 
+    /** Upper bound on the number of remote directories queried concurrently. */
+    private static final int MAX_CONCURRENT_DIRECTORY_QUERIES = 4;
+    /** How long to wait for a single remote directory before treating it as a miss. */
+    private static final long DIRECTORY_QUERY_TIMEOUT_MS = 2000;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static final ThreadPoolExecutor sDirectoryQueryExecutor = createDirectoryExecutor();
+
     // If the CallerInfo query finds no contacts, should we use the
     // PhoneNumberOfflineGeocoder to look up a "geo description"?
     // (TODO: This could become a flag in config.xml if it ever needs to be
@@ -362,7 +370,8 @@ public class CallerInfoAsyncQuery {
                         // If there are no other directory queries, make sure that the listener is
                         // notified of this result.  see b/27621628
                         if ((ci != null && ci.contactExists) ||
-                            !startOtherDirectoriesQuery(token, context, info, listener, cookie)) {
+                            !startOtherDirectoriesQuery(token, context, info, listener, cookie,
+                                    ci)) {
                             if (listener != null && ci != null) {
                                 listener.onQueryComplete(token, cookie, ci);
                             }
@@ -430,7 +439,12 @@ public class CallerInfoAsyncQuery {
 
     // Return value indicates if listener was notified.
     private static boolean startOtherDirectoriesQuery(int token, Context context, CallerInfo info,
-            OnQueryCompleteListener listener, Object cookie) {
+            OnQueryCompleteListener listener, Object cookie, CallerInfo fallback) {
+        // Emergency and voicemail numbers are resolved by the shortcuts in the default query.
+        if (QtiCallUtils.isLocalEmergencyNumber(context, info.phoneNumber)
+                || info.isVoiceMailNumber()) {
+            return false;
+        }
         long[] directoryIds = getDirectoryIds(context);
         int size = directoryIds.length;
         if (size == 0) {
@@ -438,92 +452,157 @@ public class CallerInfoAsyncQuery {
         }
 
         DirectoryQueryCompleteListenerFactory listenerFactory =
-                new DirectoryQueryCompleteListenerFactory(context, size, listener);
+                new DirectoryQueryCompleteListenerFactory(context, size, listener, fallback);
 
-        // The current implementation of multiple async query runs in single handler thread
-        // in AsyncQueryHandler.
-        // intermediateListener.onQueryComplete is also called from the same caller thread.
-        // TODO(b/26019872): use thread pool instead of single thread.
+        // Each remote directory is queried on its own worker from a bounded pool instead of the
+        // single AsyncQueryHandler thread, so the slowest directory no longer delays the others.
+        // Results and timeouts are delivered back on the main thread.
         for (int i = 0; i < size; i++) {
             long directoryId = directoryIds[i];
             Uri uri = ContactInfoHelper.getContactInfoLookupUri(info.phoneNumber, directoryId);
             if (DBG) {
                 Log.d(LOG_TAG, "directoryId: " + directoryId + " uri: " + uri);
             }
-            OnQueryCompleteListener intermediateListener =
-                    listenerFactory.newListener(directoryId);
-            startQueryInternal(token, context, info, intermediateListener, cookie, uri);
+            DirectoryQueryCompleteListenerFactory.DirectoryQueryCompleteListener
+                    intermediateListener = listenerFactory.newListener(directoryId);
+            startDirectoryQuery(token, context, info.phoneNumber, intermediateListener, cookie,
+                    uri);
         }
         return true;
     }
 
-    /* Directory lookup related code - START */
-    private static final String[] DIRECTORY_PROJECTION = new String[] {Directory._ID};
-
-    private static long[] getDirectoryIds(Context context) {
-        ArrayList<Long> results = new ArrayList<>();
+    private static void startDirectoryQuery(final int token, final Context context,
+            final String number,
+            final DirectoryQueryCompleteListenerFactory.DirectoryQueryCompleteListener listener,
+            final Object cookie, final Uri uri) {
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                Log.d(LOG_TAG, "directory query timed out for directoryId: "
+                        + listener.getDirectoryId());
+                listener.onQueryComplete(token, cookie, null);
+            }
+        };
+        sMainHandler.postDelayed(timeout, DIRECTORY_QUERY_TIMEOUT_MS);
 
-        Uri uri = Directory.CONTENT_URI;
-        if (ContactsUtils.FLAG_N_FEATURE) {
-            uri = Uri.withAppendedPath(ContactsContract.AUTHORITY_URI, "directories_enterprise");
+        Runnable query = new Runnable() {
+            @Override
+            public void run() {
+                final CallerInfo ci = queryDirectory(context, uri, number);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        sMainHandler.removeCallbacks(timeout);
+                        listener.onQueryComplete(token, cookie, ci);
+                    }
+                });
+            }
+        };
+
+        try {
+            sDirectoryQueryExecutor.execute(query);
+        } catch (RejectedExecutionException e) {
+            Log.w(LOG_TAG, "directory query rejected for directoryId: "
+                    + listener.getDirectoryId());
+            sMainHandler.removeCallbacks(timeout);
+            listener.onQueryComplete(token, cookie, null);
         }
-
-        ContentResolver cr = context.getContentResolver();
-        Cursor cursor = cr.query(uri, DIRECTORY_PROJECTION, null, null, null);
-        addDirectoryIdsFromCursor(cursor, results);
-
-        return Longs.toArray(results);
     }
 
-    private static void addDirectoryIdsFromCursor(Cursor cursor, ArrayList<Long> results) {
-        if (cursor != null) {
-            int idIndex = cursor.getColumnIndex(Directory._ID);
-            while (cursor.moveToNext()) {
-                long id = cursor.getLong(idIndex);
-                if (DirectoryCompat.isRemoteDirectoryId(id)) {
-                    results.add(id);
-                }
+    /**
+     * Synchronously looks up {@code number} in a single remote directory. Must not be called on
+     * the main thread.
+     *
+     * @return the matching {@link CallerInfo}, or {@code null} if the query failed.
+     */
+    private static CallerInfo queryDirectory(Context context, Uri uri, String number) {
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(uri,
+                    CallerInfo.getDefaultPhoneLookupProjection(uri), null, null, null);
+            CallerInfo ci = CallerInfo.getCallerInfo(context, uri, cursor);
+            if (ci.contactExists && !TextUtils.isEmpty(number)) {
+                ci.phoneNumber = PhoneNumberUtils.formatNumber(number, ci.normalizedNumber,
+                        TelephonyManagerUtils.getCurrentCountryIso(context, Locale.getDefault()));
+            }
+            return ci;
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "directory query failed: " + sanitizeUriToString(uri), e);
+            return null;
+        } finally {
+            // The cursor may have been closed in CallerInfo.getCallerInfo()
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
             }
-            cursor.close();
         }
     }
 
-    private static final class DirectoryQueryCompleteListenerFactory {
+    /* Directory lookup related code - START */
+    private static long[] getDirectoryIds(Context context) {
+        return DirectoryIdCache.getInstance(context).getRemoteDirectoryIds();
+    }
+
+    /**
+     * Collects the results of the parallel remote directory queries. The first result that
+     * matches a contact wins; if no directory finds a contact before all of them complete or
+     * time out, the fallback (default directory) result is delivered instead. Only the fallback
+     * has been through the geo description, secondary lookup and number formatting of
+     * {@link CallerInfoAsyncQueryHandler}, so a directory result without a contact is never
+     * delivered.
+     */
+    @VisibleForTesting
+    static final class DirectoryQueryCompleteListenerFactory {
         // Make sure listener to be called once and only once
         private int mCount;
         private boolean mIsListenerCalled;
         private final OnQueryCompleteListener mListener;
         private final Context mContext;
+        private final CallerInfo mFallback;
         private final CachedNumberLookupService mCachedNumberLookupService =
                 ObjectFactory.newCachedNumberLookupService();
 
-        private class DirectoryQueryCompleteListener implements OnQueryCompleteListener {
+        @VisibleForTesting
+        class DirectoryQueryCompleteListener implements OnQueryCompleteListener {
             private final long mDirectoryId;
+            private boolean mIsComplete;
 
             DirectoryQueryCompleteListener(long directoryId) {
                 mDirectoryId = directoryId;
             }
 
+            long getDirectoryId() {
+                return mDirectoryId;
+            }
+
             @Override
             public void onQueryComplete(int token, Object cookie, CallerInfo ci) {
+                // A directory may report both a timeout and a late result; only count it once.
+                synchronized (DirectoryQueryCompleteListenerFactory.this) {
+                    if (mIsComplete) {
+                        return;
+                    }
+                    mIsComplete = true;
+                }
                 onDirectoryQueryComplete(token, cookie, ci, mDirectoryId);
             }
         }
 
         DirectoryQueryCompleteListenerFactory(Context context, int size,
-                OnQueryCompleteListener listener) {
+                OnQueryCompleteListener listener, CallerInfo fallback) {
             mCount = size;
             mListener = listener;
             mIsListenerCalled = false;
             mContext = context;
+            mFallback = fallback;
         }
 
         private void onDirectoryQueryComplete(int token, Object cookie, CallerInfo ci,
                 long directoryId) {
             boolean shouldCallListener = false;
+            boolean found = ci != null && ci.contactExists;
             synchronized (this) {
                 mCount = mCount - 1;
-                if (!mIsListenerCalled && (ci.contactExists || mCount == 0)) {
+                if (!mIsListenerCalled && (found || mCount == 0)) {
                     mIsListenerCalled = true;
                     shouldCallListener = true;
                 }
@@ -532,8 +611,21 @@ public class CallerInfoAsyncQuery {
             // Don't call callback in synchronized block because mListener.onQueryComplete may
             // take long time to complete
             if (shouldCallListener && mListener != null) {
-                addCallerInfoIntoCache(ci, directoryId);
-                mListener.onQueryComplete(token, cookie, ci);
+                if (found) {
+                    final CallerInfo cachedInfo = ci;
+                    final long cachedDirectoryId = directoryId;
+                    sDirectoryQueryExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            addCallerInfoIntoCache(cachedInfo, cachedDirectoryId);
+                        }
+                    });
+                } else {
+                    ci = mFallback;
+                }
+                if (ci != null) {
+                    mListener.onQueryComplete(token, cookie, ci);
+                }
             }
         }
 
@@ -561,12 +653,30 @@ public class CallerInfoAsyncQuery {
             }
         }
 
-        public OnQueryCompleteListener newListener(long directoryId) {
+        public DirectoryQueryCompleteListener newListener(long directoryId) {
             return new DirectoryQueryCompleteListener(directoryId);
         }
     }
     /* Directory lookup related code - END */
 
+    private static ThreadPoolExecutor createDirectoryExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENT_DIRECTORY_QUERIES,
+                MAX_CONCURRENT_DIRECTORY_QUERIES, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r,
+                                "CallerInfoDirectoryQuery #" + mCount.incrementAndGet());
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Method to create a new CallerInfoAsyncQueryHandler object, ensuring correct
      * state of context and uri.
@@ -36,6 +36,7 @@ import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.DisplayNameSources;
 import android.telecom.TelecomManager;
 import android.text.TextUtils;
+import android.util.LruCache;
 import android.util.Pair;
 
 import com.android.contacts.common.ContactsUtils;
@@ -54,7 +55,9 @@ import org.json.JSONObject;
 
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -71,7 +74,53 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
     private final Context mContext;
     private final PhoneNumberService mPhoneNumberService;
     private final CachedNumberLookupService mCachedNumberLookupService;
-    private final HashMap<String, ContactCacheEntry> mInfoMap = Maps.newHashMap();
+    /** Upper bound on cached entries; conference children and call waiting cycles add up. */
+    private static final int MAX_INFO_ENTRIES = 32;
+    /** Upper bound on the bytes held by photos shared across entries. */
+    private static final int MAX_PHOTO_CACHE_BYTES = 4 * 1024 * 1024;
+    /** Size charged for photos whose bitmap size cannot be determined. */
+    private static final int UNKNOWN_PHOTO_BYTES = 64 * 1024;
+
+    private final LinkedHashMap<String, ContactCacheEntry> mInfoMap =
+            new LinkedHashMap<String, ContactCacheEntry>(16, 0.75f, true /* accessOrder */) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ContactCacheEntry> eldest) {
+                    if (size() > MAX_INFO_ENTRIES) {
+                        Log.d(TAG, "Evicting least recently used entry " + eldest.getKey());
+                        mCallBacks.remove(eldest.getKey());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    /**
+     * Photos keyed by contact display photo uri, so calls to the same contact share one drawable
+     * and notification icon instead of each holding their own copy.
+     */
+    private final LruCache<Uri, CachedPhoto> mPhotoCache =
+            new LruCache<Uri, CachedPhoto>(MAX_PHOTO_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(Uri key, CachedPhoto value) {
+                    int size = value.roundedPhotoIcon == null
+                            ? 0 : value.roundedPhotoIcon.getByteCount();
+                    if (value.photo instanceof BitmapDrawable
+                            && ((BitmapDrawable) value.photo).getBitmap() != null) {
+                        return size + ((BitmapDrawable) value.photo).getBitmap().getByteCount();
+                    }
+                    return size + UNKNOWN_PHOTO_BYTES;
+                }
+            };
+
+    private static final class CachedPhoto {
+        final Drawable photo;
+        final Bitmap roundedPhotoIcon;
+
+        CachedPhoto(Drawable photo, Bitmap roundedPhotoIcon) {
+            this.photo = photo;
+            this.roundedPhotoIcon = roundedPhotoIcon;
+        }
+    }
+
     private final HashMap<String, Set<ContactInfoCacheCallback>> mCallBacks = Maps.newHashMap();
 
     private static ContactInfoCache sCache = null;
@@ -211,9 +260,42 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
         findInfoQueryComplete(call, callerInfo, isIncoming, false);
     }
 
+    /**
+     * Speculatively starts the caller-info and photo lookup for a call that was just added, before
+     * any presenter asks for it. The results are memoized, so a later {@link #findInfo} is served
+     * from the cache or joins the lookup that is already in flight.
+     */
+    public void prefetchInfo(Call call, boolean isIncoming) {
+        final String callId = call.getId();
+        if (mInfoMap.get(callId) != null || mCallBacks.get(callId) != null) {
+            return;
+        }
+        Log.d(TAG, "Contact lookup. Prefetching info for " + callId);
+        findInfo(call, isIncoming, PREFETCH_CALLBACK);
+    }
+
+    /** Placeholder callback for prefetch requests; the results are only needed in the cache. */
+    private static final ContactInfoCacheCallback PREFETCH_CALLBACK =
+            new ContactInfoCacheCallback() {
+                @Override
+                public void onContactInfoComplete(String callId, ContactCacheEntry entry) {}
+
+                @Override
+                public void onImageLoadComplete(String callId, ContactCacheEntry entry) {}
+
+                @Override
+                public void onContactInteractionsInfoComplete(String callId,
+                        ContactCacheEntry entry) {}
+            };
+
     private void findInfoQueryComplete(Call call, CallerInfo callerInfo, boolean isIncoming,
             boolean didLocalLookup) {
         final String callId = call.getId();
+        if (didLocalLookup && !mCallBacks.containsKey(callId)) {
+            // The entry was evicted (e.g. the call was removed) while the lookup was running.
+            Log.d(TAG, "Contact lookup. Dropping result for evicted call " + callId);
+            return;
+        }
         int presentationMode = call.getNumberPresentation();
         if (callerInfo.contactExists || callerInfo.isEmergencyNumber() ||
                 callerInfo.isVoiceMailNumber()) {
@@ -229,6 +311,8 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
             mInfoMap.put(callId, cacheEntry);
         }
 
+        CallSetupTracer.getInstance().mark(callId,
+                CallSetupTracer.MILESTONE_CALLER_INFO_COMPLETE);
         sendInfoNotifications(callId, cacheEntry);
 
         if (didLocalLookup) {
@@ -240,6 +324,14 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
                 final PhoneNumberServiceListener listener = new PhoneNumberServiceListener(callId);
                 mPhoneNumberService.getPhoneNumberInfo(cacheEntry.number, listener, listener,
                         isIncoming);
+            } else if (cacheEntry.displayPhotoUri != null
+                    && mPhotoCache.get(cacheEntry.displayPhotoUri) != null) {
+                Log.d(TAG, "Contact lookup done. Local contact found, photo already cached");
+                final CachedPhoto cachedPhoto = mPhotoCache.get(cacheEntry.displayPhotoUri);
+                cacheEntry.photo = cachedPhoto.photo;
+                cacheEntry.roundedPhotoIcon = cachedPhoto.roundedPhotoIcon;
+                sendImageNotifications(callId, cacheEntry);
+                clearCallbacks(callId);
             } else if (cacheEntry.displayPhotoUri != null) {
                 Log.d(TAG, "Contact lookup. Local contact found, starting image load");
                 // Load the image with a callback to update the image state.
@@ -384,6 +476,8 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
         if (photo != null) {
             Log.v(this, "direct drawable: ", photo);
             entry.photo = photo;
+            // Photos loaded by ContactsAsyncHelper come with a pre-rounded notification icon.
+            entry.roundedPhotoIcon = photoIcon;
         } else if (photoIcon != null) {
             Log.v(this, "photo icon: ", photoIcon);
             entry.photo = new BitmapDrawable(mContext.getResources(), photoIcon);
@@ -391,6 +485,10 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
             Log.v(this, "unknown photo");
             entry.photo = null;
         }
+        if (entry.photo != null && entry.displayPhotoUri != null) {
+            mPhotoCache.put(entry.displayPhotoUri,
+                    new CachedPhoto(entry.photo, entry.roundedPhotoIcon));
+        }
 
         sendImageNotifications(callId, entry);
 
@@ -405,6 +503,16 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
     public void clearCache() {
         mInfoMap.clear();
         mCallBacks.clear();
+        mPhotoCache.evictAll();
+    }
+
+    /**
+     * Drops the cached entry and any pending lookup for a call that is no longer in the
+     * {@link CallList}. Photos stay in the shared photo cache for other calls to the contact.
+     */
+    public void onCallRemoved(String callId) {
+        mInfoMap.remove(callId);
+        mCallBacks.remove(callId);
     }
 
     private ContactCacheEntry buildEntry(Context context, String callId,
@@ -586,6 +694,9 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
 
     private void sendImageNotifications(String callId, ContactCacheEntry entry) {
         final Set<ContactInfoCacheCallback> callBacks = mCallBacks.get(callId);
+        if (entry.photo != null) {
+            CallSetupTracer.getInstance().mark(callId, CallSetupTracer.MILESTONE_PHOTO_LOADED);
+        }
         if (callBacks != null && entry.photo != null) {
             for (ContactInfoCacheCallback callBack : callBacks) {
                 callBack.onImageLoadComplete(callId, entry);
@@ -659,6 +770,8 @@ public class ContactInfoCache implements ContactsAsyncHelper.OnImageLoadComplete
         public String location;
         public String label;
         public Drawable photo;
+        /** Rounded notification large icon for {@link #photo}, or null if not yet rendered. */
+        public Bitmap roundedPhotoIcon;
         public boolean isSipCall;
         // Note in cache entry whether this is a pending async loading action to know whether to
         // wait for its callback or not.
@@ -21,6 +21,7 @@ import android.content.ContentUris;
 import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
@@ -28,9 +29,11 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.provider.ContactsContract.Contacts;
 
-import com.android.dialer.R;
+import com.android.contacts.common.util.BitmapUtil;
+import com.google.common.annotations.VisibleForTesting;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -50,7 +53,8 @@ public class ContactsAsyncHelper {
          * @param token Integer passed in {@link ContactsAsyncHelper#startObtainPhotoAsync(int,
          * Context, Uri, OnImageLoadCompleteListener, Object)}.
          * @param photo Drawable object obtained by the async load.
-         * @param photoIcon Bitmap object obtained by the async load.
+         * @param photoIcon Rounded Bitmap sized for a notification large icon, obtained by the
+         * async load.
          * @param cookie Object passed in {@link ContactsAsyncHelper#startObtainPhotoAsync(int,
          * Context, Uri, OnImageLoadCompleteListener, Object)}. Can be null iff. the original
          * cookie is null.
@@ -61,6 +65,7 @@ public class ContactsAsyncHelper {
 
     // constants
     private static final int EVENT_LOAD_IMAGE = 1;
+    private static final int DECODE_BUFFER_SIZE = 16 * 1024;
 
     private final Handler mResultHandler = new Handler() {
         /** Called when loading is done. */
@@ -106,6 +111,9 @@ public class ContactsAsyncHelper {
      * the images.
      */
     private class WorkerHandler extends Handler {
+        /** Decode scratch buffer reused across loads; only touched on the worker thread. */
+        private final byte[] mDecodeBuffer = new byte[DECODE_BUFFER_SIZE];
+
         public WorkerHandler(Looper looper) {
             super(looper);
         }
@@ -116,40 +124,24 @@ public class ContactsAsyncHelper {
 
             switch (msg.arg1) {
                 case EVENT_LOAD_IMAGE:
-                    InputStream inputStream = null;
-                    try {
-                        try {
-                            inputStream = args.context.getContentResolver()
-                                    .openInputStream(args.displayPhotoUri);
-                        } catch (Exception e) {
-                            Log.e(this, "Error opening photo input stream", e);
-                        }
-
-                        if (inputStream != null) {
-                            args.photo = Drawable.createFromStream(inputStream,
-                                    args.displayPhotoUri.toString());
-
-                            // This assumes Drawable coming from contact database is usually
-                            // BitmapDrawable and thus we can have (down)scaled version of it.
-                            args.photoIcon = getPhotoIconWhenAppropriate(args.context, args.photo);
-
-                            Log.d(ContactsAsyncHelper.this, "Loading image: " + msg.arg1 +
-                                    " token: " + msg.what + " image URI: " + args.displayPhotoUri);
-                        } else {
-                            args.photo = null;
-                            args.photoIcon = null;
-                            Log.d(ContactsAsyncHelper.this, "Problem with image: " + msg.arg1 +
-                                    " token: " + msg.what + " image URI: " + args.displayPhotoUri +
-                                    ", using default image.");
-                        }
-                    } finally {
-                        if (inputStream != null) {
-                            try {
-                                inputStream.close();
-                            } catch (IOException e) {
-                                Log.e(this, "Unable to close input stream.", e);
-                            }
-                        }
+                    final long startTime = SystemClock.elapsedRealtime();
+                    final Bitmap bitmap = decodeSampledPhoto(args.context, args.displayPhotoUri);
+                    if (bitmap != null) {
+                        args.photo = new BitmapDrawable(args.context.getResources(), bitmap);
+                        args.photoIcon = getRoundedPhotoIcon(args.context, bitmap);
+
+                        Log.d(ContactsAsyncHelper.this, "Loading image: " + msg.arg1 +
+                                " token: " + msg.what + " image URI: " + args.displayPhotoUri);
+                        Log.d(ContactsAsyncHelper.this, "Decoded " + bitmap.getWidth() + "x"
+                                + bitmap.getHeight() + " photo in "
+                                + (SystemClock.elapsedRealtime() - startTime) + "ms, "
+                                + getByteCount(bitmap, args.photoIcon) + " bytes");
+                    } else {
+                        args.photo = null;
+                        args.photoIcon = null;
+                        Log.d(ContactsAsyncHelper.this, "Problem with image: " + msg.arg1 +
+                                " token: " + msg.what + " image URI: " + args.displayPhotoUri +
+                                ", using default image.");
                     }
                     break;
                 default:
@@ -163,39 +155,86 @@ public class ContactsAsyncHelper {
         }
 
         /**
-         * Returns a Bitmap object suitable for {@link Notification}'s large icon. This might
-         * return null when the given Drawable isn't BitmapDrawable, or if the system fails to
-         * create a scaled Bitmap for the Drawable.
+         * Decodes the photo at {@code uri}, sampled down straight to the size it is displayed at
+         * rather than decoding the full-size image first.
+         *
+         * @return the decoded bitmap, or null if the photo could not be opened or decoded.
          */
-        private Bitmap getPhotoIconWhenAppropriate(Context context, Drawable photo) {
-            if (!(photo instanceof BitmapDrawable)) {
+        private Bitmap decodeSampledPhoto(Context context, Uri uri) {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inTempStorage = mDecodeBuffer;
+
+            // First pass only reads the dimensions so the sample size can be chosen.
+            options.inJustDecodeBounds = true;
+            decodeStream(context, uri, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
                 return null;
             }
-            int iconSize = context.getResources()
-                    .getDimensionPixelSize(R.dimen.notification_icon_size);
-            Bitmap orgBitmap = ((BitmapDrawable) photo).getBitmap();
-            int orgWidth = orgBitmap.getWidth();
-            int orgHeight = orgBitmap.getHeight();
-            int longerEdge = orgWidth > orgHeight ? orgWidth : orgHeight;
-            // We want downscaled one only when the original icon is too big.
-            if (longerEdge > iconSize) {
-                float ratio = ((float) longerEdge) / iconSize;
-                int newWidth = (int) (orgWidth / ratio);
-                int newHeight = (int) (orgHeight / ratio);
-                // If the longer edge is much longer than the shorter edge, the latter may
-                // become 0 which will cause a crash.
-                if (newWidth <= 0 || newHeight <= 0) {
-                    Log.w(this, "Photo icon's width or height become 0.");
+
+            final int targetSize = context.getResources().getDisplayMetrics().widthPixels;
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                    targetSize);
+            options.inJustDecodeBounds = false;
+            return decodeStream(context, uri, options);
+        }
+
+        private Bitmap decodeStream(Context context, Uri uri, BitmapFactory.Options options) {
+            InputStream inputStream = null;
+            try {
+                inputStream = context.getContentResolver().openInputStream(uri);
+                if (inputStream == null) {
                     return null;
                 }
+                return BitmapFactory.decodeStream(inputStream, null, options);
+            } catch (Exception e) {
+                Log.e(this, "Error opening photo input stream", e);
+                return null;
+            } finally {
+                if (inputStream != null) {
+                    try {
+                        inputStream.close();
+                    } catch (IOException e) {
+                        Log.e(this, "Unable to close input stream.", e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns a rounded Bitmap suitable for {@link Notification}'s large icon, drawn directly
+         * from the decoded photo so no intermediate scaled copy is created.
+         */
+        private Bitmap getRoundedPhotoIcon(Context context, Bitmap photo) {
+            final int width = (int) context.getResources().getDimension(
+                    android.R.dimen.notification_large_icon_width);
+            final int height = (int) context.getResources().getDimension(
+                    android.R.dimen.notification_large_icon_height);
+            return BitmapUtil.getRoundedBitmap(photo, width, height);
+        }
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps the shorter edge of the decoded
+     * image at least {@code targetSize} pixels.
+     */
+    @VisibleForTesting
+    static int calculateInSampleSize(int width, int height, int targetSize) {
+        int inSampleSize = 1;
+        final int shorterEdge = Math.min(width, height);
+        while (targetSize > 0 && shorterEdge / (inSampleSize * 2) >= targetSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
 
-                // It is sure ratio >= 1.0f in any case and thus the newly created Bitmap
-                // should be smaller than the original.
-                return Bitmap.createScaledBitmap(orgBitmap, newWidth, newHeight, true);
-            } else {
-                return orgBitmap;
+    private static int getByteCount(Bitmap... bitmaps) {
+        int byteCount = 0;
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap != null) {
+                byteCount += bitmap.getByteCount();
             }
         }
+        return byteCount;
     }
 
     /**
@@ -29,7 +29,7 @@ public class DialpadPresenter extends Presenter<DialpadPresenter.DialpadUi>
     @Override
     public void onUiReady(DialpadUi ui) {
         super.onUiReady(ui);
-        InCallPresenter.getInstance().addListener(this);
+        InCallPresenter.getInstance().addListener(this, CallListChange.ASPECTS_CALL_STATE);
         mCall = CallList.getInstance().getOutgoingOrActive();
     }
 
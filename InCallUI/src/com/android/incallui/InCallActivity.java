@@ -51,6 +51,7 @@ import android.view.OrientationEventListener;
 import android.view.Surface;
 import android.view.View;
 import android.view.View.OnTouchListener;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
 import android.view.accessibility.AccessibilityEvent;
@@ -223,6 +224,7 @@ public class InCallActivity extends TransactionSafeActivity implements FragmentD
         InCallPresenter.getInstance().clearFullscreen();
 
         setContentView(R.layout.incall_screen);
+        traceFirstDraw();
 
         internalResolveIntent(getIntent());
 
@@ -292,6 +294,26 @@ public class InCallActivity extends TransactionSafeActivity implements FragmentD
         super.onSaveInstanceState(out);
     }
 
+    /**
+     * Records the first frame of this activity as a setup milestone of the incoming call, if
+     * there is one.
+     */
+    private void traceFirstDraw() {
+        final ViewTreeObserver observer = getWindow().getDecorView().getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                getWindow().getDecorView().getViewTreeObserver().removeOnPreDrawListener(this);
+                final Call call = CallList.getInstance().getIncomingCall();
+                if (call != null) {
+                    CallSetupTracer.getInstance().mark(call.getId(),
+                            CallSetupTracer.MILESTONE_ACTIVITY_FIRST_DRAW);
+                }
+                return true;
+            }
+        });
+    }
+
     @Override
     protected void onStart() {
         Log.d(this, "onStart()...");
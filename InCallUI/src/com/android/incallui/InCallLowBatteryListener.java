@@ -96,7 +96,8 @@ public class InCallLowBatteryListener implements CallList.Listener, InCallDetail
         mPrimaryCallTracker = new PrimaryCallTracker();
         mCallList = CallList.getInstance();
         mCallList.addListener(this);
-        InCallPresenter.getInstance().addListener(mPrimaryCallTracker);
+        InCallPresenter.getInstance().addListener(mPrimaryCallTracker,
+                CallListChange.ASPECTS_CALL_STATE);
         InCallPresenter.getInstance().addIncomingCallListener(mPrimaryCallTracker);
         InCallPresenter.getInstance().addDetailsListener(this);
         InCallPresenter.getInstance().addInCallUiListener(this);
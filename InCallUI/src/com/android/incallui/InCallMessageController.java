@@ -89,7 +89,8 @@ public class InCallMessageController implements InCallSubstateListener, VideoEve
         InCallVideoCallCallbackNotifier.getInstance().addVideoEventListener(this);
         CallList.getInstance().addListener(this);
         SessionModificationCauseNotifier.getInstance().addListener(this);
-        InCallPresenter.getInstance().addListener(mPrimaryCallTracker);
+        InCallPresenter.getInstance().addListener(mPrimaryCallTracker,
+                CallListChange.ASPECTS_CALL_STATE);
         InCallVideoCallCallbackNotifier.getInstance().addSessionModificationListener(this);
         InCallPresenter.getInstance().addDetailsListener(this);
         mStatsService = INetworkStatsService.Stub.asInterface(
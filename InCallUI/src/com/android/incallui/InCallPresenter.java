@@ -64,13 +64,19 @@ import com.android.dialer.util.TelecomUtil;
 import com.android.incallui.util.TelecomCallUtil;
 import com.android.incalluibind.ObjectFactory;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -102,6 +108,15 @@ public class InCallPresenter implements CallList.Listener,
      */
     private final Set<InCallStateListener> mListeners = Collections.newSetFromMap(
             new ConcurrentHashMap<InCallStateListener, Boolean>(8, 0.9f, 1));
+    /** Aspects that listeners added with {@link #addListener(InCallStateListener, int)} need. */
+    private final Map<InCallStateListener, Integer> mListenerAspects =
+            new ConcurrentHashMap<InCallStateListener, Integer>(8, 0.9f, 1);
+    /** Listeners notified on {@link #mBackgroundListenerExecutor}, with their aspects. */
+    private final Map<BackgroundInCallStateListener, Integer> mBackgroundListeners =
+            new ConcurrentHashMap<BackgroundInCallStateListener, Integer>(8, 0.9f, 1);
+    /** Serial, so background listeners see the changes in the order they happened. */
+    private final ThreadPoolExecutor mBackgroundListenerExecutor =
+            createBackgroundListenerExecutor();
     private final List<IncomingCallListener> mIncomingCallListeners = new CopyOnWriteArrayList<>();
     private final Set<InCallDetailsListener> mDetailsListeners = Collections.newSetFromMap(
             new ConcurrentHashMap<InCallDetailsListener, Boolean>(8, 0.9f, 1));
@@ -344,7 +359,7 @@ public class InCallPresenter implements CallList.Listener,
         mAudioModeProvider = audioModeProvider;
 
         mProximitySensor = proximitySensor;
-        addListener(mProximitySensor);
+        addBackgroundListener(mProximitySensor, CallListChange.ASPECTS_CALL_STATE);
 
         // dismiss any pending dialogues related to earlier call, which
         // are no longer relevant now.
@@ -378,6 +393,7 @@ public class InCallPresenter implements CallList.Listener,
         mTelephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
         mTelephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_CALL_STATE);
         mCallList.setFilteredNumberQueryHandler(mFilteredQueryHandler);
+        mCallList.setContactInfoCache(mContactInfoCache);
 
         InCallMessageController.getInstance().setUp(mContext);
         OrientationModeHandler.getInstance().setUp();
@@ -543,7 +559,7 @@ public class InCallPresenter implements CallList.Listener,
         // state here even if the service is disconnected since we may not have finished a state
         // transition while finish()ing.
         if (updateListeners) {
-            onCallListChange(mCallList);
+            onCallListChange(mCallList, CallListChange.UNKNOWN);
         }
 
         if (doAttemptCleanup) {
@@ -553,6 +569,12 @@ public class InCallPresenter implements CallList.Listener,
 
     private boolean mAwaitingCallListUpdate = false;
 
+    /**
+     * Whether the listeners were notified of the previous CallList change, which is required to
+     * skip listeners based on {@link CallList#getLastChange()}.
+     */
+    private boolean mHasDispatchedPreviousChange = false;
+
     public void onBringToForeground(boolean showDialpad) {
         Log.i(this, "Bringing UI to foreground.");
         bringToForeground(showDialpad);
@@ -624,6 +646,8 @@ public class InCallPresenter implements CallList.Listener,
         OnCheckBlockedListener onCheckBlockedListener = new OnCheckBlockedListener() {
             @Override
             public void onCheckComplete(final Integer id) {
+                CallSetupTracer.getInstance().mark(call,
+                        CallSetupTracer.MILESTONE_BLOCK_CHECK_COMPLETE);
                 if (!hasTimedOut.get()) {
                     handler.removeCallbacks(runnable);
                 }
@@ -651,6 +675,8 @@ public class InCallPresenter implements CallList.Listener,
                 onCheckBlockedListener, number, countryIso);
         if (!success) {
             Log.d(this, "checkForBlockedCall: invalid number, skipping block checking");
+            CallSetupTracer.getInstance().mark(call,
+                    CallSetupTracer.MILESTONE_BLOCK_CHECK_COMPLETE);
             if (!hasTimedOut.get()) {
                 handler.removeCallbacks(runnable);
                 mCallList.onCallAdded(call);
@@ -682,9 +708,18 @@ public class InCallPresenter implements CallList.Listener,
      */
     @Override
     public void onCallListChange(CallList callList) {
+        // The change set is relative to the previous CallList notification, so it can only be
+        // used to filter listeners if that notification was dispatched as well.
+        final CallListChange change = mHasDispatchedPreviousChange && callList != null
+                ? callList.getLastChange() : CallListChange.UNKNOWN;
+        onCallListChange(callList, change);
+    }
+
+    private void onCallListChange(CallList callList, CallListChange change) {
         if (mInCallActivity != null && mInCallActivity.getCallCardFragment() != null &&
                 mInCallActivity.getCallCardFragment().isAnimating()) {
             mAwaitingCallListUpdate = true;
+            mHasDispatchedPreviousChange = false;
             return;
         }
         if (callList == null) {
@@ -692,20 +727,42 @@ public class InCallPresenter implements CallList.Listener,
         }
 
         mAwaitingCallListUpdate = false;
+        mHasDispatchedPreviousChange = true;
 
+        // The log calls on this path are guarded, as even their varargs arrays would allocate.
         InCallState newState = getPotentialStateFromCallList(callList);
         InCallState oldState = mInCallState;
-        Log.d(this, "onCallListChange oldState= " + oldState + " newState=" + newState);
+        if (Log.DEBUG) {
+            Log.dFormat(this, "onCallListChange oldState= %s newState=%s", oldState, newState);
+        }
         newState = startOrFinishUi(newState);
-        Log.d(this, "onCallListChange newState changed to " + newState);
+        if (Log.DEBUG) {
+            Log.dFormat(this, "onCallListChange newState changed to %s", newState);
+        }
 
         // Set the new state before announcing it to the world
-        Log.i(this, "Phone switching state: " + oldState + " -> " + newState);
+        final boolean inCallStateChanged = oldState != newState;
+        if (inCallStateChanged) {
+            Log.iFormat(this, "Phone switching state: %s -> %s", oldState, newState);
+        }
         mInCallState = newState;
 
         // notify listeners of new state
+        if (!mBackgroundListeners.isEmpty()) {
+            notifyBackgroundListeners(oldState, mInCallState, change, inCallStateChanged,
+                    callList.getSnapshot());
+        }
         for (InCallStateListener listener : mListeners) {
-            Log.d(this, "Notify " + listener + " of state " + mInCallState.toString());
+            final Integer aspects = mListenerAspects.get(listener);
+            if (!inCallStateChanged && aspects != null && !change.hasAnyAspect(aspects)) {
+                if (Log.VERBOSE) {
+                    Log.vFormat(this, "Skipping %s, no relevant change in %s", listener, change);
+                }
+                continue;
+            }
+            if (Log.DEBUG) {
+                Log.dFormat(this, "Notify %s of state %s", listener, mInCallState);
+            }
             listener.onStateChange(oldState, mInCallState, callList);
         }
 
@@ -719,6 +776,47 @@ public class InCallPresenter implements CallList.Listener,
         }
     }
 
+    private void notifyBackgroundListeners(final InCallState oldState,
+            final InCallState newState, CallListChange change, boolean inCallStateChanged,
+            final CallListSnapshot snapshot) {
+        final List<BackgroundInCallStateListener> listeners = new ArrayList<>();
+        for (Map.Entry<BackgroundInCallStateListener, Integer> entry
+                : mBackgroundListeners.entrySet()) {
+            if (inCallStateChanged || change.hasAnyAspect(entry.getValue())) {
+                listeners.add(entry.getKey());
+            }
+        }
+        if (listeners.isEmpty()) {
+            return;
+        }
+        mBackgroundListenerExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (BackgroundInCallStateListener listener : listeners) {
+                    if (mBackgroundListeners.containsKey(listener)) {
+                        if (Log.DEBUG) {
+                            Log.dFormat(InCallPresenter.this, "Notify %s of state %s in background",
+                                    listener, newState);
+                        }
+                        listener.onStateChange(oldState, newState, snapshot);
+                    }
+                }
+            }
+        });
+    }
+
+    private static ThreadPoolExecutor createBackgroundListenerExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "InCallStateListeners");
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Called when there is a new incoming call.
      *
@@ -729,7 +827,7 @@ public class InCallPresenter implements CallList.Listener,
         InCallState newState = startOrFinishUi(InCallState.INCOMING);
         InCallState oldState = mInCallState;
 
-        Log.i(this, "Phone switching state: " + oldState + " -> " + newState);
+        Log.iFormat(this, "Phone switching state: %s -> %s", oldState, newState);
         mInCallState = newState;
 
         for (IncomingCallListener listener : mIncomingCallListeners) {
@@ -760,7 +858,7 @@ public class InCallPresenter implements CallList.Listener,
         dismissDeflectOrTransferDialog(call.getId());
 
         // We need to do the run the same code as onCallListChange.
-        onCallListChange(mCallList);
+        onCallListChange(mCallList, CallListChange.UNKNOWN);
 
         if (isActivityStarted()) {
             mInCallActivity.dismissKeyguard(false);
@@ -875,7 +973,7 @@ public class InCallPresenter implements CallList.Listener,
 
     public void onShrinkAnimationComplete() {
         if (mAwaitingCallListUpdate) {
-            onCallListChange(mCallList);
+            onCallListChange(mCallList, CallListChange.UNKNOWN);
         }
     }
 
@@ -895,9 +993,45 @@ public class InCallPresenter implements CallList.Listener,
         mListeners.add(listener);
     }
 
+    /**
+     * Adds a listener that is only notified of call list updates that change one of the given
+     * aspects, or the in-call state itself.
+     *
+     * @param aspects Bitmask of {@code CallListChange.ASPECT_*} values.
+     */
+    public void addListener(InCallStateListener listener, int aspects) {
+        Preconditions.checkNotNull(listener);
+        mListenerAspects.put(listener, aspects);
+        mListeners.add(listener);
+    }
+
     public void removeListener(InCallStateListener listener) {
         if (listener != null) {
             mListeners.remove(listener);
+            mListenerAspects.remove(listener);
+        }
+    }
+
+    /**
+     * Adds a listener that is notified on a background thread, after the main thread listeners
+     * have been scheduled, of call list updates that change one of the given aspects or the
+     * in-call state. Use for work that does not touch UI, such as sensor or telephony calls, so
+     * that it does not delay the UI update.
+     *
+     * @param aspects Bitmask of {@code CallListChange.ASPECT_*} values.
+     */
+    public void addBackgroundListener(BackgroundInCallStateListener listener, int aspects) {
+        Preconditions.checkNotNull(listener);
+        mBackgroundListeners.put(listener, aspects);
+    }
+
+    /**
+     * Removes a background listener. A notification that was already queued for it is dropped,
+     * but one that is running when this is called completes.
+     */
+    public void removeBackgroundListener(BackgroundInCallStateListener listener) {
+        if (listener != null) {
+            mBackgroundListeners.remove(listener);
         }
     }
 
@@ -1726,7 +1860,7 @@ public class InCallPresenter implements CallList.Listener,
             mContactInfoCache = null;
 
             if (mProximitySensor != null) {
-                removeListener(mProximitySensor);
+                removeBackgroundListener(mProximitySensor);
                 mProximitySensor.tearDown();
             }
             mProximitySensor = null;
@@ -1758,6 +1892,9 @@ public class InCallPresenter implements CallList.Listener,
             mInCallActivity = null;
 
             mListeners.clear();
+            mListenerAspects.clear();
+            mBackgroundListeners.clear();
+            mHasDispatchedPreviousChange = false;
             mIncomingCallListeners.clear();
             mDetailsListeners.clear();
             mCanAddCallListeners.clear();
@@ -2169,6 +2306,21 @@ public class InCallPresenter implements CallList.Listener,
         public void onStateChange(InCallState oldState, InCallState newState, CallList callList);
     }
 
+    /**
+     * Interface implemented by classes that need to know about the InCall State but do not
+     * touch UI, so they can be notified off the main thread.
+     * {@see InCallPresenter#addBackgroundListener}
+     */
+    public interface BackgroundInCallStateListener {
+        /**
+         * Called on a background thread, in order, for each notified change.
+         *
+         * @param snapshot The calls as of the change.
+         */
+        public void onStateChange(InCallState oldState, InCallState newState,
+                CallListSnapshot snapshot);
+    }
+
     public interface IncomingCallListener {
         public void onIncomingCall(InCallState oldState, InCallState newState, Call call);
     }
@@ -24,6 +24,11 @@ import android.telecom.CallAudioState;
 import android.telecom.InCallService;
 import android.telephony.TelephonyManager;
 
+import com.android.dialer.logging.Logger;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /**
  * Used to receive updates about calls from the Telecom component.  This service is bound to
  * Telecom while there exist calls which potentially require UI. This includes ringing (incoming),
@@ -47,12 +52,14 @@ public class InCallServiceImpl extends InCallService {
 
     @Override
     public void onCallAdded(Call call) {
+        CallSetupTracer.getInstance().onServiceCallAdded(call);
         InCallPresenter.getInstance().onCallAdded(call);
     }
 
     @Override
     public void onCallRemoved(Call call) {
         InCallPresenter.getInstance().onCallRemoved(call);
+        CallSetupTracer.getInstance().onServiceCallRemoved(call);
     }
 
     @Override
@@ -95,6 +102,12 @@ public class InCallServiceImpl extends InCallService {
         return false;
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        CallSetupTracer.getInstance().dump(pw);
+        Logger.dumpMetrics(pw);
+    }
+
     private void tearDown() {
         Log.v(this, "tearDown");
         // Tear down the InCall system
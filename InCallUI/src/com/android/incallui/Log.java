@@ -22,6 +22,7 @@ import android.telephony.PhoneNumberUtils;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 
 /**
  * Manages logging for the entire class.
@@ -68,6 +69,28 @@ public class Log {
         }
     }
 
+    /**
+     * Logs a debug message built with {@link String#format} only if debug logging is enabled.
+     * The arguments' {@code toString()} is not invoked when the message is dropped, but the
+     * varargs array and any boxed primitives are still allocated, so callers guard it with
+     * {@code if (Log.DEBUG)}.
+     */
+    public static void dFormat(Object obj, String format, Object... args) {
+        if (DEBUG) {
+            android.util.Log.d(TAG, getPrefix(obj) + format(format, args));
+        }
+    }
+
+    /**
+     * Logs a verbose message built with {@link String#format} only if verbose logging is
+     * enabled.
+     */
+    public static void vFormat(Object obj, String format, Object... args) {
+        if (VERBOSE) {
+            android.util.Log.v(TAG, getPrefix(obj) + format(format, args));
+        }
+    }
+
     public static void e(String tag, String msg, Exception e) {
         android.util.Log.e(TAG, delimit(tag) + msg, e);
     }
@@ -92,6 +115,12 @@ public class Log {
         android.util.Log.i(TAG, getPrefix(obj) + msg);
     }
 
+    public static void iFormat(Object obj, String format, Object... args) {
+        if (android.util.Log.isLoggable(TAG, android.util.Log.INFO)) {
+            android.util.Log.i(TAG, getPrefix(obj) + format(format, args));
+        }
+    }
+
     public static void w(Object obj, String msg) {
         android.util.Log.w(TAG, getPrefix(obj) + msg);
     }
@@ -166,6 +195,10 @@ public class Log {
         return hex.toString();
     }
 
+    private static String format(String format, Object... args) {
+        return args == null || args.length == 0 ? format : String.format(Locale.US, format, args);
+    }
+
     private static String getPrefix(Object obj) {
         return (obj == null ? "" : (obj.getClass().getSimpleName() + TAG_DELIMETER));
     }
@@ -71,7 +71,8 @@ public class OrientationModeHandler implements InCallDetailsListener, InCallUiLi
      */
     public void setUp() {
         mPrimaryCallTracker = new PrimaryCallTracker();
-        InCallPresenter.getInstance().addListener(mPrimaryCallTracker);
+        InCallPresenter.getInstance().addListener(mPrimaryCallTracker,
+                CallListChange.ASPECTS_CALL_STATE);
         InCallPresenter.getInstance().addDetailsListener(this);
         InCallPresenter.getInstance().addInCallUiListener(this);
     }
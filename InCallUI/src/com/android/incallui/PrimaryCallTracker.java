@@ -50,8 +50,10 @@ public class PrimaryCallTracker implements InCallStateListener, IncomingCallList
     @Override
     public void onStateChange(InCallPresenter.InCallState oldState,
             InCallPresenter.InCallState newState, CallList callList) {
-        Log.d(this, "onStateChange: oldState" + oldState + " newState=" + newState +
-                "callList =" + callList);
+        if (Log.DEBUG) {
+            Log.dFormat(this, "onStateChange: oldState=%s newState=%s callList=%s", oldState,
+                    newState, callList);
+        }
 
         // Determine the primary active call.
         Call primaryCall = null;
@@ -29,7 +29,7 @@ import android.provider.Settings;
 
 import com.android.incallui.AudioModeProvider.AudioModeListener;
 import com.android.incallui.InCallPresenter.InCallState;
-import com.android.incallui.InCallPresenter.InCallStateListener;
+import com.android.incallui.InCallPresenter.BackgroundInCallStateListener;
 
 /**
  * Class manages the proximity sensor for the in-call UI.
@@ -39,9 +39,12 @@ import com.android.incallui.InCallPresenter.InCallStateListener;
  * The class requires special knowledge of the activity and device state to know when the proximity
  * sensor should be enabled and disabled. Most of that state is fed into this class through
  * public methods.
+ * Call state changes arrive on a background thread, since acquiring the wake lock and enabling
+ * the accelerometer are binder calls; the rest arrives on the main thread. The state is guarded
+ * by this object's lock.
  */
 public class ProximitySensor implements AccelerometerListener.OrientationListener,
-        InCallStateListener, AudioModeListener {
+        BackgroundInCallStateListener, AudioModeListener {
     private static final String TAG = ProximitySensor.class.getSimpleName();
     private static final String PROXIMITY_SENSOR = "proximity_sensor";
 
@@ -50,15 +53,17 @@ public class ProximitySensor implements AccelerometerListener.OrientationListene
     private final AudioModeProvider mAudioModeProvider;
     private final AccelerometerListener mAccelerometerListener;
     private final ProximityDisplayListener mDisplayListener;
-    private int mOrientation = AccelerometerListener.ORIENTATION_UNKNOWN;
-    private boolean mUiShowing = false;
+    private volatile int mOrientation = AccelerometerListener.ORIENTATION_UNKNOWN;
+    private volatile boolean mUiShowing = false;
     private boolean mIsPhoneOffhook = false;
-    private boolean mDialpadVisible;
+    private volatile boolean mDialpadVisible;
     private Context mContext;
+    /** Set once torn down, so that a late background state change does not turn it back on. */
+    private boolean mIsTornDown;
 
     // True if the keyboard is currently *not* hidden
     // Gets updated whenever there is a Configuration change
-    private boolean mIsHardKeyboardOpen;
+    private volatile boolean mIsHardKeyboardOpen;
 
     public ProximitySensor(Context context, AudioModeProvider audioModeProvider,
             AccelerometerListener accelerometerListener) {
@@ -85,10 +90,13 @@ public class ProximitySensor implements AccelerometerListener.OrientationListene
     public void tearDown() {
         mAudioModeProvider.removeListener(this);
 
-        mAccelerometerListener.enable(false);
-        mDisplayListener.unregister();
+        synchronized (this) {
+            mIsTornDown = true;
+            mAccelerometerListener.enable(false);
+            mDisplayListener.unregister();
 
-        turnOffProximitySensor(true);
+            turnOffProximitySensor(true);
+        }
     }
 
     /**
@@ -104,11 +112,15 @@ public class ProximitySensor implements AccelerometerListener.OrientationListene
      * Called to keep track of the overall UI state.
      */
     @Override
-    public void onStateChange(InCallState oldState, InCallState newState, CallList callList) {
+    public synchronized void onStateChange(InCallState oldState, InCallState newState,
+            CallListSnapshot snapshot) {
+        if (mIsTornDown) {
+            return;
+        }
         // We ignore incoming state because we do not want to enable proximity
         // sensor during incoming call screen. We check hasLiveCall() because a disconnected call
         // can also put the in-call screen in the INCALL state.
-        boolean hasOngoingCall = InCallState.INCALL == newState && callList.hasLiveCall();
+        boolean hasOngoingCall = InCallState.INCALL == newState && snapshot.hasLiveCall();
         boolean isOffhook = (InCallState.OUTGOING == newState) || hasOngoingCall;
 
         if (isOffhook != mIsPhoneOffhook) {
@@ -167,7 +179,7 @@ public class ProximitySensor implements AccelerometerListener.OrientationListene
         updateProximitySensorMode();
     }
 
-    void onDisplayStateChanged(boolean isDisplayOn) {
+    synchronized void onDisplayStateChanged(boolean isDisplayOn) {
         Log.i(this, "isDisplayOn: " + isDisplayOn);
         mAccelerometerListener.enable(isDisplayOn);
     }
@@ -227,6 +239,9 @@ public class ProximitySensor implements AccelerometerListener.OrientationListene
      * 4) If the slider is open(i.e. the hardkeyboard is *not* hidden)
      */
     private synchronized void updateProximitySensorMode() {
+        if (mIsTornDown) {
+            return;
+        }
         final int audioMode = mAudioModeProvider.getAudioMode();
 
         // turn proximity sensor off and turn screen on immediately if
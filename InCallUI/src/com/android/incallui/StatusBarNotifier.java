@@ -43,13 +43,13 @@ import android.telecom.Call.Details;
 import android.telecom.PhoneAccount;
 import android.telecom.PhoneAccountHandle;
 import android.telecom.TelecomManager;
-import android.telecom.VideoProfile;
 import android.telephony.TelephonyManager;
 import android.telephony.SubscriptionInfo;
 import android.telephony.SubscriptionManager;
 import android.text.BidiFormatter;
 import android.text.TextDirectionHeuristics;
 import android.text.TextUtils;
+import android.util.LruCache;
 
 import com.android.contacts.common.compat.telecom.TelecomManagerCompat;
 import com.android.contacts.common.ContactsUtils;
@@ -68,6 +68,8 @@ import com.android.incallui.ringtone.DialerRingtoneManager;
 import com.android.incallui.ringtone.InCallTonePlayer;
 import com.android.incallui.ringtone.ToneGeneratorFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import org.codeaurora.ims.QtiCallConstants;
 
@@ -87,6 +89,18 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
 
     private static final long[] VIBRATE_PATTERN = new long[] {0, 1000, 1000};
 
+    // Notification actions, as listed in a NotificationModel.
+    private static final int ACTION_ANSWER = 0;
+    private static final int ACTION_ANSWER_VOICE = 1;
+    private static final int ACTION_ANSWER_VIDEO = 2;
+    private static final int ACTION_DISMISS = 3;
+    private static final int ACTION_HANG_UP = 4;
+    private static final int ACTION_ACCEPT_UPGRADE = 5;
+    private static final int ACTION_DISMISS_UPGRADE = 6;
+
+    /** Enough for every call in a conference to have its own contact photo. */
+    private static final int MAX_ROUNDED_ICONS = 8;
+
     private final Context mContext;
     @Nullable private ContactsPreferences mContactsPreferences;
     private final ContactInfoCache mContactInfoCache;
@@ -94,15 +108,19 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
     private final TelephonyManager mTelephonyManager;
     private final DialerRingtoneManager mDialerRingtoneManager;
     private int mCurrentNotification = NOTIFICATION_NONE;
-    private int mCallState = Call.State.INVALID;
-    private int mVideoState = VideoProfile.STATE_AUDIO_ONLY;
-    private int mSavedIcon = 0;
-    private String mSavedContent = null;
-    private Bitmap mSavedLargeIcon;
-    private String mSavedContentTitle;
+    /** What the notification on screen shows, or null if there is none. */
+    private NotificationModel mSavedModel;
+    /**
+     * Rounded and scaled large icons, keyed by the bitmap they were made from. Contact photos
+     * are shared per contact by {@link ContactInfoCache}, so this holds one icon per contact.
+     */
+    private final LruCache<Bitmap, Bitmap> mRoundedIconCache =
+            new LruCache<Bitmap, Bitmap>(MAX_ROUNDED_ICONS);
+    private Bitmap mConferenceIcon;
     private String mCallId = null;
+    /** Id of the last incoming call whose fully populated notification latency was logged. */
+    private String mLoggedPopulatedCallId = null;
     private InCallState mInCallState;
-    private Uri mRingtone;
     private static final String EXTRA_KEY_SHOW = "showCallStatusBar";
     private static final String EXTRA_KEY_CALL_STATE = "callState";
     private static final String EXTRA_KEY_CHRONOMETER_TIME = "baseChronometerMillis";
@@ -201,6 +219,7 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
             mNotificationManager.cancel(mCurrentNotification);
         }
         mCurrentNotification = NOTIFICATION_NONE;
+        mSavedModel = null;
     }
 
     /**
@@ -309,6 +328,63 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         });
     }
 
+    /**
+     * Everything that ends up in the posted notification. Two equal models render the same
+     * notification, so an update whose model equals the one on screen is not posted again.
+     */
+    @NeededForTesting
+    static final class NotificationModel {
+        int notificationType;
+        int callState;
+        /** Picks the icon of the video answer action. */
+        int videoState;
+        int iconResId;
+        String contentText;
+        String contentTitle;
+        String publicContentTitle;
+        /** Compared by identity; icons are memoized so an unchanged photo keeps its bitmap. */
+        Bitmap largeIcon;
+        boolean usesChronometer;
+        boolean publicUsesChronometer;
+        long when;
+        boolean fullScreen;
+        final List<Integer> actions = new ArrayList<>();
+        String person;
+        Uri ringtone;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof NotificationModel)) {
+                return false;
+            }
+            final NotificationModel other = (NotificationModel) o;
+            return notificationType == other.notificationType
+                    && callState == other.callState
+                    && videoState == other.videoState
+                    && iconResId == other.iconResId
+                    && Objects.equals(contentText, other.contentText)
+                    && Objects.equals(contentTitle, other.contentTitle)
+                    && Objects.equals(publicContentTitle, other.publicContentTitle)
+                    && largeIcon == other.largeIcon
+                    && usesChronometer == other.usesChronometer
+                    && publicUsesChronometer == other.publicUsesChronometer
+                    && when == other.when
+                    && fullScreen == other.fullScreen
+                    && actions.equals(other.actions)
+                    && Objects.equals(person, other.person)
+                    && Objects.equals(ringtone, other.ringtone);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(notificationType, callState, iconResId, contentText, contentTitle,
+                    when, actions);
+        }
+    }
+
     /**
      * Sets up the main Ui for the notification
      */
@@ -321,60 +397,17 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
             return;
         }
 
-        final int callState = call.getState();
-
         // Check if data has changed; if nothing is different, don't issue another notification.
-        final int iconResId;
-        Bitmap largeIcon = getLargeIconToDisplay(contactInfo, call);
-        String content =
-                getContentString(call, contactInfo.userType);
-        int wifiQualityValue = call.getWifiQuality();
-        if (wifiQualityValue != QtiCallConstants.VOWIFI_QUALITY_NONE) {
-            iconResId = getVoWiFiQualityIcon(wifiQualityValue);
-            content += " " + getVoWiFiQualityText(wifiQualityValue);
-        } else {
-            iconResId = getIconToDisplay(call);
-        }
-        final String contentTitle = getContentTitle(contactInfo, call);
-
-        final boolean isVideoUpgradeRequest = call.getSessionModificationState()
-                == Call.SessionModificationState.RECEIVED_UPGRADE_TO_VIDEO_REQUEST;
-        final Call pendingAccountSelectionCall = CallList.getInstance()
-                .getWaitingForAccountCall();
-        final int notificationType;
-        if ((callState == Call.State.INCOMING || callState == Call.State.CALL_WAITING
-                || isVideoUpgradeRequest) && (!InCallPresenter.getInstance().isShowingInCallUi()
-                || pendingAccountSelectionCall != null)) {
-            notificationType = NOTIFICATION_INCOMING_CALL;
-        } else {
-            notificationType = NOTIFICATION_IN_CALL;
-        }
-
-        if (!checkForChangeAndSaveData(iconResId, content, largeIcon, contentTitle, callState,
-                call.getVideoState(), notificationType, contactInfo.contactRingtoneUri)) {
+        final NotificationModel model = createNotificationModel(call, contactInfo);
+        if (mCurrentNotification == model.notificationType && model.equals(mSavedModel)) {
+            Log.v(this, "Notification unchanged, not posting");
             return;
         }
-
-        if (largeIcon != null) {
-            largeIcon = getRoundedIcon(largeIcon);
-        }
-
-        //set the content
-        boolean isMultiSimDevice = mTelephonyManager.isMultiSimEnabled();
-        if (isMultiSimDevice) {
-            PhoneAccountHandle ph = call.getAccountHandle();
-            String accountLabel = null;
-            if (ph != null) {
-                PhoneAccount account = TelecomManagerCompat.getPhoneAccount(
-                        InCallPresenter.getInstance().getTelecomManager(), ph);
-                if (account != null && !TextUtils.isEmpty(account.getLabel())) {
-                    accountLabel = account.getLabel().toString();
-                }
-            }
-            if (!TextUtils.isEmpty(accountLabel)) {
-                content += " (" + accountLabel + ")";
-            }
+        if (mCurrentNotification == NOTIFICATION_NONE) {
+            Log.d(this, "Showing notification for first time.");
         }
+        mSavedModel = model;
+        final int callState = model.callState;
 
         /*
          * This builder is used for the notification shown when the device is locked and the user
@@ -382,11 +415,11 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
          * {@see Notification.Builder#setPublicVersion}.
          */
         Notification.Builder publicBuilder = new Notification.Builder(mContext);
-        publicBuilder.setSmallIcon(iconResId)
+        publicBuilder.setSmallIcon(model.iconResId)
                 .setColor(mContext.getResources().getColor(R.color.dialer_theme_color))
                 // Hide work call state for the lock screen notification
-                .setContentTitle(getContentString(call, ContactsUtils.USER_TYPE_CURRENT));
-        setNotificationWhen(call, callState, publicBuilder);
+                .setContentTitle(model.publicContentTitle);
+        setNotificationWhen(model.publicUsesChronometer, model.when, publicBuilder);
 
         /*
          * Builder for the notification shown when the device is unlocked or the user has set their
@@ -400,39 +433,34 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         builder.setContentIntent(inCallPendingIntent);
 
         // Set the intent as a full screen intent as well if a call is incoming
-        if (notificationType == NOTIFICATION_INCOMING_CALL
-                && (!InCallPresenter.getInstance().isShowingInCallUi() ||
-                   (pendingAccountSelectionCall != null))) {
+        if (model.fullScreen) {
             configureFullScreenIntent(builder, inCallPendingIntent, call);
             // Set the notification category for incoming calls
             builder.setCategory(Notification.CATEGORY_CALL);
         }
 
         // Set the content
-        builder.setContentText(content);
-        builder.setSmallIcon(iconResId);
-        builder.setContentTitle(contentTitle);
-        builder.setLargeIcon(largeIcon);
+        builder.setContentText(model.contentText);
+        builder.setSmallIcon(model.iconResId);
+        builder.setContentTitle(model.contentTitle);
+        builder.setLargeIcon(model.largeIcon);
         builder.setColor(mContext.getResources().getColor(R.color.dialer_theme_color));
-
-        if (isVideoUpgradeRequest) {
-            builder.setUsesChronometer(false);
-            addDismissUpgradeRequestAction(builder);
-            addAcceptUpgradeRequestAction(builder);
-        } else {
-            createIncomingCallNotification(call, callState, builder);
+        setNotificationWhen(model.usesChronometer, model.when, builder);
+        for (int action : model.actions) {
+            addAction(builder, action, model.videoState);
+        }
+        if (model.person != null) {
+            builder.addPerson(model.person);
         }
-
-        addPersonReference(builder, contactInfo, call);
 
         /*
          * Fire off the notification
          */
         Notification notification = builder.build();
 
-        if (mDialerRingtoneManager.shouldPlayRingtone(callState, contactInfo.contactRingtoneUri)) {
+        if (mDialerRingtoneManager.shouldPlayRingtone(callState, model.ringtone)) {
             notification.flags |= Notification.FLAG_INSISTENT;
-            notification.sound = contactInfo.contactRingtoneUri;
+            notification.sound = model.ringtone;
             AudioAttributes.Builder audioAttributes = new AudioAttributes.Builder();
             audioAttributes.setContentType(AudioAttributes.CONTENT_TYPE_MUSIC);
             audioAttributes.setUsage(AudioAttributes.USAGE_NOTIFICATION_RINGTONE);
@@ -445,6 +473,7 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
             Log.v(this, "Playing call waiting tone");
             mDialerRingtoneManager.playCallWaitingTone();
         }
+        final int notificationType = model.notificationType;
         if (mCurrentNotification != notificationType && mCurrentNotification != NOTIFICATION_NONE) {
             Log.i(this, "Previous notification already showing - cancelling "
                     + mCurrentNotification);
@@ -453,26 +482,107 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         Log.i(this, "Displaying notification for " + notificationType);
         mNotificationManager.notify(notificationType, notification);
         mCurrentNotification = notificationType;
+        if (notificationType == NOTIFICATION_INCOMING_CALL) {
+            CallSetupTracer.getInstance().mark(call.getId(),
+                    CallSetupTracer.MILESTONE_NOTIFICATION_POSTED);
+        }
+        maybeLogPopulatedLatency(call, contactInfo, notificationType);
     }
 
-    private void createIncomingCallNotification(
-            Call call, int state, Notification.Builder builder) {
-        setNotificationWhen(call, state, builder);
+    /**
+     * Collects what the notification for {@code call} would show. This is cheap compared to
+     * building and posting a notification: the strings are resources and the large icon is
+     * memoized.
+     */
+    private NotificationModel createNotificationModel(Call call, ContactCacheEntry contactInfo) {
+        final NotificationModel model = new NotificationModel();
+        final int callState = call.getState();
+        model.callState = callState;
+        model.videoState = call.getVideoState();
+
+        String content = getContentString(call, contactInfo.userType);
+        int wifiQualityValue = call.getWifiQuality();
+        if (wifiQualityValue != QtiCallConstants.VOWIFI_QUALITY_NONE) {
+            model.iconResId = getVoWiFiQualityIcon(wifiQualityValue);
+            content += " " + getVoWiFiQualityText(wifiQualityValue);
+        } else {
+            model.iconResId = getIconToDisplay(call);
+        }
+        model.contentTitle = getContentTitle(contactInfo, call);
+        model.largeIcon = getLargeIconToDisplay(contactInfo, call);
+
+        final boolean isVideoUpgradeRequest = call.getSessionModificationState()
+                == Call.SessionModificationState.RECEIVED_UPGRADE_TO_VIDEO_REQUEST;
+        final Call pendingAccountSelectionCall = CallList.getInstance()
+                .getWaitingForAccountCall();
+        if ((callState == Call.State.INCOMING || callState == Call.State.CALL_WAITING
+                || isVideoUpgradeRequest) && (!InCallPresenter.getInstance().isShowingInCallUi()
+                || pendingAccountSelectionCall != null)) {
+            model.notificationType = NOTIFICATION_INCOMING_CALL;
+            model.fullScreen = true;
+        } else {
+            model.notificationType = NOTIFICATION_IN_CALL;
+        }
+
+        //set the content
+        boolean isMultiSimDevice = mTelephonyManager.isMultiSimEnabled();
+        if (isMultiSimDevice) {
+            PhoneAccountHandle ph = call.getAccountHandle();
+            String accountLabel = null;
+            if (ph != null) {
+                PhoneAccount account = TelecomManagerCompat.getPhoneAccount(
+                        InCallPresenter.getInstance().getTelecomManager(), ph);
+                if (account != null && !TextUtils.isEmpty(account.getLabel())) {
+                    accountLabel = account.getLabel().toString();
+                }
+            }
+            if (!TextUtils.isEmpty(accountLabel)) {
+                content += " (" + accountLabel + ")";
+            }
+        }
+        model.contentText = content;
+        model.publicContentTitle = getContentString(call, ContactsUtils.USER_TYPE_CURRENT);
+
+        model.publicUsesChronometer = callState == Call.State.ACTIVE;
+        model.usesChronometer = model.publicUsesChronometer && !isVideoUpgradeRequest;
+        if (callState == Call.State.ACTIVE) {
+            model.when = call.getConnectTimeMillis();
+        }
 
-        // Add hang up option for any active calls (active | onhold), outgoing calls (dialing).
-        if (state == Call.State.ACTIVE ||
-                state == Call.State.ONHOLD ||
-                Call.State.isDialing(state)) {
-            addHangupAction(builder);
-        } else if (state == Call.State.INCOMING || state == Call.State.CALL_WAITING) {
-            addDismissAction(builder);
+        if (isVideoUpgradeRequest) {
+            model.actions.add(ACTION_DISMISS_UPGRADE);
+            model.actions.add(ACTION_ACCEPT_UPGRADE);
+        } else if (callState == Call.State.ACTIVE || callState == Call.State.ONHOLD
+                || Call.State.isDialing(callState)) {
+            // Add hang up option for any active calls (active | onhold), outgoing calls (dialing).
+            model.actions.add(ACTION_HANG_UP);
+        } else if (callState == Call.State.INCOMING || callState == Call.State.CALL_WAITING) {
+            model.actions.add(ACTION_DISMISS);
             if (call.isVideoCall(mContext)) {
-                addVoiceAction(builder);
-                addVideoCallAction(builder, call.getVideoState());
+                model.actions.add(ACTION_ANSWER_VOICE);
+                model.actions.add(ACTION_ANSWER_VIDEO);
             } else {
-                addAnswerAction(builder);
+                model.actions.add(ACTION_ANSWER);
             }
         }
+        model.person = getPersonReference(contactInfo, call);
+        model.ringtone = contactInfo.contactRingtoneUri;
+        return model;
+    }
+
+    /**
+     * Logs the time from the call being added to the first incoming-call notification that has
+     * both the contact info and the photo lookup resolved.
+     */
+    private void maybeLogPopulatedLatency(Call call, ContactCacheEntry contactInfo,
+            int notificationType) {
+        if (notificationType != NOTIFICATION_INCOMING_CALL || contactInfo.isLoadingPhoto
+                || call.getId().equals(mLoggedPopulatedCallId)) {
+            return;
+        }
+        mLoggedPopulatedCallId = call.getId();
+        Log.i(this, "Incoming call notification populated "
+                + (System.currentTimeMillis() - call.getTimeAddedMs()) + "ms after call added");
     }
 
     /*
@@ -480,60 +590,14 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
      * the duration of the call. For all other states, the notification will automatically show the
      * time at which the notification was created.
      */
-    private void setNotificationWhen(Call call, int state, Notification.Builder builder) {
-        if (state == Call.State.ACTIVE) {
-            builder.setUsesChronometer(true);
-            builder.setWhen(call.getConnectTimeMillis());
-        } else {
-            builder.setUsesChronometer(false);
+    private static void setNotificationWhen(boolean usesChronometer, long when,
+            Notification.Builder builder) {
+        builder.setUsesChronometer(usesChronometer);
+        if (usesChronometer) {
+            builder.setWhen(when);
         }
     }
 
-    /**
-     * Checks the new notification data and compares it against any notification that we
-     * are already displaying. If the data is exactly the same, we return false so that
-     * we do not issue a new notification for the exact same data.
-     */
-    private boolean checkForChangeAndSaveData(int icon, String content, Bitmap largeIcon,
-            String contentTitle, int state, int videoState, int notificationType, Uri ringtone) {
-
-        // The two are different:
-        // if new title is not null, it should be different from saved version OR
-        // if new title is null, the saved version should not be null
-        final boolean contentTitleChanged =
-                (contentTitle != null && !contentTitle.equals(mSavedContentTitle)) ||
-                (contentTitle == null && mSavedContentTitle != null);
-
-        // any change means we are definitely updating
-        boolean retval = (mSavedIcon != icon) || !Objects.equals(mSavedContent, content)
-                || (mCallState != state) || (mVideoState != videoState)
-                || (mSavedLargeIcon != largeIcon) || contentTitleChanged
-                || !Objects.equals(mRingtone, ringtone);
-
-        // If we aren't showing a notification right now or the notification type is changing,
-        // definitely do an update.
-        if (mCurrentNotification != notificationType) {
-            if (mCurrentNotification == NOTIFICATION_NONE) {
-                Log.d(this, "Showing notification for first time.");
-            }
-            retval = true;
-        }
-
-        mSavedIcon = icon;
-        mSavedContent = content;
-        mCallState = state;
-        mVideoState = videoState;
-        mSavedLargeIcon = largeIcon;
-        mSavedContentTitle = contentTitle;
-        mRingtone = ringtone;
-
-        if (retval) {
-            Log.d(this, "Data changed.  Showing notification");
-        }
-
-        return retval;
-    }
-
     /**
      * Returns the main string to use in the notification.
      */
@@ -557,43 +621,56 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         return contactInfo.namePrimary;
     }
 
-    private void addPersonReference(Notification.Builder builder, ContactCacheEntry contactInfo,
-            Call call) {
+    private static String getPersonReference(ContactCacheEntry contactInfo, Call call) {
         // Query {@link Contacts#CONTENT_LOOKUP_URI} directly with work lookup key is not allowed.
         // So, do not pass {@link Contacts#CONTENT_LOOKUP_URI} to NotificationManager to avoid
         // NotificationManager using it.
         if (contactInfo.lookupUri != null && contactInfo.userType != ContactsUtils.USER_TYPE_WORK) {
-            builder.addPerson(contactInfo.lookupUri.toString());
+            return contactInfo.lookupUri.toString();
         } else if (!TextUtils.isEmpty(call.getNumber())) {
-            builder.addPerson(Uri.fromParts(PhoneAccount.SCHEME_TEL,
-                    call.getNumber(), null).toString());
+            return Uri.fromParts(PhoneAccount.SCHEME_TEL, call.getNumber(), null).toString();
         }
+        return null;
     }
 
     /**
-     * Gets a large icon from the contact info object to display in the notification.
+     * Gets a large icon from the contact info object to display in the notification, rounded
+     * and scaled. The same photo always gives back the same bitmap.
      */
-    private Bitmap getLargeIconToDisplay(ContactCacheEntry contactInfo, Call call) {
-        Bitmap largeIcon = null;
-        if (call.isConferenceCall() && !call.hasProperty(Details.PROPERTY_GENERIC_CONFERENCE)) {
-            largeIcon = BitmapFactory.decodeResource(mContext.getResources(),
-                    R.drawable.img_conference);
-        }
+    @NeededForTesting
+    Bitmap getLargeIconToDisplay(ContactCacheEntry contactInfo, Call call) {
         if (contactInfo.photo != null && (contactInfo.photo instanceof BitmapDrawable)) {
-            largeIcon = ((BitmapDrawable) contactInfo.photo).getBitmap();
+            final Bitmap photo = ((BitmapDrawable) contactInfo.photo).getBitmap();
+            if (contactInfo.roundedPhotoIcon != null && photo != null) {
+                // Already rounded and scaled while the photo was decoded.
+                return contactInfo.roundedPhotoIcon;
+            }
+            return getRoundedIcon(photo);
         }
-        return largeIcon;
+        if (call.isConferenceCall() && !call.hasProperty(Details.PROPERTY_GENERIC_CONFERENCE)) {
+            if (mConferenceIcon == null) {
+                mConferenceIcon = BitmapFactory.decodeResource(mContext.getResources(),
+                        R.drawable.img_conference);
+            }
+            return getRoundedIcon(mConferenceIcon);
+        }
+        return null;
     }
 
     private Bitmap getRoundedIcon(Bitmap bitmap) {
         if (bitmap == null) {
             return null;
         }
-        final int height = (int) mContext.getResources().getDimension(
-                android.R.dimen.notification_large_icon_height);
-        final int width = (int) mContext.getResources().getDimension(
-                android.R.dimen.notification_large_icon_width);
-        return BitmapUtil.getRoundedBitmap(bitmap, width, height);
+        Bitmap roundedIcon = mRoundedIconCache.get(bitmap);
+        if (roundedIcon == null) {
+            final int height = (int) mContext.getResources().getDimension(
+                    android.R.dimen.notification_large_icon_height);
+            final int width = (int) mContext.getResources().getDimension(
+                    android.R.dimen.notification_large_icon_width);
+            roundedIcon = BitmapUtil.getRoundedBitmap(bitmap, width, height);
+            mRoundedIconCache.put(bitmap, roundedIcon);
+        }
+        return roundedIcon;
     }
 
     /**
@@ -711,6 +788,32 @@ public class StatusBarNotifier implements InCallPresenter.InCallStateListener,
         return call;
     }
 
+    private void addAction(Notification.Builder builder, int action, int videoState) {
+        switch (action) {
+            case ACTION_ANSWER:
+                addAnswerAction(builder);
+                break;
+            case ACTION_ANSWER_VOICE:
+                addVoiceAction(builder);
+                break;
+            case ACTION_ANSWER_VIDEO:
+                addVideoCallAction(builder, videoState);
+                break;
+            case ACTION_DISMISS:
+                addDismissAction(builder);
+                break;
+            case ACTION_HANG_UP:
+                addHangupAction(builder);
+                break;
+            case ACTION_ACCEPT_UPGRADE:
+                addAcceptUpgradeRequestAction(builder);
+                break;
+            case ACTION_DISMISS_UPGRADE:
+                addDismissUpgradeRequestAction(builder);
+                break;
+        }
+    }
+
     private void addAnswerAction(Notification.Builder builder) {
         Log.d(this, "Will show \"answer\" action in the incoming call Notification");
 
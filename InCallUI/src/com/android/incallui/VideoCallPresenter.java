@@ -26,8 +26,6 @@ import android.graphics.drawable.Drawable;
 import android.graphics.Point;
 import android.net.Uri;
 import android.os.AsyncTask;
-import android.os.Handler;
-import android.os.Looper;
 import android.os.SystemProperties;
 import android.provider.ContactsContract;
 import android.content.pm.ActivityInfo;
@@ -44,6 +42,7 @@ import org.codeaurora.ims.utils.QtiImsExtUtils;
 import com.android.contacts.common.ContactPhotoManager;
 import com.android.contacts.common.compat.CompatUtils;
 import com.android.dialer.R;
+import com.android.dialer.util.TimingWheel;
 import com.android.incallui.InCallPresenter.InCallDetailsListener;
 import com.android.incallui.InCallPresenter.InCallOrientationListener;
 import com.android.incallui.InCallPresenter.InCallStateListener;
@@ -195,7 +194,7 @@ public class VideoCallPresenter extends Presenter<VideoCallPresenter.VideoCallUi
     /**
      * UI thread handler used for delayed task execution.
      */
-    private Handler mHandler;
+    private TimingWheel.Timer mAutoFullscreenTimer;
 
     /**
      * Determines whether video calls should automatically enter full screen mode after
@@ -266,7 +265,6 @@ public class VideoCallPresenter extends Presenter<VideoCallPresenter.VideoCallUi
         mPictureModeHelper = new PictureModeHelper(mContext);
         mMinimumVideoDimension = mContext.getResources().getDimension(
                 R.dimen.video_preview_small_dimension);
-        mHandler = new Handler(Looper.getMainLooper());
         mIsAutoFullscreenEnabled = mContext.getResources()
                 .getBoolean(R.bool.video_call_auto_fullscreen);
         mAutoFullscreenTimeoutMillis = mContext.getResources().getInteger(
@@ -1595,7 +1593,8 @@ public class VideoCallPresenter extends Presenter<VideoCallPresenter.VideoCallUi
         }
         Log.v(this, "maybeAutoEnterFullscreen : scheduled");
         mAutoFullScreenPending = true;
-        mHandler.postDelayed(mAutoFullscreenRunnable, mAutoFullscreenTimeoutMillis);
+        mAutoFullscreenTimer = TimingWheel.getInstance().schedule(mAutoFullscreenRunnable,
+                mAutoFullscreenTimeoutMillis);
     }
 
     /**
@@ -1608,8 +1607,9 @@ public class VideoCallPresenter extends Presenter<VideoCallPresenter.VideoCallUi
         }
         Log.v(this, "cancelAutoFullScreen : cancelling pending");
         mAutoFullScreenPending = false;
-        if (mHandler != null) {
-            mHandler.removeCallbacks(mAutoFullscreenRunnable);
+        if (mAutoFullscreenTimer != null) {
+            mAutoFullscreenTimer.cancel();
+            mAutoFullscreenTimer = null;
         }
     }
 
@@ -105,7 +105,8 @@ class VideoPauseController implements InCallStateListener, IncomingCallListener,
     public void setUp(InCallPresenter inCallPresenter) {
         log("setUp");
         mInCallPresenter = Preconditions.checkNotNull(inCallPresenter);
-        mInCallPresenter.addListener(this);
+        mInCallPresenter.addListener(this, CallListChange.ASPECTS_CALL_STATE
+                | CallListChange.ASPECT_VIDEO | CallListChange.ASPECT_CAPABILITIES);
         mInCallPresenter.addIncomingCallListener(this);
         InCallUiStateNotifier.getInstance().addListener(this);
     }
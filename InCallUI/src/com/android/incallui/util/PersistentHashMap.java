@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable hash map with structural sharing (a hash array mapped trie). {@link #plus} and
+ * {@link #minus} return a new map and leave this one untouched, copying only the path to the
+ * changed entry, so holding on to an old version is free and it can be read from any thread
+ * without locking.
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap(null, 0);
+
+    /** Entries whose keys have the same full hash, as alternating keys and values. */
+    private static final class Leaf {
+        final int hash;
+        final Object[] keysAndValues;
+
+        Leaf(int hash, Object[] keysAndValues) {
+            this.hash = hash;
+            this.keysAndValues = keysAndValues;
+        }
+
+        int indexOf(Object key) {
+            for (int i = 0; i < keysAndValues.length; i += 2) {
+                if (keysAndValues[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /** Inner node; {@code slots} holds a {@link Leaf} or {@link Node} per bit set in bitmap. */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    /** {@code null}, a {@link Leaf} or a {@link Node}. */
+    private final Object mRoot;
+    private final int mSize;
+
+    private PersistentHashMap(Object root, int size) {
+        mRoot = root;
+        mSize = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns the value for {@code key}, or null if there is none. Null values are not
+     * supported.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        final int hash = hash(key);
+        Object node = mRoot;
+        int shift = 0;
+        while (node != null) {
+            if (node instanceof Leaf) {
+                final Leaf leaf = (Leaf) node;
+                final int index = leaf.hash == hash ? leaf.indexOf(key) : -1;
+                return index < 0 ? null : (V) leaf.keysAndValues[index + 1];
+            }
+            final Node inner = (Node) node;
+            final int bit = bit(hash, shift);
+            if ((inner.bitmap & bit) == 0) {
+                return null;
+            }
+            node = inner.slots[index(inner.bitmap, bit)];
+            shift += BITS;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a map with {@code key} mapped to {@code value}, or this map if it already was.
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        final boolean[] added = new boolean[1];
+        final Object root = put(mRoot, 0, hash(key), key, value, added);
+        return root == mRoot ? this : new PersistentHashMap<K, V>(root, mSize + (added[0] ? 1 : 0));
+    }
+
+    /**
+     * Returns a map without {@code key}, or this map if it did not contain it.
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        final Object root = remove(mRoot, 0, hash(key), key);
+        return root == mRoot ? this : new PersistentHashMap<K, V>(root, mSize - 1);
+    }
+
+    private static Object put(Object node, int shift, int hash, Object key, Object value,
+            boolean[] added) {
+        if (node == null) {
+            added[0] = true;
+            return new Leaf(hash, new Object[] {key, value});
+        }
+        if (node instanceof Leaf) {
+            final Leaf leaf = (Leaf) node;
+            if (leaf.hash != hash) {
+                added[0] = true;
+                return merge(leaf, new Leaf(hash, new Object[] {key, value}), shift);
+            }
+            final int index = leaf.indexOf(key);
+            if (index >= 0) {
+                if (leaf.keysAndValues[index + 1] == value) {
+                    return leaf;
+                }
+                final Object[] keysAndValues = leaf.keysAndValues.clone();
+                keysAndValues[index + 1] = value;
+                return new Leaf(hash, keysAndValues);
+            }
+            added[0] = true;
+            final int length = leaf.keysAndValues.length;
+            final Object[] keysAndValues = new Object[length + 2];
+            System.arraycopy(leaf.keysAndValues, 0, keysAndValues, 0, length);
+            keysAndValues[length] = key;
+            keysAndValues[length + 1] = value;
+            return new Leaf(hash, keysAndValues);
+        }
+
+        final Node inner = (Node) node;
+        final int bit = bit(hash, shift);
+        final int index = index(inner.bitmap, bit);
+        if ((inner.bitmap & bit) == 0) {
+            added[0] = true;
+            final Object[] slots = new Object[inner.slots.length + 1];
+            System.arraycopy(inner.slots, 0, slots, 0, index);
+            slots[index] = new Leaf(hash, new Object[] {key, value});
+            System.arraycopy(inner.slots, index, slots, index + 1, inner.slots.length - index);
+            return new Node(inner.bitmap | bit, slots);
+        }
+        final Object child = inner.slots[index];
+        final Object newChild = put(child, shift + BITS, hash, key, value, added);
+        if (newChild == child) {
+            return inner;
+        }
+        final Object[] slots = inner.slots.clone();
+        slots[index] = newChild;
+        return new Node(inner.bitmap, slots);
+    }
+
+    /** Builds the smallest subtree holding two leaves with different hashes. */
+    private static Object merge(Leaf first, Leaf second, int shift) {
+        final int firstPosition = (first.hash >>> shift) & MASK;
+        final int secondPosition = (second.hash >>> shift) & MASK;
+        if (firstPosition == secondPosition) {
+            return new Node(1 << firstPosition,
+                    new Object[] {merge(first, second, shift + BITS)});
+        }
+        return new Node((1 << firstPosition) | (1 << secondPosition),
+                firstPosition < secondPosition
+                        ? new Object[] {first, second} : new Object[] {second, first});
+    }
+
+    private static Object remove(Object node, int shift, int hash, Object key) {
+        if (node == null) {
+            return null;
+        }
+        if (node instanceof Leaf) {
+            final Leaf leaf = (Leaf) node;
+            final int index = leaf.hash == hash ? leaf.indexOf(key) : -1;
+            if (index < 0) {
+                return leaf;
+            }
+            final int length = leaf.keysAndValues.length;
+            if (length == 2) {
+                return null;
+            }
+            final Object[] keysAndValues = new Object[length - 2];
+            System.arraycopy(leaf.keysAndValues, 0, keysAndValues, 0, index);
+            System.arraycopy(leaf.keysAndValues, index + 2, keysAndValues, index,
+                    length - index - 2);
+            return new Leaf(hash, keysAndValues);
+        }
+
+        final Node inner = (Node) node;
+        final int bit = bit(hash, shift);
+        if ((inner.bitmap & bit) == 0) {
+            return inner;
+        }
+        final int index = index(inner.bitmap, bit);
+        final Object child = inner.slots[index];
+        final Object newChild = remove(child, shift + BITS, hash, key);
+        if (newChild == child) {
+            return inner;
+        }
+        if (newChild == null) {
+            if (inner.slots.length == 1) {
+                return null;
+            }
+            final Object[] slots = new Object[inner.slots.length - 1];
+            System.arraycopy(inner.slots, 0, slots, 0, index);
+            System.arraycopy(inner.slots, index + 1, slots, index, slots.length - index);
+            // A lone leaf does not need a node of its own; lookups accept a leaf at any depth.
+            if (slots.length == 1 && slots[0] instanceof Leaf) {
+                return slots[0];
+            }
+            return new Node(inner.bitmap & ~bit, slots);
+        }
+        if (inner.slots.length == 1 && newChild instanceof Leaf) {
+            return newChild;
+        }
+        final Object[] slots = inner.slots.clone();
+        slots[index] = newChild;
+        return new Node(inner.bitmap, slots);
+    }
+
+    private static int hash(Object key) {
+        final int hash = key.hashCode();
+        // Spread the high bits down, as HashMap does, since the low bits pick the first slot.
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    /** Iterates the entries in no particular order. */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<K, V>(mRoot);
+    }
+
+    /** Returns the values, in no particular order. */
+    public Iterable<V> values() {
+        return new Iterable<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                final Iterator<Map.Entry<K, V>> entries = PersistentHashMap.this.iterator();
+                return new Iterator<V>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public V next() {
+                        return entries.next().getValue();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Deque<Object> mPending = new ArrayDeque<>();
+        private Leaf mLeaf;
+        private int mLeafIndex;
+
+        EntryIterator(Object root) {
+            if (root != null) {
+                mPending.push(root);
+            }
+            advance();
+        }
+
+        private void advance() {
+            while ((mLeaf == null || mLeafIndex >= mLeaf.keysAndValues.length)
+                    && !mPending.isEmpty()) {
+                final Object node = mPending.pop();
+                if (node instanceof Leaf) {
+                    mLeaf = (Leaf) node;
+                    mLeafIndex = 0;
+                } else {
+                    final Object[] slots = ((Node) node).slots;
+                    for (int i = slots.length - 1; i >= 0; i--) {
+                        mPending.push(slots[i]);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mLeaf != null && mLeafIndex < mLeaf.keysAndValues.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>(
+                    (K) mLeaf.keysAndValues[mLeafIndex], (V) mLeaf.keysAndValues[mLeafIndex + 1]);
+            mLeafIndex += 2;
+            advance();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<K, V> entry : this) {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.telecom.PhoneAccountHandle;
+import android.telephony.SubscriptionManager;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@SmallTest
+public class CallListSnapshotTest extends AndroidTestCase {
+
+    private final Map<String, CallSnapshot> mCalls = new HashMap<>();
+
+    public void testEmpty() {
+        assertEquals(0, CallListSnapshot.EMPTY.size());
+        assertFalse(CallListSnapshot.EMPTY.hasLiveCall());
+        assertNull(CallListSnapshot.EMPTY.getIncomingCall());
+    }
+
+    public void testHasLiveCall_onlyDisconnected() {
+        addCall("Call_1", Call.State.DISCONNECTED, 1, 100);
+        addCall("Call_2", Call.State.DISCONNECTING, 1, 200);
+
+        assertFalse(createSnapshot().hasLiveCall());
+    }
+
+    public void testHasLiveCall_onHold() {
+        addCall("Call_1", Call.State.DISCONNECTED, 1, 100);
+        addCall("Call_2", Call.State.ONHOLD, 1, 200);
+
+        assertTrue(createSnapshot().hasLiveCall());
+    }
+
+    public void testGetFirstCallWithState_oldestFirst() {
+        addCall("Call_2", Call.State.ACTIVE, 1, 200);
+        addCall("Call_1", Call.State.ACTIVE, 1, 100);
+        addCall("Call_3", Call.State.ACTIVE, 1, 100);
+
+        assertEquals("Call_1", createSnapshot().getActiveOrBackgroundCall().getId());
+    }
+
+    public void testGetIncomingCall_callWaiting() {
+        addCall("Call_1", Call.State.ACTIVE, 1, 100);
+        addCall("Call_2", Call.State.CALL_WAITING, 1, 200);
+
+        assertEquals("Call_2", createSnapshot().getIncomingCall().getId());
+    }
+
+    public void testGetFirstCallWithState_dsdaFiltersByActiveSub() {
+        addCall("Call_1", Call.State.ACTIVE, 1, 100);
+        addCall("Call_2", Call.State.ACTIVE, 2, 200);
+
+        final CallListSnapshot snapshot = CallListSnapshot.create(mCalls, 2, true);
+        assertEquals("Call_2", snapshot.getFirstCallWithState(Call.State.ACTIVE).getId());
+    }
+
+    public void testGetFirstCallWithState_dsdaMatchesSipAndAccountlessCallsOnAnySub() {
+        addCall("Call_1", Call.State.ACTIVE, 1, 100);
+        mCalls.put("Call_2", new CallSnapshot("Call_2", Call.State.ONHOLD,
+                new PhoneAccountHandle(null, "sip:alice@example.com"), 200));
+        mCalls.put("Call_3", new CallSnapshot("Call_3", Call.State.INCOMING, null, 300));
+        mCalls.put("Call_4", new CallSnapshot("Call_4", Call.State.DIALING,
+                new PhoneAccountHandle(null, "not_a_sub"), 400));
+
+        final CallListSnapshot snapshot = CallListSnapshot.create(mCalls, 2, true);
+        assertEquals("Call_2", snapshot.getActiveOrBackgroundCall().getId());
+        assertEquals("Call_3", snapshot.getIncomingCall().getId());
+        assertNull(snapshot.getOutgoingCall());
+        assertTrue(snapshot.hasLiveCall());
+    }
+
+    public void testHasLiveCall_dsdaSipCallOnOtherSub() {
+        mCalls.put("Call_1", new CallSnapshot("Call_1", Call.State.ACTIVE,
+                new PhoneAccountHandle(null, "alice@example.com"), 100));
+
+        assertTrue(CallListSnapshot.create(mCalls, 2, true).hasLiveCall());
+    }
+
+    public void testCreate_copiesCalls() {
+        addCall("Call_1", Call.State.ACTIVE, 1, 100);
+        final CallListSnapshot snapshot = createSnapshot();
+
+        mCalls.clear();
+
+        assertEquals(1, snapshot.size());
+        assertNotNull(snapshot.getCallById("Call_1"));
+    }
+
+    private void addCall(String id, int state, int subId, long timeAddedMs) {
+        mCalls.put(id, new CallSnapshot(id, state, subId, timeAddedMs));
+    }
+
+    private CallListSnapshot createSnapshot() {
+        return CallListSnapshot.create(mCalls, SubscriptionManager.INVALID_SUBSCRIPTION_ID, false);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.net.Uri;
+import android.telecom.DisconnectCause;
+import android.telecom.TelecomManager;
+import android.telecom.VideoProfile;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+@SmallTest
+public class CallListTest extends AndroidTestCase {
+
+    private CallList mCallList;
+    private Call mCall;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        final TestTelecomCall telecomCall = TestTelecomCall.createInstance(
+                "1",
+                Uri.parse("tel:650-555-1212"), /* handle */
+                TelecomManager.PRESENTATION_ALLOWED, /* handlePresentation */
+                "Joe", /* callerDisplayName */
+                TelecomManager.PRESENTATION_ALLOWED, /* callerDisplayNamePresentation */
+                null, /* accountHandle */
+                0, /* capabilities */
+                0, /* properties */
+                null, /* disconnectCause */
+                0, /* connectTimeMillis */
+                null, /* GatewayInfo */
+                VideoProfile.STATE_AUDIO_ONLY, /* videoState */
+                null, /* statusHints */
+                null, /* extras */
+                null /* intentExtras */);
+        mCall = mock(Call.class);
+        when(mCall.getId()).thenReturn("Call_1");
+        when(mCall.getTelecomCall()).thenReturn(telecomCall.getCall());
+        when(mCall.getState()).thenReturn(Call.State.ACTIVE);
+
+        mCallList = new CallList();
+        mCallList.onUpdate(mCall);
+    }
+
+    public void testGetSnapshot_afterUpdate() {
+        assertTrue(mCallList.getSnapshot().hasLiveCall());
+        assertEquals(Call.State.ACTIVE,
+                mCallList.getSnapshot().getCallById(mCall.getId()).getState());
+    }
+
+    public void testGetSnapshot_afterDisconnect() {
+        disconnect();
+
+        assertFalse(mCallList.getSnapshot().hasLiveCall());
+        assertEquals(Call.State.DISCONNECTED,
+                mCallList.getSnapshot().getCallById(mCall.getId()).getState());
+    }
+
+    public void testGetSnapshot_seenByDisconnectListeners() {
+        final CallListSnapshot[] seen = new CallListSnapshot[1];
+        final CallList.Listener listener = mock(CallList.Listener.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                seen[0] = mCallList.getSnapshot();
+                return null;
+            }
+        }).when(listener).onDisconnect(mCall);
+        mCallList.addListener(listener);
+
+        disconnect();
+
+        assertNotNull(seen[0]);
+        assertFalse(seen[0].hasLiveCall());
+    }
+
+    private void disconnect() {
+        when(mCall.getState()).thenReturn(Call.State.DISCONNECTED);
+        when(mCall.getDisconnectCause()).thenReturn(new DisconnectCause(DisconnectCause.LOCAL));
+        mCallList.onDisconnect(mCall);
+    }
+}
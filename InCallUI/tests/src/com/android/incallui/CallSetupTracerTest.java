@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+@SmallTest
+public class CallSetupTracerTest extends AndroidTestCase {
+
+    private CallSetupTracer mTracer;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mTracer = new CallSetupTracer();
+    }
+
+    public void testGetPercentile_noCalls() {
+        assertEquals(-1, mTracer.getPercentile(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, 50));
+    }
+
+    public void testGetPercentile() {
+        for (int latency = 10; latency <= 100; latency += 10) {
+            mTracer.addCompletedTrace(
+                    createTrace(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, latency));
+        }
+
+        assertEquals(50, mTracer.getPercentile(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, 50));
+        assertEquals(90, mTracer.getPercentile(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, 90));
+        assertEquals(100, mTracer.getPercentile(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, 99));
+    }
+
+    public void testGetPercentile_ignoresCallsWithoutMilestone() {
+        mTracer.addCompletedTrace(createTrace(CallSetupTracer.MILESTONE_PHOTO_LOADED, 500));
+        mTracer.addCompletedTrace(
+                createTrace(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, 20));
+
+        assertEquals(20, mTracer.getPercentile(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, 99));
+    }
+
+    public void testGetPercentile_onlyRecentCalls() {
+        for (int i = 0; i < CallSetupTracer.MAX_COMPLETED_TRACES; i++) {
+            mTracer.addCompletedTrace(
+                    createTrace(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, 1000));
+        }
+        for (int i = 0; i < CallSetupTracer.MAX_COMPLETED_TRACES; i++) {
+            mTracer.addCompletedTrace(
+                    createTrace(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, 5));
+        }
+
+        assertEquals(5, mTracer.getPercentile(CallSetupTracer.MILESTONE_CALL_LIST_INCOMING, 99));
+    }
+
+    public void testDump() {
+        mTracer.addCompletedTrace(
+                createTrace(CallSetupTracer.MILESTONE_NOTIFICATION_POSTED, 42));
+
+        final StringWriter writer = new StringWriter();
+        mTracer.dump(new PrintWriter(writer));
+
+        assertTrue(writer.toString().contains("notificationPosted: 42 / 42 / 42 (1)"));
+        assertTrue(writer.toString().contains("Call_1 notificationPosted=+42"));
+    }
+
+    private static CallSetupTracer.CallTrace createTrace(int milestone, long latency) {
+        final CallSetupTracer.CallTrace trace = new CallSetupTracer.CallTrace();
+        trace.callId = "Call_1";
+        trace.timestamps[CallSetupTracer.MILESTONE_SERVICE_CALL_ADDED] = 1000;
+        trace.timestamps[milestone] = 1000 + latency;
+        return trace;
+    }
+}
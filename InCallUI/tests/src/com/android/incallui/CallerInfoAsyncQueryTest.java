@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.incallui.CallerInfoAsyncQuery.DirectoryQueryCompleteListenerFactory;
+import com.android.incallui.CallerInfoAsyncQuery.OnQueryCompleteListener;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@SmallTest
+public class CallerInfoAsyncQueryTest extends AndroidTestCase {
+    private static final int TOKEN = 1;
+    private static final Object COOKIE = new Object();
+
+    @Mock private OnQueryCompleteListener mListener;
+
+    private CallerInfo mFallback;
+    private DirectoryQueryCompleteListenerFactory mFactory;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        MockitoAnnotations.initMocks(this);
+        mFallback = new CallerInfo();
+        mFallback.geoDescription = "Mountain View, CA";
+        mFallback.phoneNumber = "(650) 555-1212";
+        mFactory = new DirectoryQueryCompleteListenerFactory(getContext(), 2, mListener,
+                mFallback);
+    }
+
+    public void testNoDirectoryMatches_deliversFallback() {
+        mFactory.newListener(10).onQueryComplete(TOKEN, COOKIE, new CallerInfo());
+        verify(mListener, never()).onQueryComplete(anyInt(), any(), any(CallerInfo.class));
+
+        mFactory.newListener(11).onQueryComplete(TOKEN, COOKIE, new CallerInfo());
+
+        verify(mListener, times(1)).onQueryComplete(TOKEN, COOKIE, mFallback);
+    }
+
+    public void testNoDirectoryMatchesOrTimeout_deliversFallback() {
+        mFactory.newListener(10).onQueryComplete(TOKEN, COOKIE, null);
+        mFactory.newListener(11).onQueryComplete(TOKEN, COOKIE, new CallerInfo());
+
+        verify(mListener, times(1)).onQueryComplete(TOKEN, COOKIE, mFallback);
+    }
+
+    public void testDirectoryMatches_deliveredOnce() {
+        final CallerInfo match = new CallerInfo();
+        match.contactExists = true;
+        match.name = "Joe";
+
+        mFactory.newListener(10).onQueryComplete(TOKEN, COOKIE, match);
+        mFactory.newListener(11).onQueryComplete(TOKEN, COOKIE, new CallerInfo());
+
+        verify(mListener, times(1)).onQueryComplete(TOKEN, COOKIE, match);
+        verify(mListener, never()).onQueryComplete(TOKEN, COOKIE, mFallback);
+    }
+
+    public void testTimeoutAfterResult_countedOnce() {
+        final DirectoryQueryCompleteListenerFactory.DirectoryQueryCompleteListener listener =
+                mFactory.newListener(10);
+        listener.onQueryComplete(TOKEN, COOKIE, new CallerInfo());
+        listener.onQueryComplete(TOKEN, COOKIE, null);
+
+        verify(mListener, never()).onQueryComplete(anyInt(), any(), any(CallerInfo.class));
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class ContactsAsyncHelperTest extends AndroidTestCase {
+    public void testCalculateInSampleSize_smallerThanTarget() {
+        assertEquals(1, ContactsAsyncHelper.calculateInSampleSize(480, 480, 1080));
+    }
+
+    public void testCalculateInSampleSize_exactlyTwiceTarget() {
+        assertEquals(2, ContactsAsyncHelper.calculateInSampleSize(2160, 2160, 1080));
+    }
+
+    public void testCalculateInSampleSize_usesShorterEdge() {
+        assertEquals(2, ContactsAsyncHelper.calculateInSampleSize(4000, 1500, 720));
+    }
+
+    public void testCalculateInSampleSize_neverBelowTarget() {
+        assertEquals(4, ContactsAsyncHelper.calculateInSampleSize(3000, 3000, 720));
+    }
+}
@@ -16,25 +16,36 @@
 
 package com.android.incallui;
 
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.Debug;
 import android.telecom.PhoneAccountHandle;
+import android.telephony.SubscriptionManager;
 import android.telephony.TelephonyManager;
 import android.test.InstrumentationTestCase;
 import android.test.suitebuilder.annotation.MediumTest;
 
 import com.android.incallui.InCallPresenter.InCallState;
+import com.android.incallui.InCallPresenter.InCallStateListener;
 
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import java.util.Collections;
+
 @MediumTest
 public class InCallPresenterTest extends InstrumentationTestCase {
+    private static final int SKIPPED_LISTENER_COUNT = 50;
+    private static final int ALLOCATION_RUNS = 10;
+
     private MockCallListWrapper mCallList;
     @Mock private InCallActivity mInCallActivity;
     @Mock private AudioModeProvider mAudioModeProvider;
@@ -169,6 +180,68 @@ public class InCallPresenterTest extends InstrumentationTestCase {
         verify(mInCallActivity).finish();
     }
 
+    /**
+     * Verifies that switching the active subscription reaches listeners of call state changes,
+     * although no call changed: under DSDA, which call is primary depends on it.
+     */
+    public void testOnCallListChange_activeSubChangeNotifiesCallStateListeners() {
+        final InCallStateListener listener = mock(InCallStateListener.class);
+        mInCallPresenter.addListener(listener, CallListChange.ASPECTS_CALL_STATE);
+        mCallList.setHasCall(Call.State.ACTIVE, true);
+        mInCallPresenter.onCallListChange(mCallList.getCallList());
+        reset(listener);
+
+        final CallListSnapshot previous = CallListSnapshot.create(
+                Collections.<String, CallSnapshot>emptyMap(), 1, true);
+        when(mCallList.getCallList().getLastChange()).thenReturn(CallListChange.compute(
+                previous, Collections.<String, Call>emptyMap(), null, 1, true));
+        mInCallPresenter.onCallListChange(mCallList.getCallList());
+        verify(listener, never()).onStateChange(any(InCallState.class),
+                any(InCallState.class), any(CallList.class));
+
+        when(mCallList.getCallList().getLastChange()).thenReturn(CallListChange.compute(
+                previous, Collections.<String, Call>emptyMap(), null, 2, true));
+        mInCallPresenter.onCallListChange(mCallList.getCallList());
+        verify(listener).onStateChange(InCallState.INCALL, InCallState.INCALL,
+                mCallList.getCallList());
+    }
+
+    /**
+     * Benchmarks the allocations of a call list update that concerns none of the listeners. They
+     * should not grow with the number of listeners skipped.
+     */
+    public void testOnCallListChange_skippedListenersDoNotAllocate() {
+        mCallList.setHasCall(Call.State.ACTIVE, true);
+        mInCallPresenter.onCallListChange(mCallList.getCallList());
+        when(mCallList.getCallList().getLastChange()).thenReturn(CallListChange.compute(
+                CallListSnapshot.EMPTY, Collections.<String, Call>emptyMap(), null,
+                SubscriptionManager.INVALID_SUBSCRIPTION_ID, false));
+
+        final int baseline = measureCallListChangeAllocations();
+        for (int i = 0; i < SKIPPED_LISTENER_COUNT; i++) {
+            mInCallPresenter.addListener(mock(InCallStateListener.class),
+                    CallListChange.ASPECTS_CALL_STATE);
+        }
+        final int withSkippedListeners = measureCallListChangeAllocations();
+
+        assertTrue("Allocated " + baseline + " objects without skipped listeners, "
+                + withSkippedListeners + " with " + SKIPPED_LISTENER_COUNT,
+                withSkippedListeners - baseline < SKIPPED_LISTENER_COUNT);
+    }
+
+    /** Returns the fewest objects allocated by one update, to leave out warm-up. */
+    @SuppressWarnings("deprecation")
+    private int measureCallListChangeAllocations() {
+        int allocations = Integer.MAX_VALUE;
+        for (int i = 0; i < ALLOCATION_RUNS; i++) {
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            mInCallPresenter.onCallListChange(mCallList.getCallList());
+            Debug.stopAllocCounting();
+            allocations = Math.min(allocations, Debug.getThreadAllocCount());
+        }
+        return allocations;
+    }
 
     //TODO
     public void testCircularReveal_startsCircularRevealForOutgoingCalls() {
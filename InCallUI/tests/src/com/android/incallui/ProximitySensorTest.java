@@ -33,7 +33,6 @@ import org.mockito.MockitoAnnotations;
 @MediumTest
 public class ProximitySensorTest extends InstrumentationTestCase {
     @Mock private AccelerometerListener mAccelerometerListener;
-    private MockCallListWrapper mCallList;
 
     @Override
     protected void setUp() throws Exception {
@@ -41,7 +40,6 @@ public class ProximitySensorTest extends InstrumentationTestCase {
         System.setProperty("dexmaker.dexcache",
                 getInstrumentation().getTargetContext().getCacheDir().getPath());
         MockitoAnnotations.initMocks(this);
-        mCallList = new MockCallListWrapper();
     }
 
     public void testAccelerometerBehaviorOnDisplayChange() {
@@ -51,7 +49,7 @@ public class ProximitySensorTest extends InstrumentationTestCase {
                         new AudioModeProvider(),
                         mAccelerometerListener);
         verify(mAccelerometerListener, never()).enable(anyBoolean());
-        proximitySensor.onStateChange(null, InCallState.OUTGOING, mCallList.getCallList());
+        proximitySensor.onStateChange(null, InCallState.OUTGOING, CallListSnapshot.EMPTY);
         verify(mAccelerometerListener).enable(true);
         verify(mAccelerometerListener, never()).enable(false);
 
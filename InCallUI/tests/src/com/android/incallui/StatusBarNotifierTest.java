@@ -16,6 +16,8 @@
 
 package com.android.incallui;
 
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.MediumTest;
 
@@ -95,4 +97,46 @@ public class StatusBarNotifierTest extends AndroidTestCase {
         StatusBarNotifier statusBarNotifier = new StatusBarNotifier(mContext, null);
         assertEquals(NUMBER, statusBarNotifier.getContentTitle(contactCacheEntry, mCall));
     }
+
+    public void testGetLargeIconToDisplay_MemoizedPerPhoto() {
+        StatusBarNotifier statusBarNotifier = new StatusBarNotifier(mContext, null);
+        ContactCacheEntry contactCacheEntry = new ContactCacheEntry();
+        contactCacheEntry.photo = new BitmapDrawable(mContext.getResources(),
+                Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888));
+
+        Bitmap icon = statusBarNotifier.getLargeIconToDisplay(contactCacheEntry, mCall);
+        assertNotNull(icon);
+        assertSame(icon, statusBarNotifier.getLargeIconToDisplay(contactCacheEntry, mCall));
+
+        contactCacheEntry.photo = new BitmapDrawable(mContext.getResources(),
+                Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888));
+        assertNotSame(icon, statusBarNotifier.getLargeIconToDisplay(contactCacheEntry, mCall));
+    }
+
+    public void testNotificationModel_Equal() {
+        assertEquals(createNotificationModel(), createNotificationModel());
+    }
+
+    public void testNotificationModel_ChronometerBaseChanged() {
+        StatusBarNotifier.NotificationModel model = createNotificationModel();
+        model.when += 1000;
+        assertFalse(createNotificationModel().equals(model));
+    }
+
+    public void testNotificationModel_ActionsChanged() {
+        StatusBarNotifier.NotificationModel model = createNotificationModel();
+        model.actions.remove(0);
+        assertFalse(createNotificationModel().equals(model));
+    }
+
+    private static StatusBarNotifier.NotificationModel createNotificationModel() {
+        StatusBarNotifier.NotificationModel model = new StatusBarNotifier.NotificationModel();
+        model.callState = Call.State.ACTIVE;
+        model.contentTitle = NAME_PRIMARY;
+        model.contentText = LOCATION;
+        model.usesChronometer = true;
+        model.when = 1000;
+        model.actions.add(0);
+        return model;
+    }
 }
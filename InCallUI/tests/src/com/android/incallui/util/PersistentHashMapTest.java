@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.incallui.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@SmallTest
+public class PersistentHashMapTest extends AndroidTestCase {
+
+    /** Key whose hash code is chosen by the test, to force collisions. */
+    private static final class Key {
+        private final String mName;
+        private final int mHash;
+
+        Key(String name, int hash) {
+            mName = name;
+            mHash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).mName.equals(mName);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
+    public void testEmpty() {
+        final PersistentHashMap<String, String> map = PersistentHashMap.empty();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get("a"));
+        assertFalse(map.iterator().hasNext());
+    }
+
+    public void testPlusAndGet() {
+        final PersistentHashMap<String, String> map =
+                PersistentHashMap.<String, String>empty().plus("a", "1").plus("b", "2");
+
+        assertEquals(2, map.size());
+        assertEquals("1", map.get("a"));
+        assertEquals("2", map.get("b"));
+        assertNull(map.get("c"));
+    }
+
+    public void testPlus_replacesValue() {
+        final PersistentHashMap<String, String> map =
+                PersistentHashMap.<String, String>empty().plus("a", "1").plus("a", "2");
+
+        assertEquals(1, map.size());
+        assertEquals("2", map.get("a"));
+    }
+
+    public void testPlus_sameValueReturnsSameMap() {
+        final PersistentHashMap<String, String> map =
+                PersistentHashMap.<String, String>empty().plus("a", "1");
+
+        assertSame(map, map.plus("a", "1"));
+    }
+
+    public void testMinus_missingKeyReturnsSameMap() {
+        final PersistentHashMap<String, String> map =
+                PersistentHashMap.<String, String>empty().plus("a", "1");
+
+        assertSame(map, map.minus("b"));
+    }
+
+    public void testOldVersionsAreUnchanged() {
+        final PersistentHashMap<String, String> first =
+                PersistentHashMap.<String, String>empty().plus("a", "1");
+        final PersistentHashMap<String, String> second = first.plus("b", "2").plus("a", "3");
+        final PersistentHashMap<String, String> third = second.minus("b");
+
+        assertEquals(1, first.size());
+        assertEquals("1", first.get("a"));
+        assertNull(first.get("b"));
+        assertEquals(2, second.size());
+        assertEquals("3", second.get("a"));
+        assertEquals("2", second.get("b"));
+        assertEquals(1, third.size());
+        assertNull(third.get("b"));
+    }
+
+    public void testCollidingHashes() {
+        final Key a = new Key("a", 42);
+        final Key b = new Key("b", 42);
+        PersistentHashMap<Key, String> map =
+                PersistentHashMap.<Key, String>empty().plus(a, "1").plus(b, "2");
+
+        assertEquals(2, map.size());
+        assertEquals("1", map.get(a));
+        assertEquals("2", map.get(b));
+
+        map = map.minus(a);
+        assertEquals(1, map.size());
+        assertNull(map.get(a));
+        assertEquals("2", map.get(b));
+    }
+
+    public void testHashesSharingLowBits() {
+        // Same slot at the first two levels, so the keys end up several nodes deep.
+        final Key a = new Key("a", 0x00000001);
+        final Key b = new Key("b", 0x00100001);
+        final Key c = new Key("c", 0x00000002);
+        PersistentHashMap<Key, String> map = PersistentHashMap.<Key, String>empty()
+                .plus(a, "1").plus(b, "2").plus(c, "3");
+
+        assertEquals("1", map.get(a));
+        assertEquals("2", map.get(b));
+        assertEquals("3", map.get(c));
+
+        map = map.minus(b);
+        assertEquals(2, map.size());
+        assertEquals("1", map.get(a));
+        assertNull(map.get(b));
+        assertEquals("3", map.get(c));
+    }
+
+    public void testManyEntries() {
+        final Map<String, Integer> expected = new HashMap<>();
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 1000; i++) {
+            expected.put("Call_" + i, i);
+            map = map.plus("Call_" + i, i);
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            expected.remove("Call_" + i);
+            map = map.minus("Call_" + i);
+        }
+
+        assertEquals(expected.size(), map.size());
+        final Map<String, Integer> actual = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : map) {
+            actual.put(entry.getKey(), entry.getValue());
+        }
+        assertEquals(expected, actual);
+
+        for (int i = 0; i < 1000; i++) {
+            map = map.minus("Call_" + i);
+        }
+        assertTrue(map.isEmpty());
+        assertFalse(map.iterator().hasNext());
+    }
+}
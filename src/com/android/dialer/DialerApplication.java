@@ -26,6 +26,7 @@ import com.android.contacts.common.extensions.ExtensionsFactory;
 import com.android.contacts.common.testing.NeededForTesting;
 import com.android.dialer.database.FilteredNumberAsyncQueryHandler;
 import com.android.dialer.filterednumber.BlockedNumbersAutoMigrator;
+import com.android.dialer.util.StartupScheduler;
 
 public class DialerApplication extends Application {
 
@@ -38,11 +39,25 @@ public class DialerApplication extends Application {
         sContext = this;
         Trace.beginSection(TAG + " onCreate");
         super.onCreate();
-        Trace.beginSection(TAG + " ExtensionsFactory initialization");
-        ExtensionsFactory.init(getApplicationContext());
-        Trace.endSection();
-        new BlockedNumbersAutoMigrator(PreferenceManager.getDefaultSharedPreferences(this),
-                new FilteredNumberAsyncQueryHandler(getContentResolver())).autoMigrate();
+        final StartupScheduler startupScheduler = StartupScheduler.getInstance();
+        startupScheduler.onProcessStart();
+        startupScheduler.runAfterFirstFrame("ExtensionsFactory initialization", new Runnable() {
+            @Override
+            public void run() {
+                ExtensionsFactory.init(DialerApplication.this);
+            }
+        });
+        // The query handler has to be created on a thread with a looper, for its callbacks.
+        final FilteredNumberAsyncQueryHandler queryHandler =
+                new FilteredNumberAsyncQueryHandler(getContentResolver());
+        startupScheduler.runAfterFirstFrame("BlockedNumbersAutoMigrator", new Runnable() {
+            @Override
+            public void run() {
+                new BlockedNumbersAutoMigrator(
+                        PreferenceManager.getDefaultSharedPreferences(DialerApplication.this),
+                        queryHandler).autoMigrate();
+            }
+        });
         Trace.endSection();
     }
 
@@ -89,6 +89,7 @@ import com.android.dialer.util.DialerUtils;
 import com.android.dialer.util.IntentUtil;
 import com.android.dialer.util.IntentUtil.CallIntentBuilder;
 import com.android.dialer.util.PresenceHelper;
+import com.android.dialer.util.StartupScheduler;
 import com.android.dialer.util.TelecomUtil;
 import com.android.dialer.util.WifiCallUtils;
 import com.android.dialer.voicemail.VoicemailArchiveActivity;
@@ -102,7 +103,11 @@ import com.android.phone.common.animation.AnimationListenerAdapter;
 import com.google.common.annotations.VisibleForTesting;
 import com.android.contacts.common.CallUtil;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -133,6 +138,10 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
     private static final String KEY_FIRST_LAUNCH = "first_launch";
     private static final String KEY_IS_DIALPAD_SHOWN = "is_dialpad_shown";
 
+    /** Dump argument that also writes the performance metrics to {@link #METRICS_FILE_NAME}. */
+    private static final String DUMP_ARG_EXPORT_METRICS = "--export-metrics";
+    private static final String METRICS_FILE_NAME = "performance_metrics.txt";
+
     @VisibleForTesting
     public static final String TAG_DIALPAD_FRAGMENT = "dialpad";
     private static final String TAG_REGULAR_SEARCH_FRAGMENT = "search";
@@ -405,6 +414,7 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
 
         Trace.beginSection(TAG + " setContentView");
         setContentView(R.layout.dialtacts_activity);
+        StartupScheduler.getInstance().watchFirstFrame(this);
         Trace.endSection();
         getWindow().setBackgroundDrawable(null);
 
@@ -518,7 +528,15 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
 
         Trace.beginSection(TAG + " initialize smart dialing");
         mDialerDatabaseHelper = DatabaseHelperManager.getDatabaseHelper(this);
-        SmartDialPrefix.initializeNanpSettings(this);
+        // Reads the SIM country; only needed once phone numbers are parsed for smart dialing.
+        final Context appContext = getApplicationContext();
+        StartupScheduler.getInstance().runAfterFirstFrame("initializeNanpSettings",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        SmartDialPrefix.initializeNanpSettings(appContext);
+                    }
+                });
 
         boolean isPresenceEnabled = this.getResources().getBoolean(
                 R.bool.config_regional_presence_enable);
@@ -658,6 +676,19 @@ public class DialtactsActivity extends TransactionSafeActivity implements View.O
         mStateSaved = true;
     }
 
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.println(prefix + "Performance metrics:");
+        Logger.dumpMetrics(writer);
+        if (args != null && Arrays.asList(args).contains(DUMP_ARG_EXPORT_METRICS)) {
+            final File file = new File(getFilesDir(), METRICS_FILE_NAME);
+            if (Logger.exportMetrics(file)) {
+                writer.println(prefix + "Exported performance metrics to " + file);
+            }
+        }
+    }
+
     @Override
     public void onAttachFragment(Fragment fragment) {
         if (fragment instanceof DialpadFragment) {
@@ -26,10 +26,12 @@ import android.database.Cursor;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.os.Trace;
 import android.preference.PreferenceManager;
 import android.provider.CallLog;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.ViewHolder;
 import android.telecom.PhoneAccountHandle;
@@ -59,10 +61,12 @@ import com.android.dialer.database.VoicemailArchiveContract;
 import com.android.dialer.filterednumber.BlockNumberDialogFragment.Callback;
 import com.android.dialer.logging.InteractionEvent;
 import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
 import com.android.dialer.service.ExtendedBlockingButtonRenderer;
 import com.android.dialer.util.DialerUtils;
 import com.android.dialer.util.PhoneNumberUtil;
 import com.android.dialer.voicemail.VoicemailPlaybackPresenter;
+import com.android.dialer.voicemail.VoicemailPrefetcher;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -228,6 +232,36 @@ public class CallLogAdapter extends GroupingListAdapter
         viewHolder.showActions(true);
         mCurrentlyExpandedPosition = viewHolder.getAdapterPosition();
         mCurrentlyExpandedRowId = viewHolder.rowId;
+
+        if (mVoicemailPlaybackPresenter != null
+                && viewHolder.callType == CallLog.Calls.VOICEMAIL_TYPE) {
+            // The voicemail in the next row is likely played next, so have it prepared.
+            mVoicemailPlaybackPresenter.setNextVoicemailUri(
+                    getVoicemailUri(mCurrentlyExpandedPosition + 1));
+        }
+    }
+
+    /**
+     * Returns the voicemail in the row at {@code position}, or {@code null} if there is no such
+     * row or it is not a voicemail.
+     */
+    @Nullable
+    private Uri getVoicemailUri(int position) {
+        if (position < 0 || position >= getItemCount()
+                || getItemViewType(position) == VIEW_TYPE_VOICEMAIL_PROMO_CARD) {
+            return null;
+        }
+        final Cursor c = (Cursor) getItem(position);
+        if (c == null) {
+            return null;
+        }
+        if (mActivityType == ACTIVITY_TYPE_ARCHIVE) {
+            return VoicemailArchiveContract.VoicemailArchive.buildWithId(c.getInt(
+                    c.getColumnIndex(VoicemailArchiveContract.VoicemailArchive._ID)));
+        }
+        final String voicemailUri = c.getString(CallLogQuery.VOICEMAIL_URI);
+        return c.getInt(CallLogQuery.CALL_TYPE) == CallLog.Calls.VOICEMAIL_TYPE
+                && !TextUtils.isEmpty(voicemailUri) ? Uri.parse(voicemailUri) : null;
     }
 
     /**
@@ -372,6 +406,9 @@ public class CallLogAdapter extends GroupingListAdapter
             mContactInfoCache.start();
         }
         mContactsPreferences.refreshValue(ContactsPreferences.DISPLAY_ORDER_KEY);
+        if (mVoicemailPlaybackPresenter != null && mActivityType != ACTIVITY_TYPE_ARCHIVE) {
+            VoicemailPrefetcher.getInstance(mContext).prefetchRecent();
+        }
     }
 
     public void onPause() {
@@ -467,6 +504,7 @@ public class CallLogAdapter extends GroupingListAdapter
     @Override
     public void onBindViewHolder(ViewHolder viewHolder, int position) {
         Trace.beginSection("onBindViewHolder: " + position);
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_VOICEMAIL_PROMO_CARD:
@@ -477,6 +515,7 @@ public class CallLogAdapter extends GroupingListAdapter
                 break;
         }
 
+        Logger.recordTimingSince(PerformanceMetric.CALL_LOG_BIND, startNanos);
         Trace.endSection();
     }
 
@@ -619,6 +658,11 @@ public class CallLogAdapter extends GroupingListAdapter
             }
             views.callType = c.getInt(CallLogQuery.CALL_TYPE);
             views.voicemailUri = c.getString(CallLogQuery.VOICEMAIL_URI);
+            if (mVoicemailPlaybackPresenter != null && views.voicemailUri != null
+                    && views.callType == CallLog.Calls.VOICEMAIL_TYPE && !details.isRead) {
+                VoicemailPrefetcher.getInstance(mContext).onVoicemailVisible(
+                        Uri.parse(views.voicemailUri));
+            }
         }
 
         mCallLogListItemHelper.setPhoneCallDetails(views, details, mFilterString);
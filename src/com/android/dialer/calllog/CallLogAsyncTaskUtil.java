@@ -52,7 +52,10 @@ import java.util.regex.Pattern;
 public class CallLogAsyncTaskUtil {
     private static String TAG = CallLogAsyncTaskUtil.class.getSimpleName();
 
-   /** The enumeration of {@link AsyncTask} objects used in this class. */
+    /**
+     * The enumeration of {@link AsyncTask} objects used in this class. They all run on
+     * {@link AsyncTaskExecutors.Domain#PROVIDER_IO}.
+     */
     public enum Tasks {
         DELETE_VOICEMAIL,
         DELETE_CALL,
@@ -136,7 +139,8 @@ public class CallLogAsyncTaskUtil {
     private static AsyncTaskExecutor sAsyncTaskExecutor;
 
     private static void initTaskExecutor() {
-        sAsyncTaskExecutor = AsyncTaskExecutors.createThreadPoolExecutor();
+        sAsyncTaskExecutor = AsyncTaskExecutors.createExecutor(
+                AsyncTaskExecutors.Domain.PROVIDER_IO);
     }
 
     public static void getCallDetails(
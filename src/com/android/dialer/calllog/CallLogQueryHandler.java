@@ -30,6 +30,7 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.provider.CallLog.Calls;
 import android.provider.VoicemailContract.Status;
 import android.provider.VoicemailContract.Voicemails;
@@ -39,6 +40,8 @@ import com.android.contacts.common.compat.SdkVersionOverride;
 import com.android.contacts.common.database.NoNullCursorAsyncQueryHandler;
 import com.android.contacts.common.util.PermissionsUtil;
 import com.android.dialer.database.VoicemailArchiveContract;
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
 import com.android.dialer.util.AppCompatConstants;
 import com.android.dialer.util.TelecomUtil;
 import com.android.dialer.voicemail.VoicemailStatusHelperImpl;
@@ -87,6 +90,9 @@ public class CallLogQueryHandler extends NoNullCursorAsyncQueryHandler {
 
     private final Context mContext;
 
+    /** When the pending call log query was started, for {@link PerformanceMetric#CALL_LOG_LOAD}. */
+    private long mCallLogQueryStartNanos;
+
     /**
      * Simple handler that wraps background calls to catch
      * {@link SQLiteException}, such as when the disk is full.
@@ -184,6 +190,7 @@ public class CallLogQueryHandler extends NoNullCursorAsyncQueryHandler {
         String selection = "(" + Calls.NUMBER + " like '%" + filter
                 + "%'  or  " + Calls.CACHED_NAME + " like '%" + filter + "%' )";
 
+        mCallLogQueryStartNanos = SystemClock.elapsedRealtimeNanos();
         startQuery(token, null, Calls.CONTENT_URI_WITH_VOICEMAIL,
                 CallLogQuery._PROJECTION, selection, null,
                 Calls.DEFAULT_SORT_ORDER);
@@ -264,6 +271,7 @@ public class CallLogQueryHandler extends NoNullCursorAsyncQueryHandler {
         Uri uri = TelecomUtil.getCallLogUri(mContext).buildUpon()
                 .appendQueryParameter(Calls.LIMIT_PARAM_KEY, Integer.toString(limit))
                 .build();
+        mCallLogQueryStartNanos = SystemClock.elapsedRealtimeNanos();
         startQuery(token, null, uri, CallLogQuery._PROJECTION, selection, selectionArgs.toArray(
                 new String[selectionArgs.size()]), Calls.DEFAULT_SORT_ORDER);
     }
@@ -330,6 +338,7 @@ public class CallLogQueryHandler extends NoNullCursorAsyncQueryHandler {
         Uri uri = TelecomUtil.getCallLogUri(mContext).buildUpon()
                 .appendQueryParameter(Calls.LIMIT_PARAM_KEY, Integer.toString(limit))
                 .build();
+        mCallLogQueryStartNanos = SystemClock.elapsedRealtimeNanos();
         startQuery(token, null, uri,
                 CallLogQuery._PROJECTION, selection, selectionArgs.toArray(EMPTY_STRING_ARRAY),
                 Calls.DEFAULT_SORT_ORDER);
@@ -390,6 +399,10 @@ public class CallLogQueryHandler extends NoNullCursorAsyncQueryHandler {
         }
         try {
             if (token == QUERY_CALLLOG_TOKEN || token == QUERY_VOICEMAIL_ARCHIVE) {
+                if (token == QUERY_CALLLOG_TOKEN) {
+                    Logger.recordTimingSince(PerformanceMetric.CALL_LOG_LOAD,
+                            mCallLogQueryStartNanos);
+                }
                 if (updateAdapterData(cursor)) {
                     cursor = null;
                 }
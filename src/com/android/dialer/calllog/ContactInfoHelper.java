@@ -19,6 +19,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteFullException;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.provider.CallLog.Calls;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
@@ -38,6 +39,8 @@ import com.android.contacts.common.util.PermissionsUtil;
 import com.android.contacts.common.util.PhoneNumberHelper;
 import com.android.contacts.common.util.UriUtils;
 import com.android.dialer.compat.DialerCompatUtils;
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
 import com.android.dialer.service.CachedNumberLookupService;
 import com.android.dialer.service.CachedNumberLookupService.CachedContactInfo;
 import com.android.dialer.util.TelecomUtil;
@@ -102,6 +105,7 @@ public class ContactInfoHelper {
             return null;
         }
 
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
         ContactInfo info;
 
         if (PhoneNumberHelper.isUriNumber(number)) {
@@ -125,6 +129,7 @@ public class ContactInfoHelper {
         if (info == null) {
             // The lookup failed.
             updatedInfo = null;
+            Logger.incrementCounter(PerformanceMetric.CONTACT_LOOKUP_FAILED);
         } else {
             // If we did not find a matching contact, generate an empty contact info for the number.
             if (info == ContactInfo.EMPTY) {
@@ -142,6 +147,7 @@ public class ContactInfoHelper {
                 updatedInfo = info;
             }
         }
+        Logger.recordTimingSince(PerformanceMetric.CONTACT_LOOKUP, startNanos);
         return updatedInfo;
     }
 
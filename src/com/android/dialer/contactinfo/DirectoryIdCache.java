@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.contactinfo;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.Directory;
+import android.util.Log;
+
+import com.android.contacts.common.ContactsUtils;
+import com.android.contacts.common.compat.DirectoryCompat;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.Longs;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide cache of the remote contact directory ids.
+ * <p>
+ * The set of directories almost never changes, so instead of querying the directory provider on
+ * every caller-id lookup, the ids are loaded once and invalidated by a {@link ContentObserver} on
+ * the directory URI. The next caller after an invalidation reloads the snapshot.
+ */
+public class DirectoryIdCache {
+    private static final String TAG = "DirectoryIdCache";
+
+    private static final String[] DIRECTORY_PROJECTION = new String[] {Directory._ID};
+
+    private static DirectoryIdCache sInstance;
+
+    private final Context mContext;
+    private final ContentObserver mDirectoryObserver;
+
+    /** The cached ids, or {@code null} if they need to be (re)loaded. */
+    private volatile long[] mRemoteDirectoryIds;
+    /** Bumped on every invalidation so a load racing with a change is not cached. */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    public static synchronized DirectoryIdCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DirectoryIdCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    DirectoryIdCache(Context context) {
+        mContext = context;
+        mDirectoryObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                invalidate();
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(
+                Directory.CONTENT_URI, true, mDirectoryObserver);
+    }
+
+    /**
+     * Returns the ids of all remote directories. Loads them synchronously if the cached snapshot
+     * was invalidated, so this should not be called on the UI thread when a reload is likely.
+     */
+    public long[] getRemoteDirectoryIds() {
+        long[] ids = mRemoteDirectoryIds;
+        if (ids == null) {
+            int generation = mGeneration.get();
+            ids = loadRemoteDirectoryIds();
+            synchronized (this) {
+                if (generation == mGeneration.get()) {
+                    mRemoteDirectoryIds = ids;
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Drops the cached ids so that the next call to {@link #getRemoteDirectoryIds()} reloads them.
+     */
+    public void invalidate() {
+        Log.d(TAG, "invalidate");
+        synchronized (this) {
+            mGeneration.incrementAndGet();
+            mRemoteDirectoryIds = null;
+        }
+    }
+
+    private long[] loadRemoteDirectoryIds() {
+        Uri uri = Directory.CONTENT_URI;
+        if (ContactsUtils.FLAG_N_FEATURE) {
+            uri = Uri.withAppendedPath(ContactsContract.AUTHORITY_URI, "directories_enterprise");
+        }
+
+        ArrayList<Long> results = new ArrayList<>();
+        Cursor cursor = mContext.getContentResolver().query(
+                uri, DIRECTORY_PROJECTION, null, null, null);
+        if (cursor != null) {
+            try {
+                int idIndex = cursor.getColumnIndex(Directory._ID);
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(idIndex);
+                    if (DirectoryCompat.isRemoteDirectoryId(id)) {
+                        results.add(id);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return Longs.toArray(results);
+    }
+}
@@ -16,18 +16,20 @@
 
 package com.android.dialer.database;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.SystemClock;
 import android.provider.BaseColumns;
 import android.provider.ContactsContract;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
@@ -45,6 +47,8 @@ import com.android.dialer.database.VoicemailArchiveContract.VoicemailArchive;
 import com.android.dialer.R;
 import com.android.dialer.dialpad.SmartDialNameMatcher;
 import com.android.dialer.dialpad.SmartDialPrefix;
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
@@ -74,6 +78,16 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
     private static final AtomicBoolean sInUpdate = new AtomicBoolean(false);
     private final Context mContext;
 
+    /**
+     * Set when the contacts provider reports a change, and cleared when an update is started.
+     * Only meaningful once {@link #mContactsObserver} is registered.
+     */
+    private final AtomicBoolean mContactsChanged = new AtomicBoolean(false);
+    private ContentObserver mContactsObserver;
+
+    /** Compiled statements for the SQL run repeatedly outside of the update. */
+    private final StatementPool mStatementPool = new StatementPool(STATEMENT_POOL_SIZE);
+
     private Class mMultiMatchClass;
     private Object mMultiMatchObject;
     private Method mMultiMatchMethod;
@@ -85,7 +99,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      *   0-98   KitKat
      * </pre>
      */
-    public static final int DATABASE_VERSION = 9;
+    public static final int DATABASE_VERSION = 11;
     public static final int DATABASE_SHAREPREF_VERSION = 1;
     public static final String DATABASE_SHAREPREF_KEY = "database_sharepref_key";
     public static final String DATABASE_NAME = "dialer.db";
@@ -95,10 +109,36 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      */
     private static final String DATABASE_LAST_CREATED_SHARED_PREF = "com.android.dialer";
     private static final String LAST_UPDATED_MILLIS = "last_updated_millis";
-    private static final String DATABASE_VERSION_PROPERTY = "database_version";
+    @VisibleForTesting
+    static final String DATABASE_VERSION_PROPERTY = "database_version";
+
+    private static final String GET_PROPERTY_SQL = "SELECT " + PropertiesColumns.PROPERTY_VALUE
+            + " FROM " + Tables.PROPERTIES + " WHERE " + PropertiesColumns.PROPERTY_KEY + " = ?";
+    private static final String SET_PROPERTY_SQL = "INSERT OR REPLACE INTO " + Tables.PROPERTIES
+            + " (" + PropertiesColumns.PROPERTY_KEY + ", " + PropertiesColumns.PROPERTY_VALUE
+            + ") VALUES (?, ?)";
+
+    /**
+     * Contacts deleted per statement by {@link #deleteContacts}, well below the limit of 999
+     * bound parameters per statement.
+     */
+    private static final int DELETE_BATCH_SIZE = 200;
+    private static final String DELETE_SMARTDIAL_CONTACTS_SQL = getDeleteContactsSql(
+            Tables.SMARTDIAL_TABLE, SmartDialDbColumns.CONTACT_ID);
+    private static final String DELETE_PREFIX_CONTACTS_SQL = getDeleteContactsSql(
+            Tables.PREFIX_TABLE, PrefixColumns.CONTACT_ID);
 
     private static final int MAX_ENTRIES = 40;
 
+    /**
+     * Page cache of the connection the smart dial update runs on, in KiB. Large enough to hold
+     * the prefix table and its indexes for a few thousand contacts while they are rebuilt.
+     */
+    private static final int UPDATE_CACHE_SIZE_KB = 4096;
+
+    /** Number of idle compiled statements kept by {@link #mStatementPool}. */
+    private static final int STATEMENT_POOL_SIZE = 8;
+
     public interface Tables {
         /** Saves a list of numbers to be blocked.*/
         static final String FILTERED_NUMBER_TABLE = "filtered_numbers_table";
@@ -462,11 +502,33 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         setupTables(db);
     }
 
+    /**
+     * Enables write-ahead logging, so that smart dial queries and the providers backed by this
+     * database read the last committed state while an update is writing, rather than waiting
+     * for it. The framework then keeps a pool of read-only connections next to the one used for
+     * writes. An in-memory database, as used in tests, stays in rollback journal mode.
+     * <p>
+     * The page size is left to the platform default, which is applied before any table exists;
+     * it could only be changed afterwards with a VACUUM, which WAL mode does not allow.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+        // Only applies to the primary connection, which is the one the update writes through.
+        db.execSQL("PRAGMA cache_size = -" + UPDATE_CACHE_SIZE_KB);
+    }
+
     @Override
     public void onOpen(SQLiteDatabase db) {
         upgradeSmartSearchDatabase(db);
     }
 
+    @Override
+    public synchronized void close() {
+        mStatementPool.clear();
+        super.close();
+    }
+
     private void setupTables(SQLiteDatabase db) {
         dropTables(db);
         db.execSQL("CREATE TABLE " + Tables.SMARTDIAL_TABLE + " ("
@@ -516,6 +578,8 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                 + ");");
 
         createVoicemailArchiveTable(db);
+        upgradeToVersion10(db);
+        upgradeToVersion11(db);
         setProperty(db, DATABASE_VERSION_PROPERTY, String.valueOf(DATABASE_VERSION));
         if (!mIsTestInstance) {
             resetSmartDialLastUpdatedTime();
@@ -618,6 +682,16 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
             oldVersion = 9;
         }
 
+        if (oldVersion < 10) {
+            upgradeToVersion10(db);
+            oldVersion = 10;
+        }
+
+        if (oldVersion < 11) {
+            upgradeToVersion11(db);
+            oldVersion = 11;
+        }
+
         if (oldVersion != DATABASE_VERSION) {
             throw new IllegalStateException(
                     "error upgrading the database to version " + DATABASE_VERSION);
@@ -630,6 +704,24 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("ALTER TABLE smartdial_table ADD carrier_presence INTEGER NOT NULL DEFAULT 0");
     }
 
+    public void upgradeToVersion10(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + Tables.VOICEMAIL_ARCHIVE_TABLE + " ADD "
+                + VoicemailArchive.PEAKS + " BLOB");
+    }
+
+    /**
+     * Adds the flag that tells a finished copy of the voicemail content from an interrupted one.
+     * Voicemails the user archived were only marked so after their copy succeeded, so they are
+     * taken as complete; other rows are verified the next time they are archived.
+     */
+    public void upgradeToVersion11(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + Tables.VOICEMAIL_ARCHIVE_TABLE + " ADD "
+                + VoicemailArchive.CONTENT_COMPLETE + " INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("UPDATE " + Tables.VOICEMAIL_ARCHIVE_TABLE + " SET "
+                + VoicemailArchive.CONTENT_COMPLETE + " = 1 WHERE "
+                + VoicemailArchive.ARCHIVED + " = 1");
+    }
+
     /**
      * Stores a key-value pair in the {@link Tables#PROPERTIES} table.
      */
@@ -638,10 +730,18 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
     }
 
     public void setProperty(SQLiteDatabase db, String key, String value) {
-        final ContentValues values = new ContentValues();
-        values.put(PropertiesColumns.PROPERTY_KEY, key);
-        values.put(PropertiesColumns.PROPERTY_VALUE, value);
-        db.replace(Tables.PROPERTIES, null, values);
+        final SQLiteStatement statement = mStatementPool.acquire(db, SET_PROPERTY_SQL);
+        try {
+            statement.bindString(1, key);
+            if (value == null) {
+                statement.bindNull(2);
+            } else {
+                statement.bindString(2, value);
+            }
+            statement.executeInsert();
+        } finally {
+            mStatementPool.release(db, SET_PROPERTY_SQL, statement);
+        }
     }
 
     /**
@@ -653,21 +753,17 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
 
     public String getProperty(SQLiteDatabase db, String key, String defaultValue) {
         try {
-            String value = null;
-            final Cursor cursor = db.query(Tables.PROPERTIES,
-                    new String[] {PropertiesColumns.PROPERTY_VALUE},
-                            PropertiesColumns.PROPERTY_KEY + "=?",
-                    new String[] {key}, null, null, null);
-            if (cursor != null) {
-                try {
-                    if (cursor.moveToFirst()) {
-                        value = cursor.getString(0);
-                    }
-                } finally {
-                    cursor.close();
-                }
+            final SQLiteStatement statement = mStatementPool.acquire(db, GET_PROPERTY_SQL);
+            try {
+                statement.bindString(1, key);
+                final String value = statement.simpleQueryForString();
+                return value != null ? value : defaultValue;
+            } finally {
+                mStatementPool.release(db, GET_PROPERTY_SQL, statement);
             }
-            return value != null ? value : defaultValue;
+        } catch (SQLiteDoneException e) {
+            // No such property.
+            return defaultValue;
         } catch (SQLiteException e) {
             return defaultValue;
         }
@@ -691,17 +787,51 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Starts the database upgrade process in the background.
+     * Starts the database upgrade process in the background, if contacts may have changed since
+     * the last update. Must be called on the main thread.
+     * <p>
+     * Changes are tracked with an observer on the contacts provider. It is registered by the
+     * first call in each process, which cannot know what changed before then; that call checks
+     * the provider for contacts changed or deleted since the last update instead.
      */
     public void startSmartDialUpdateThread() {
-        if (PermissionsUtil.hasContactsPermissions(mContext)) {
-            new SmartDialUpdateAsyncTask().execute();
+        if (!PermissionsUtil.hasContactsPermissions(mContext)) {
+            return;
+        }
+        if (mContactsObserver == null) {
+            mContactsObserver = new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    mContactsChanged.set(true);
+                }
+            };
+            mContext.getContentResolver().registerContentObserver(
+                    ContactsContract.AUTHORITY_URI, true, mContactsObserver);
+            new SmartDialUpdateAsyncTask(true /* checkForChanges */).execute();
+        } else if (mContactsChanged.getAndSet(false)) {
+            // Cleared before updating, so a change made during the update triggers another.
+            new SmartDialUpdateAsyncTask(false /* checkForChanges */).execute();
+        } else {
+            Logger.incrementCounter(PerformanceMetric.SMART_DIAL_UPDATE_SKIPPED);
         }
     }
 
     private class SmartDialUpdateAsyncTask extends AsyncTask {
+        private final boolean mCheckForChanges;
+
+        SmartDialUpdateAsyncTask(boolean checkForChanges) {
+            mCheckForChanges = checkForChanges;
+        }
+
         @Override
         protected Object doInBackground(Object[] objects) {
+            // Opening the database first runs any pending create or upgrade, which resets the
+            // last update time if the smart dial tables were rebuilt.
+            getWritableDatabase();
+            if (mCheckForChanges && !haveContactsChangedSinceLastUpdate()) {
+                Logger.incrementCounter(PerformanceMetric.SMART_DIAL_UPDATE_SKIPPED);
+                return null;
+            }
             if (DEBUG) {
                 Log.v(TAG, "Updating database");
             }
@@ -740,15 +870,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
 
         db.beginTransaction();
         try {
-            while (deletedContactCursor.moveToNext()) {
-                final Long deleteContactId =
-                        deletedContactCursor.getLong(DeleteContactQuery.DELETED_CONTACT_ID);
-                db.delete(Tables.SMARTDIAL_TABLE,
-                        SmartDialDbColumns.CONTACT_ID + "=" + deleteContactId, null);
-                db.delete(Tables.PREFIX_TABLE,
-                        PrefixColumns.CONTACT_ID + "=" + deleteContactId, null);
-            }
-
+            deleteContacts(db, deletedContactCursor, DeleteContactQuery.DELETED_CONTACT_ID);
             db.setTransactionSuccessful();
         } finally {
             deletedContactCursor.close();
@@ -756,6 +878,42 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * Returns whether any contact was updated or deleted since the last update of the smart dial
+     * database, using the same criteria as {@link #updateSmartDialDatabase}. Looks for a single
+     * row of each, which is much cheaper than running the update.
+     */
+    private boolean haveContactsChangedSinceLastUpdate() {
+        final long lastUpdateMillis = mContext.getSharedPreferences(
+                DATABASE_LAST_CREATED_SHARED_PREF, Context.MODE_PRIVATE)
+                .getLong(LAST_UPDATED_MILLIS, 0);
+        if (lastUpdateMillis == 0) {
+            return true;
+        }
+        final String[] selectionArgs = new String[] {String.valueOf(lastUpdateMillis)};
+        return hasAnyRow(UpdatedContactQuery.URI, UpdatedContactQuery.PROJECTION,
+                UpdatedContactQuery.SELECT_UPDATED_CLAUSE, selectionArgs)
+                || hasAnyRow(DeleteContactQuery.URI, DeleteContactQuery.PROJECTION,
+                        DeleteContactQuery.SELECT_UPDATED_CLAUSE, selectionArgs);
+    }
+
+    private boolean hasAnyRow(Uri uri, String[] projection, String selection,
+            String[] selectionArgs) {
+        final Uri limitedUri = uri.buildUpon()
+                .appendQueryParameter(ContactsContract.LIMIT_PARAM_KEY, "1").build();
+        final Cursor cursor = mContext.getContentResolver().query(
+                limitedUri, projection, selection, selectionArgs, null);
+        if (cursor == null) {
+            // The provider is unavailable; let the update deal with it as it always has.
+            return true;
+        }
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
     private Cursor getDeletedContactCursor(String lastUpdateMillis) {
         return mContext.getContentResolver().query(
                 DeleteContactQuery.URI,
@@ -774,19 +932,22 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      * @param last_update_time Time stamp of last successful update of the dialer database.
      */
     private void removePotentiallyCorruptedContacts(SQLiteDatabase db, String last_update_time) {
+        final String[] whereArgs = new String[] {last_update_time};
         db.delete(Tables.PREFIX_TABLE,
                 PrefixColumns.CONTACT_ID + " IN " +
                 "(SELECT " + SmartDialDbColumns.CONTACT_ID + " FROM " + Tables.SMARTDIAL_TABLE +
-                " WHERE " + SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME + " > " +
-                last_update_time + ")",
-                null);
+                " WHERE " + SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME + " > ?)",
+                whereArgs);
         db.delete(Tables.SMARTDIAL_TABLE,
-                SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME + " > " + last_update_time, null);
+                SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME + " > ?", whereArgs);
     }
 
     /**
      * All columns excluding MIME_TYPE, _DATA, ARCHIVED, SERVER_ID, are the same as
      *  the columns in the {@link android.provider.CallLog.Calls} table.
+     *  <p>
+     *  This is the version 9 schema, also used when upgrading from before it; later columns are
+     *  added by the upgrade steps, such as {@link #upgradeToVersion10}.
      *
      *  @param db Database pointer to the dialer database.
      */
@@ -848,20 +1009,59 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         db.beginTransaction();
         try {
             updatedContactCursor.moveToPosition(-1);
-            while (updatedContactCursor.moveToNext()) {
-                final Long contactId =
-                        updatedContactCursor.getLong(UpdatedContactQuery.UPDATED_CONTACT_ID);
+            deleteContacts(db, updatedContactCursor, UpdatedContactQuery.UPDATED_CONTACT_ID);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
 
-                db.delete(Tables.SMARTDIAL_TABLE, SmartDialDbColumns.CONTACT_ID + "=" +
-                        contactId, null);
-                db.delete(Tables.PREFIX_TABLE, PrefixColumns.CONTACT_ID + "=" +
-                        contactId, null);
+    /**
+     * Deletes the rows of the contacts in the rest of {@code cursor} from the smartdial and
+     * prefix tables. The contacts are deleted {@link #DELETE_BATCH_SIZE} at a time, with one
+     * {@code contact_id IN (...)} statement per table, so an update after a sync that touched
+     * thousands of contacts runs tens of statements rather than thousands.
+     *
+     * @param contactIdColumn Column of the cursor holding the contact ID.
+     */
+    private void deleteContacts(SQLiteDatabase db, Cursor cursor, int contactIdColumn) {
+        final long[] contactIds = new long[DELETE_BATCH_SIZE];
+        int count = 0;
+        while (cursor.moveToNext()) {
+            contactIds[count++] = cursor.getLong(contactIdColumn);
+            if (count == DELETE_BATCH_SIZE) {
+                deleteContactBatch(db, DELETE_SMARTDIAL_CONTACTS_SQL, contactIds, count);
+                deleteContactBatch(db, DELETE_PREFIX_CONTACTS_SQL, contactIds, count);
+                count = 0;
             }
+        }
+        if (count > 0) {
+            deleteContactBatch(db, DELETE_SMARTDIAL_CONTACTS_SQL, contactIds, count);
+            deleteContactBatch(db, DELETE_PREFIX_CONTACTS_SQL, contactIds, count);
+        }
+    }
 
-            db.setTransactionSuccessful();
+    private void deleteContactBatch(SQLiteDatabase db, String sql, long[] contactIds,
+            int count) {
+        final SQLiteStatement statement = mStatementPool.acquire(db, sql);
+        try {
+            // A smaller batch repeats its last ID, so that every batch uses the same statement.
+            for (int i = 0; i < DELETE_BATCH_SIZE; i++) {
+                statement.bindLong(i + 1, contactIds[Math.min(i, count - 1)]);
+            }
+            statement.executeUpdateDelete();
         } finally {
-            db.endTransaction();
+            mStatementPool.release(db, sql, statement);
+        }
+    }
+
+    private static String getDeleteContactsSql(String table, String contactIdColumn) {
+        final StringBuilder sql = new StringBuilder("DELETE FROM ").append(table)
+                .append(" WHERE ").append(contactIdColumn).append(" IN (?");
+        for (int i = 1; i < DELETE_BATCH_SIZE; i++) {
+            sql.append(", ?");
         }
+        return sql.append(')').toString();
     }
 
     /**
@@ -1042,6 +1242,7 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      */
     public void updateSmartDialDatabase() {
         initMultiLanguageSearch();
+        SmartDialPrefix.ensureNanpSettingsInitialized(mContext);
 
         final SQLiteDatabase db = getWritableDatabase();
 
@@ -1068,147 +1269,218 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
                 stopWatch.lap("Queried the Contacts database");
             }
 
-            /** Prevents the app from reading the dialer database when updating. */
+            /**
+             * Without write-ahead logging, prevents the app from reading the dialer database
+             * when updating, as it would wait for the update to commit.
+             */
             sInUpdate.getAndSet(true);
 
-            /** Removes contacts that have been deleted. */
-            removeDeletedContacts(db, getDeletedContactCursor(lastUpdateMillis));
-            removePotentiallyCorruptedContacts(db, lastUpdateMillis);
-
-            if (DEBUG) {
-                stopWatch.lap("Finished deleting deleted entries");
-            }
-
-            /** If the database did not exist before, jump through deletion as there is nothing
-             * to delete.
-             */
-            if (!lastUpdateMillis.equals("0")) {
-                /** Removes contacts that have been updated. Updated contact information will be
-                 * inserted later. Note that this has to use a separate result set from
-                 * updatePhoneCursor, since it is possible for a contact to be updated (e.g.
-                 * phone number deleted), but have no results show up in updatedPhoneCursor (since
-                 * all of its phone numbers have been deleted).
-                 */
-                final Cursor updatedContactCursor = mContext.getContentResolver().query(
-                        UpdatedContactQuery.URI,
-                        UpdatedContactQuery.PROJECTION,
-                        UpdatedContactQuery.SELECT_UPDATED_CLAUSE,
-                        new String[] {lastUpdateMillis},
-                        null
-                        );
-                if (updatedContactCursor == null) {
-                    Log.e(TAG, "SmartDial query received null for cursor");
-                    return;
-                }
-                try {
-                    removeUpdatedContacts(db, updatedContactCursor);
-                } finally {
-                    updatedContactCursor.close();
-                }
-                if (DEBUG) {
-                    stopWatch.lap("Finished deleting entries belonging to updated contacts");
+            // The update commits as a whole. With write-ahead logging, queries meanwhile read
+            // the previous state of the tables instead of a partially updated one. If it stops
+            // early, it is rolled back and the next update starts from the same point.
+            boolean updated = false;
+            db.beginTransactionNonExclusive();
+            try {
+                updated = updateSmartDialTables(db, lastUpdateMillis, currentMillis, stopWatch);
+                if (updated) {
+                    db.setTransactionSuccessful();
                 }
+            } finally {
+                db.endTransaction();
+                sInUpdate.getAndSet(false);
             }
+            if (!updated) {
+                return;
+            }
+            checkpoint(db);
+
+            final SharedPreferences.Editor editor = databaseLastUpdateSharedPref.edit();
+            editor.putLong(LAST_UPDATED_MILLIS, currentMillis);
+            editor.commit();
 
-            /** Queries the contact database to get all phone numbers that have been updated since the last
-             * update time.
+            // Notify content observers that smart dial database has been updated.
+            mContext.getContentResolver().notifyChange(SMART_DIAL_UPDATED_URI, null, false);
+        }
+    }
+
+    /**
+     * Copies the pages the update wrote to the write-ahead log back into the database file,
+     * which keeps the log short for the readers that have to search it. Passive, so it neither
+     * waits for nor blocks readers; pages still in use by one are left for the next checkpoint.
+     * The framework checkpoints on its own once the log exceeds a fixed size, but an update
+     * writes the whole prefix table in one go.
+     */
+    private void checkpoint(SQLiteDatabase db) {
+        if (!db.isWriteAheadLoggingEnabled()) {
+            return;
+        }
+        try {
+            DatabaseUtils.longForQuery(db, "PRAGMA wal_checkpoint(PASSIVE)", null);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed to checkpoint the database", e);
+        }
+    }
+
+    /**
+     * Runs the steps of {@link #updateSmartDialDatabase} that modify the tables, in its
+     * transaction.
+     *
+     * @return false if the contacts provider could not be queried, in which case the transaction
+     *     has to be rolled back.
+     */
+    private boolean updateSmartDialTables(SQLiteDatabase db, String lastUpdateMillis,
+            Long currentMillis, StopWatch stopWatch) {
+        /** Removes contacts that have been deleted. */
+        removeDeletedContacts(db, getDeletedContactCursor(lastUpdateMillis));
+        removePotentiallyCorruptedContacts(db, lastUpdateMillis);
+
+        if (DEBUG) {
+            stopWatch.lap("Finished deleting deleted entries");
+        }
+
+        /** If the database did not exist before, jump through deletion as there is nothing
+         * to delete.
+         */
+        if (!lastUpdateMillis.equals("0")) {
+            /** Removes contacts that have been updated. Updated contact information will be
+             * inserted later. Note that this has to use a separate result set from
+             * updatePhoneCursor, since it is possible for a contact to be updated (e.g.
+             * phone number deleted), but have no results show up in updatedPhoneCursor (since
+             * all of its phone numbers have been deleted).
              */
-            final Cursor updatedPhoneCursor = mContext.getContentResolver().query(PhoneQuery.URI,
-                    PhoneQuery.PROJECTION, PhoneQuery.SELECTION,
-                    new String[]{lastUpdateMillis}, null);
-            if (updatedPhoneCursor == null) {
+            final Cursor updatedContactCursor = mContext.getContentResolver().query(
+                    UpdatedContactQuery.URI,
+                    UpdatedContactQuery.PROJECTION,
+                    UpdatedContactQuery.SELECT_UPDATED_CLAUSE,
+                    new String[] {lastUpdateMillis},
+                    null
+                    );
+            if (updatedContactCursor == null) {
                 Log.e(TAG, "SmartDial query received null for cursor");
-                return;
+                return false;
             }
-
             try {
-                /** Inserts recently updated phone numbers to the smartdial database.*/
-                insertUpdatedContactsAndNumberPrefix(db, updatedPhoneCursor, currentMillis);
-                if (DEBUG) {
-                    stopWatch.lap("Finished building the smart dial table");
-                }
+                removeUpdatedContacts(db, updatedContactCursor);
             } finally {
-                updatedPhoneCursor.close();
+                updatedContactCursor.close();
             }
-
-            /** Gets a list of distinct contacts which have been updated, and adds the name prefixes
-             * of these contacts to the prefix table.
-             */
-            final Cursor nameCursor = db.rawQuery(
-                    "SELECT DISTINCT " +
-                    SmartDialDbColumns.DISPLAY_NAME_PRIMARY + ", " + SmartDialDbColumns.CONTACT_ID +
-                    " FROM " + Tables.SMARTDIAL_TABLE +
-                    " WHERE " + SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME +
-                    " = " + Long.toString(currentMillis),
-                    new String[] {});
-            if (nameCursor != null) {
-                try {
-                    if (DEBUG) {
-                        stopWatch.lap("Queried the smart dial table for contact names");
-                    }
-
-                    /** Inserts prefixes of names into the prefix table.*/
-                    insertNamePrefixes(db, nameCursor);
-                    if (DEBUG) {
-                        stopWatch.lap("Finished building the name prefix table");
-                    }
-                } finally {
-                    nameCursor.close();
-                }
+            if (DEBUG) {
+                stopWatch.lap("Finished deleting entries belonging to updated contacts");
             }
+        }
 
-            /** Creates index on contact_id for fast JOIN operation. */
-            db.execSQL("CREATE INDEX IF NOT EXISTS smartdial_contact_id_index ON " +
-                    Tables.SMARTDIAL_TABLE + " (" + SmartDialDbColumns.CONTACT_ID  + ");");
-            /** Creates index on last_smartdial_update_time for fast SELECT operation. */
-            db.execSQL("CREATE INDEX IF NOT EXISTS smartdial_last_update_index ON " +
-                    Tables.SMARTDIAL_TABLE + " (" +
-                    SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME + ");");
-            /** Creates index on sorting fields for fast sort operation. */
-            db.execSQL("CREATE INDEX IF NOT EXISTS smartdial_sort_index ON " +
-                    Tables.SMARTDIAL_TABLE + " (" +
-                    SmartDialDbColumns.STARRED + ", " +
-                    SmartDialDbColumns.IS_SUPER_PRIMARY + ", " +
-                    SmartDialDbColumns.LAST_TIME_USED + ", " +
-                    SmartDialDbColumns.TIMES_USED + ", " +
-                    SmartDialDbColumns.IN_VISIBLE_GROUP +  ", " +
-                    SmartDialDbColumns.DISPLAY_NAME_PRIMARY + ", " +
-                    SmartDialDbColumns.CONTACT_ID + ", " +
-                    SmartDialDbColumns.IS_PRIMARY +
-                    ");");
-            /** Creates index on prefix for fast SELECT operation. */
-            db.execSQL("CREATE INDEX IF NOT EXISTS nameprefix_index ON " +
-                    Tables.PREFIX_TABLE + " (" + PrefixColumns.PREFIX + ");");
-            /** Creates index on contact_id for fast JOIN operation. */
-            db.execSQL("CREATE INDEX IF NOT EXISTS nameprefix_contact_id_index ON " +
-                    Tables.PREFIX_TABLE + " (" + PrefixColumns.CONTACT_ID + ");");
+        /** Queries the contact database to get all phone numbers that have been updated since the
+         * last update time.
+         */
+        final Cursor updatedPhoneCursor = mContext.getContentResolver().query(PhoneQuery.URI,
+                PhoneQuery.PROJECTION, PhoneQuery.SELECTION,
+                new String[]{lastUpdateMillis}, null);
+        if (updatedPhoneCursor == null) {
+            Log.e(TAG, "SmartDial query received null for cursor");
+            return false;
+        }
 
+        try {
+            /** Inserts recently updated phone numbers to the smartdial database.*/
+            insertUpdatedContactsAndNumberPrefix(db, updatedPhoneCursor, currentMillis);
             if (DEBUG) {
-                stopWatch.lap(TAG + "Finished recreating index");
+                stopWatch.lap("Finished building the smart dial table");
             }
+        } finally {
+            updatedPhoneCursor.close();
+        }
 
-            /** Updates the database index statistics.*/
-            db.execSQL("ANALYZE " + Tables.SMARTDIAL_TABLE);
-            db.execSQL("ANALYZE " + Tables.PREFIX_TABLE);
-            db.execSQL("ANALYZE smartdial_contact_id_index");
-            db.execSQL("ANALYZE smartdial_last_update_index");
-            db.execSQL("ANALYZE nameprefix_index");
-            db.execSQL("ANALYZE nameprefix_contact_id_index");
-            if (DEBUG) {
-                stopWatch.stopAndLog(TAG + "Finished updating index stats", 0);
+        /** Gets a list of distinct contacts which have been updated, and adds the name prefixes
+         * of these contacts to the prefix table.
+         */
+        final Cursor nameCursor = db.rawQuery(
+                "SELECT DISTINCT " +
+                SmartDialDbColumns.DISPLAY_NAME_PRIMARY + ", " + SmartDialDbColumns.CONTACT_ID +
+                " FROM " + Tables.SMARTDIAL_TABLE +
+                " WHERE " + SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME + " = ?",
+                new String[] {Long.toString(currentMillis)});
+        if (nameCursor != null) {
+            try {
+                if (DEBUG) {
+                    stopWatch.lap("Queried the smart dial table for contact names");
+                }
+
+                /** Inserts prefixes of names into the prefix table.*/
+                insertNamePrefixes(db, nameCursor);
+                if (DEBUG) {
+                    stopWatch.lap("Finished building the name prefix table");
+                }
+            } finally {
+                nameCursor.close();
             }
+        }
 
-            sInUpdate.getAndSet(false);
+        /** Creates index on contact_id for fast JOIN operation. */
+        db.execSQL("CREATE INDEX IF NOT EXISTS smartdial_contact_id_index ON " +
+                Tables.SMARTDIAL_TABLE + " (" + SmartDialDbColumns.CONTACT_ID  + ");");
+        /** Creates index on last_smartdial_update_time for fast SELECT operation. */
+        db.execSQL("CREATE INDEX IF NOT EXISTS smartdial_last_update_index ON " +
+                Tables.SMARTDIAL_TABLE + " (" +
+                SmartDialDbColumns.LAST_SMARTDIAL_UPDATE_TIME + ");");
+        /** Creates index on sorting fields for fast sort operation. */
+        db.execSQL("CREATE INDEX IF NOT EXISTS smartdial_sort_index ON " +
+                Tables.SMARTDIAL_TABLE + " (" +
+                SmartDialDbColumns.STARRED + ", " +
+                SmartDialDbColumns.IS_SUPER_PRIMARY + ", " +
+                SmartDialDbColumns.LAST_TIME_USED + ", " +
+                SmartDialDbColumns.TIMES_USED + ", " +
+                SmartDialDbColumns.IN_VISIBLE_GROUP +  ", " +
+                SmartDialDbColumns.DISPLAY_NAME_PRIMARY + ", " +
+                SmartDialDbColumns.CONTACT_ID + ", " +
+                SmartDialDbColumns.IS_PRIMARY +
+                ");");
+        /** Creates index on prefix for fast SELECT operation. */
+        db.execSQL("CREATE INDEX IF NOT EXISTS nameprefix_index ON " +
+                Tables.PREFIX_TABLE + " (" + PrefixColumns.PREFIX + ");");
+        /** Creates index on contact_id for fast JOIN operation. */
+        db.execSQL("CREATE INDEX IF NOT EXISTS nameprefix_contact_id_index ON " +
+                Tables.PREFIX_TABLE + " (" + PrefixColumns.CONTACT_ID + ");");
 
-            final SharedPreferences.Editor editor = databaseLastUpdateSharedPref.edit();
-            editor.putLong(LAST_UPDATED_MILLIS, currentMillis);
-            editor.commit();
+        if (DEBUG) {
+            stopWatch.lap(TAG + "Finished recreating index");
+        }
 
-            // Notify content observers that smart dial database has been updated.
-            mContext.getContentResolver().notifyChange(SMART_DIAL_UPDATED_URI, null, false);
+        /** Updates the database index statistics.*/
+        db.execSQL("ANALYZE " + Tables.SMARTDIAL_TABLE);
+        db.execSQL("ANALYZE " + Tables.PREFIX_TABLE);
+        db.execSQL("ANALYZE smartdial_contact_id_index");
+        db.execSQL("ANALYZE smartdial_last_update_index");
+        db.execSQL("ANALYZE nameprefix_index");
+        db.execSQL("ANALYZE nameprefix_contact_id_index");
+        if (DEBUG) {
+            stopWatch.stopAndLog(TAG + "Finished updating index stats", 0);
         }
+        return true;
     }
 
+    /**
+     * Query of {@link #getLooseMatches}. The current time, for the sort order, is bound to ?1
+     * and the LIKE pattern to ?2; as the SQL stays the same from one keystroke to the next, the
+     * connection's statement cache keeps it parsed and planned.
+     */
+    private static final String LOOSE_MATCHES_SQL = "SELECT " +
+            SmartDialDbColumns.DATA_ID + ", " +
+            SmartDialDbColumns.DISPLAY_NAME_PRIMARY + ", " +
+            SmartDialDbColumns.PHOTO_ID + ", " +
+            SmartDialDbColumns.NUMBER + ", " +
+            SmartDialDbColumns.CONTACT_ID + ", " +
+            SmartDialDbColumns.LOOKUP_KEY + ", " +
+            SmartDialDbColumns.CARRIER_PRESENCE + ", " +
+            SmartDialDbColumns.ACCOUNT_TYPE + ", " +
+            SmartDialDbColumns.ACCOUNT_NAME +
+            " FROM " + Tables.SMARTDIAL_TABLE +
+            " WHERE " + SmartDialDbColumns.CONTACT_ID + " IN " +
+            " (SELECT " + PrefixColumns.CONTACT_ID +
+                " FROM " + Tables.PREFIX_TABLE +
+                " WHERE " + Tables.PREFIX_TABLE + "." + PrefixColumns.PREFIX +
+                " LIKE ?2)" +
+            " ORDER BY " + SmartDialSortingOrder.SORT_ORDER;
+
     /**
      * Returns a list of candidate contacts where the query is a prefix of the dialpad index of
      * the contact's name or phone number.
@@ -1218,12 +1490,16 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
      */
     public ArrayList<ContactNumber>  getLooseMatches(String query,
             SmartDialNameMatcher nameMatcher) {
-        final boolean inUpdate = sInUpdate.get();
-        if (inUpdate || query.length() == 0) {
+        if (query.length() == 0) {
             return Lists.newArrayList();
         }
 
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
         final SQLiteDatabase db = getReadableDatabase();
+        if (sInUpdate.get() && !db.isWriteAheadLoggingEnabled()) {
+            Logger.incrementCounter(PerformanceMetric.SMART_DIAL_QUERY_DURING_UPDATE);
+            return Lists.newArrayList();
+        }
 
         /** Uses SQL query wildcard '%' to represent prefix matching.*/
         StringBuilder looseQuery = new StringBuilder(query);
@@ -1240,24 +1516,8 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         final String currentTimeStamp = Long.toString(System.currentTimeMillis());
 
         /** Queries the database to find contacts that have an index matching the query prefix. */
-        final Cursor cursor = db.rawQuery("SELECT " +
-                SmartDialDbColumns.DATA_ID + ", " +
-                SmartDialDbColumns.DISPLAY_NAME_PRIMARY + ", " +
-                SmartDialDbColumns.PHOTO_ID + ", " +
-                SmartDialDbColumns.NUMBER + ", " +
-                SmartDialDbColumns.CONTACT_ID + ", " +
-                SmartDialDbColumns.LOOKUP_KEY + ", " +
-                SmartDialDbColumns.CARRIER_PRESENCE + ", " +
-                SmartDialDbColumns.ACCOUNT_TYPE + ", " +
-                SmartDialDbColumns.ACCOUNT_NAME +
-                " FROM " + Tables.SMARTDIAL_TABLE +
-                " WHERE " + SmartDialDbColumns.CONTACT_ID + " IN " +
-                " (SELECT " + PrefixColumns.CONTACT_ID +
-                    " FROM " + Tables.PREFIX_TABLE +
-                    " WHERE " + Tables.PREFIX_TABLE + "." + PrefixColumns.PREFIX +
-                    " LIKE '" + looseQuery + "')" +
-                " ORDER BY " + SmartDialSortingOrder.SORT_ORDER,
-                new String[] {currentTimeStamp});
+        final Cursor cursor = db.rawQuery(LOOSE_MATCHES_SQL,
+                new String[] {currentTimeStamp, looseQuery.toString()});
         if (cursor == null) {
             return result;
         }
@@ -1330,6 +1590,8 @@ public class DialerDatabaseHelper extends SQLiteOpenHelper {
         } finally {
             cursor.close();
         }
+        Logger.recordTimingSince(PerformanceMetric.SMART_DIAL_QUERY, startNanos);
+        Logger.recordHistogram(PerformanceMetric.SMART_DIAL_RESULTS, result.size());
         return result;
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.dialer.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Small pool of compiled statements, for the SQL that {@link DialerDatabaseHelper} runs over and
+ * over. A statement is taken out of the pool while it is in use, as its bindings are not safe to
+ * share between threads, and put back afterwards; concurrent users of the same SQL each get
+ * their own. At most one idle statement is kept per SQL, and the least recently used ones are
+ * closed once more than {@code maxSize} are idle.
+ * <p>
+ * Statements are only reused for the database they were compiled for; the pool empties itself
+ * when the helper hands it another one, e.g. after the database was closed and reopened.
+ * <p>
+ * Compiling a statement parses and plans its SQL. Each time one is reused instead, a
+ * {@link PerformanceMetric#DB_STATEMENT_POOL_HIT} is counted; together with the
+ * {@link PerformanceMetric#DB_STATEMENT_COMPILE} timer this gives the time saved.
+ */
+@ThreadSafe
+class StatementPool {
+    private final int mMaxSize;
+
+    @GuardedBy("this") private SQLiteDatabase mDb;
+    @GuardedBy("this") private final LinkedHashMap<String, SQLiteStatement> mIdle;
+
+    StatementPool(final int maxSize) {
+        mMaxSize = maxSize;
+        mIdle = new LinkedHashMap<String, SQLiteStatement>(maxSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() <= mMaxSize) {
+                    return false;
+                }
+                eldest.getValue().close();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a compiled statement for {@code sql} on {@code db}, which the caller has to
+     * {@link #release} once done with it.
+     */
+    SQLiteStatement acquire(SQLiteDatabase db, String sql) {
+        synchronized (this) {
+            if (db != mDb) {
+                clear();
+                mDb = db;
+            }
+            final SQLiteStatement statement = mIdle.remove(sql);
+            if (statement != null) {
+                Logger.incrementCounter(PerformanceMetric.DB_STATEMENT_POOL_HIT);
+                return statement;
+            }
+        }
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
+        final SQLiteStatement statement = db.compileStatement(sql);
+        Logger.recordTimingSince(PerformanceMetric.DB_STATEMENT_COMPILE, startNanos);
+        return statement;
+    }
+
+    /**
+     * Puts a statement returned by {@link #acquire} back in the pool, or closes it if the pool
+     * already has one for the same SQL or has moved on to another database.
+     */
+    void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+        statement.clearBindings();
+        synchronized (this) {
+            if (db == mDb && db.isOpen() && !mIdle.containsKey(sql)) {
+                mIdle.put(sql, statement);
+                return;
+            }
+        }
+        statement.close();
+    }
+
+    /** Closes all idle statements. */
+    synchronized void clear() {
+        for (SQLiteStatement statement : mIdle.values()) {
+            statement.close();
+        }
+        mIdle.clear();
+        mDb = null;
+    }
+}
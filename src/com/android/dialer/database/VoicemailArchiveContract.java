@@ -25,8 +25,8 @@ import com.android.dialerbind.ObjectFactory;
 
 /**
  * Contains definitions for the supported URIs and columns for the voicemail archive table.
- * All the fields excluding MIME_TYPE, _DATA, ARCHIVED, SERVER_ID, mirror the fields in the
- * contract provided in {@link CallLog.Calls}.
+ * All the fields excluding MIME_TYPE, _DATA, ARCHIVED, SERVER_ID, PEAKS, CONTENT_COMPLETE, mirror
+ * the fields in the contract provided in {@link CallLog.Calls}.
  */
 public final class VoicemailArchiveContract {
 
@@ -186,6 +186,20 @@ public final class VoicemailArchiveContract {
          */
         public static final String CACHED_PHOTO_URI = CallLog.Calls.CACHED_PHOTO_URI;
 
+        /**
+         * The waveform of the voicemail, as computed by
+         * {@link com.android.dialer.voicemail.VoicemailPeaks}, or null if not computed yet.
+         * TYPE: BLOB
+         */
+        public static final String PEAKS = "peaks";
+
+        /**
+         * Whether the file at {@link #_DATA} holds all of the voicemail content. It is set to 1
+         * (true) once the copy of the content finishes; until then the file may be partial.
+         * TYPE: INTEGER
+         */
+        public static final String CONTENT_COMPLETE = "content_complete";
+
         /**
          * The MIME type of a {@link #CONTENT_URI} single voicemail.
          */
@@ -53,10 +53,10 @@ public class SmartDialPrefix {
     private static final String PREF_USER_SIM_COUNTRY_CODE =
             "DialtactsActivity_user_sim_country_code";
     private static final String PREF_USER_SIM_COUNTRY_CODE_DEFAULT = null;
-    private static String sUserSimCountryCode = PREF_USER_SIM_COUNTRY_CODE_DEFAULT;
+    private static volatile String sUserSimCountryCode = PREF_USER_SIM_COUNTRY_CODE_DEFAULT;
 
     /** Indicates whether user is in NANP regions.*/
-    private static boolean sUserInNanpRegion = false;
+    private static volatile boolean sUserInNanpRegion = false;
 
     /** Set of country names that use NANP code.*/
     private static Set<String> sNanpCountries = null;
@@ -67,10 +67,21 @@ public class SmartDialPrefix {
     /** Dialpad mapping. */
     private static final SmartDialMap mMap = new LatinSmartDialMap();
 
-    private static boolean sNanpInitialized = false;
+    private static volatile boolean sNanpInitialized = false;
+
+    /**
+     * Initializes the Nanp settings unless they already are. The settings are only read when
+     * phone numbers are parsed, so the callers that parse them call this rather than having the
+     * settings initialized during startup.
+     */
+    public static void ensureNanpSettingsInitialized(Context context) {
+        if (!sNanpInitialized) {
+            initializeNanpSettings(context);
+        }
+    }
 
     /** Initializes the Nanp settings, and finds out whether user is in a NANP region.*/
-    public static void initializeNanpSettings(Context context){
+    public static synchronized void initializeNanpSettings(Context context){
         final TelephonyManager manager = (TelephonyManager) context.getSystemService(
                 Context.TELEPHONY_SERVICE);
         if (manager != null) {
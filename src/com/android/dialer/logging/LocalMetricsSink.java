@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.logging;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link MetricsSink} that aggregates metrics in memory, so performance can be inspected with
+ * dumpsys without an analytics backend. Recording is lock-free: counters are atomics, and
+ * histograms count samples in power-of-two buckets, so percentiles are reported as the upper
+ * bound of the bucket they fall in.
+ */
+public class LocalMetricsSink implements MetricsSink {
+
+    /** Bucket i holds values in [2^(i-1), 2^i); bucket 0 holds zero and negative values. */
+    @VisibleForTesting
+    static final int BUCKET_COUNT = 32;
+
+    private static final int[] PERCENTILES = new int[] {50, 90, 99};
+
+    private static LocalMetricsSink sInstance;
+
+    private final ConcurrentMap<String, AtomicLong> mCounters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> mTimers = new ConcurrentHashMap<>();
+
+    public static synchronized LocalMetricsSink getInstance() {
+        if (sInstance == null) {
+            sInstance = new LocalMetricsSink();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    LocalMetricsSink() {
+    }
+
+    @VisibleForTesting
+    static final class Histogram {
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        void record(long value) {
+            buckets.incrementAndGet(getBucket(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long currentMax = max.get();
+            while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+                currentMax = max.get();
+            }
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given percentile, or -1 if there are
+         * no samples. Samples recorded concurrently may or may not be included.
+         */
+        long getPercentile(int percentile) {
+            final long total = count.get();
+            if (total == 0) {
+                return -1;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(getBucketUpperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+
+    @VisibleForTesting
+    static int getBucket(long value) {
+        if (value <= 0) {
+            return 0;
+        }
+        return Math.min(Long.SIZE - Long.numberOfLeadingZeros(value), BUCKET_COUNT - 1);
+    }
+
+    private static long getBucketUpperBound(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    @Override
+    public void incrementCounter(String name, long delta) {
+        AtomicLong counter = mCounters.get(name);
+        if (counter == null) {
+            final AtomicLong newCounter = new AtomicLong();
+            counter = mCounters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.addAndGet(delta);
+    }
+
+    @Override
+    public void recordHistogram(String name, long value) {
+        getHistogram(mHistograms, name).record(value);
+    }
+
+    @Override
+    public void recordTiming(String name, long durationUs) {
+        getHistogram(mTimers, name).record(durationUs);
+    }
+
+    private static Histogram getHistogram(ConcurrentMap<String, Histogram> histograms,
+            String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            final Histogram newHistogram = new Histogram();
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    @VisibleForTesting
+    long getCounter(String name) {
+        final AtomicLong counter = mCounters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    @VisibleForTesting
+    Histogram getTimer(String name) {
+        return mTimers.get(name);
+    }
+
+    @Override
+    public void dump(PrintWriter pw) {
+        pw.println("Counters:");
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(mCounters).entrySet()) {
+            pw.println("  " + entry.getKey() + ": " + entry.getValue().get());
+        }
+        pw.println("Timers (us): count, mean, p50 / p90 / p99, max");
+        dumpHistograms(pw, mTimers);
+        pw.println("Histograms: count, mean, p50 / p90 / p99, max");
+        dumpHistograms(pw, mHistograms);
+    }
+
+    private static void dumpHistograms(PrintWriter pw, Map<String, Histogram> histograms) {
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            final Histogram histogram = entry.getValue();
+            final long count = histogram.count.get();
+            final StringBuilder sb = new StringBuilder("  ").append(entry.getKey()).append(": ")
+                    .append(count).append(", ")
+                    .append(count == 0 ? 0 : histogram.sum.get() / count).append(", ");
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                sb.append(i == 0 ? "" : " / ").append(histogram.getPercentile(PERCENTILES[i]));
+            }
+            sb.append(", ").append(histogram.max.get());
+            pw.println(sb);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.android.dialer.logging;
 
 import android.app.Activity;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -24,6 +25,10 @@ import com.android.contacts.commonbind.analytics.AnalyticsUtil;
 import com.android.dialerbind.ObjectFactory;
 import com.android.incallui.Call;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+
 /**
  * Single entry point for all logging/analytics-related work for all user interactions.
  */
@@ -79,6 +84,79 @@ public abstract class Logger {
         }
     }
 
+    /**
+     * Increments a performance counter.
+     *
+     * @param name of the counter. {@see com.android.dialer.logging.PerformanceMetric}
+     */
+    public static void incrementCounter(String name) {
+        final MetricsSink sink = getMetricsSink();
+        if (sink != null) {
+            sink.incrementCounter(name, 1);
+        }
+    }
+
+    /**
+     * Adds a sample to a performance histogram.
+     *
+     * @param name of the histogram. {@see com.android.dialer.logging.PerformanceMetric}
+     * @param value of the sample.
+     */
+    public static void recordHistogram(String name, long value) {
+        final MetricsSink sink = getMetricsSink();
+        if (sink != null) {
+            sink.recordHistogram(name, value);
+        }
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} in a performance timer.
+     *
+     * @param name of the timer. {@see com.android.dialer.logging.PerformanceMetric}
+     * @param startNanos start of the timed work, from {@link SystemClock#elapsedRealtimeNanos()}.
+     */
+    public static void recordTimingSince(String name, long startNanos) {
+        final MetricsSink sink = getMetricsSink();
+        if (sink != null) {
+            sink.recordTiming(name, (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+        }
+    }
+
+    /**
+     * Prints the aggregated performance metrics, e.g. for dumpsys.
+     */
+    public static void dumpMetrics(PrintWriter pw) {
+        final MetricsSink sink = getMetricsSink();
+        if (sink != null) {
+            sink.dump(pw);
+        }
+    }
+
+    /**
+     * Writes the aggregated performance metrics to a file, replacing its contents.
+     *
+     * @return whether the file could be written.
+     */
+    public static boolean exportMetrics(File file) {
+        PrintWriter pw = null;
+        try {
+            pw = new PrintWriter(file);
+            dumpMetrics(pw);
+            return !pw.checkError();
+        } catch (FileNotFoundException e) {
+            Log.w(TAG, "Unable to export metrics to " + file, e);
+            return false;
+        } finally {
+            if (pw != null) {
+                pw.close();
+            }
+        }
+    }
+
+    private static MetricsSink getMetricsSink() {
+        return ObjectFactory.getMetricsSink();
+    }
+
     public abstract void logCallImpl(Call call);
     public abstract void logScreenViewImpl(int screenType);
     public abstract void logInteractionImpl(int dialerInteraction);
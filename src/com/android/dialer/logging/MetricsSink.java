@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.logging;
+
+import java.io.PrintWriter;
+
+/**
+ * Receives performance metrics reported through {@link Logger}. Implementations must be safe to
+ * call from any thread and cheap enough to call on the UI thread.
+ * {@see com.android.dialer.logging.PerformanceMetric}
+ */
+public interface MetricsSink {
+
+    /**
+     * Adds {@code delta} to the counter with the given name.
+     */
+    void incrementCounter(String name, long delta);
+
+    /**
+     * Adds a sample to the histogram with the given name.
+     */
+    void recordHistogram(String name, long value);
+
+    /**
+     * Adds a duration, in microseconds, to the timer with the given name.
+     */
+    void recordTiming(String name, long durationUs);
+
+    /**
+     * Prints the aggregated metrics, e.g. for dumpsys.
+     */
+    void dump(PrintWriter pw);
+}
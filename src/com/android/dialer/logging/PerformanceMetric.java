@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.logging;
+
+/**
+ * Class holding the names of Dialer performance metrics
+ */
+public class PerformanceMetric {
+
+    /**
+     * Timer: looking up the contact for a number in the call log
+     */
+    public static final String CONTACT_LOOKUP = "contact_lookup";
+
+    /**
+     * Counter: contact lookups that failed, e.g. because the provider was unavailable
+     */
+    public static final String CONTACT_LOOKUP_FAILED = "contact_lookup_failed";
+
+    /**
+     * Timer: querying the smart dial database for a dialpad query
+     */
+    public static final String SMART_DIAL_QUERY = "smart_dial_query";
+
+    /**
+     * Histogram: number of results of a smart dial query
+     */
+    public static final String SMART_DIAL_RESULTS = "smart_dial_results";
+
+    /**
+     * Counter: smart dial queries answered with no results because the database was updating
+     */
+    public static final String SMART_DIAL_QUERY_DURING_UPDATE = "smart_dial_query_during_update";
+
+    /**
+     * Counter: smart dial database updates skipped because no contact changed
+     */
+    public static final String SMART_DIAL_UPDATE_SKIPPED = "smart_dial_update_skipped";
+
+    /**
+     * Timer: compiling a statement of the dialer database that was not in the statement pool
+     */
+    public static final String DB_STATEMENT_COMPILE = "db_statement_compile";
+
+    /**
+     * Counter: statements of the dialer database reused from the statement pool rather than
+     * compiled again
+     */
+    public static final String DB_STATEMENT_POOL_HIT = "db_statement_pool_hit";
+
+    /**
+     * Timer: from starting a call log query to its cursor being delivered
+     */
+    public static final String CALL_LOG_LOAD = "call_log_load";
+
+    /**
+     * Timer: binding a single call log list item
+     */
+    public static final String CALL_LOG_BIND = "call_log_bind";
+
+    /**
+     * Timer: from the start of the process to the first frame of its first activity
+     */
+    public static final String STARTUP_FIRST_FRAME = "startup_first_frame";
+
+    /**
+     * Timer: from the start of the process to the end of the work deferred past the first frame
+     */
+    public static final String STARTUP_INTERACTIVE = "startup_interactive";
+
+    /**
+     * Histogram: tasks already queued on the dialer database executor when one is submitted
+     */
+    public static final String EXECUTOR_DB_IO_QUEUE_DEPTH = "executor_db_io_queue_depth";
+
+    /**
+     * Timer: time a task waits on the dialer database executor before it starts
+     */
+    public static final String EXECUTOR_DB_IO_QUEUE_WAIT = "executor_db_io_queue_wait";
+
+    /**
+     * Histogram: tasks already queued on the content provider executor when one is submitted
+     */
+    public static final String EXECUTOR_PROVIDER_IO_QUEUE_DEPTH =
+            "executor_provider_io_queue_depth";
+
+    /**
+     * Timer: time a task waits on the content provider executor before it starts
+     */
+    public static final String EXECUTOR_PROVIDER_IO_QUEUE_WAIT = "executor_provider_io_queue_wait";
+
+    /**
+     * Histogram: tasks already queued on the media executor when one is submitted
+     */
+    public static final String EXECUTOR_MEDIA_QUEUE_DEPTH = "executor_media_queue_depth";
+
+    /**
+     * Timer: time a task waits on the media executor before it starts
+     */
+    public static final String EXECUTOR_MEDIA_QUEUE_WAIT = "executor_media_queue_wait";
+
+    /**
+     * Histogram: tasks already queued on the CPU executor when one is submitted
+     */
+    public static final String EXECUTOR_CPU_QUEUE_DEPTH = "executor_cpu_queue_depth";
+
+    /**
+     * Timer: time a task waits on the CPU executor before it starts
+     */
+    public static final String EXECUTOR_CPU_QUEUE_WAIT = "executor_cpu_queue_wait";
+
+    /**
+     * Counter: tasks run on the shared AsyncTask pool because their executor's queue was full
+     */
+    public static final String EXECUTOR_OVERFLOW = "executor_overflow";
+
+    /**
+     * Timer: decoding a voicemail into the peaks of its waveform
+     */
+    public static final String VOICEMAIL_PEAKS_DECODE = "voicemail_peaks_decode";
+
+    /**
+     * Counter: voicemail content requested from the voicemail source ahead of playback
+     */
+    public static final String VOICEMAIL_PREFETCH_REQUEST = "voicemail_prefetch_request";
+
+    /**
+     * Counter: voicemails whose content was already on the device when opened for playback
+     */
+    public static final String VOICEMAIL_CONTENT_HIT = "voicemail_content_hit";
+
+    /**
+     * Counter: voicemails whose content had to be fetched when opened for playback
+     */
+    public static final String VOICEMAIL_CONTENT_MISS = "voicemail_content_miss";
+
+    /**
+     * Timer: binding a different voicemail to the playback view until it is ready to play
+     */
+    public static final String VOICEMAIL_SWITCH = "voicemail_switch";
+
+    /**
+     * Counter: voicemails played with a player that had finished preparing for them ahead of time
+     */
+    public static final String VOICEMAIL_PLAYER_PREPARED_AHEAD =
+            "voicemail_player_prepared_ahead";
+
+    /**
+     * Counter: voicemails played with a player that had started, but not finished, preparing for
+     * them ahead of time
+     */
+    public static final String VOICEMAIL_PLAYER_PREPARING_AHEAD =
+            "voicemail_player_preparing_ahead";
+
+    /**
+     * Counter: in-call telecom callbacks folded into an update already pending for the next frame
+     */
+    public static final String INCALL_UPDATE_COALESCED = "incall_update_coalesced";
+}
@@ -20,8 +20,11 @@ import android.os.AsyncTask;
 import android.os.Looper;
 
 import com.android.contacts.common.testing.NeededForTesting;
+import com.android.dialer.logging.PerformanceMetric;
 import com.google.common.base.Preconditions;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.Executor;
 
 /**
@@ -40,9 +43,49 @@ public final class AsyncTaskExecutors {
      */
     private static AsyncTaskExecutorFactory mInjectedAsyncTaskExecutorFactory = null;
 
+    /**
+     * Kinds of background work, each with threads and a queue of its own so that slow work of
+     * one kind does not hold up the others. Each domain records the depth of its queue and how
+     * long its tasks wait, under its own metrics.
+     */
+    public enum Domain {
+        /** Queries and updates of the dialer's own database. */
+        DB_IO("DialerDbIo", 2, 64, PerformanceMetric.EXECUTOR_DB_IO_QUEUE_DEPTH,
+                PerformanceMetric.EXECUTOR_DB_IO_QUEUE_WAIT),
+        /** Queries and updates of other apps' providers, e.g. the call log and voicemails. */
+        PROVIDER_IO("DialerProviderIo", 2, 64, PerformanceMetric.EXECUTOR_PROVIDER_IO_QUEUE_DEPTH,
+                PerformanceMetric.EXECUTOR_PROVIDER_IO_QUEUE_WAIT),
+        /** Reading and copying voicemail audio, one file at a time. */
+        MEDIA("DialerMedia", 1, 16, PerformanceMetric.EXECUTOR_MEDIA_QUEUE_DEPTH,
+                PerformanceMetric.EXECUTOR_MEDIA_QUEUE_WAIT),
+        /** Computation that does no I/O. */
+        CPU("DialerCpu", Math.max(1, Runtime.getRuntime().availableProcessors() - 1), 64,
+                PerformanceMetric.EXECUTOR_CPU_QUEUE_DEPTH,
+                PerformanceMetric.EXECUTOR_CPU_QUEUE_WAIT);
+
+        private final String mThreadName;
+        private final int mThreads;
+        private final int mQueueCapacity;
+        private final String mQueueDepthMetric;
+        private final String mQueueWaitMetric;
+
+        Domain(String threadName, int threads, int queueCapacity, String queueDepthMetric,
+                String queueWaitMetric) {
+            mThreadName = threadName;
+            mThreads = threads;
+            mQueueCapacity = queueCapacity;
+            mQueueDepthMetric = queueDepthMetric;
+            mQueueWaitMetric = queueWaitMetric;
+        }
+    }
+
+    /** Executors of the domains, each created when first needed. */
+    private static final Map<Domain, Executor> sDomainExecutors = new EnumMap<>(Domain.class);
+
     /**
      * Creates an AsyncTaskExecutor that submits tasks to run with
-     * {@link AsyncTask#SERIAL_EXECUTOR}.
+     * {@link AsyncTask#SERIAL_EXECUTOR}, one at a time with all the other serial tasks of the
+     * process. Prefer {@link #createExecutor} with the {@link Domain} of the tasks.
      */
     public static AsyncTaskExecutor createAsyncTaskExecutor() {
         synchronized (AsyncTaskExecutors.class) {
@@ -66,6 +109,36 @@ public final class AsyncTaskExecutors {
         }
     }
 
+    /**
+     * Creates an AsyncTaskExecutor that submits tasks to the threads of {@code domain}, rather
+     * than to the {@link AsyncTask} executors shared by the whole process.
+     */
+    public static AsyncTaskExecutor createExecutor(Domain domain) {
+        synchronized (AsyncTaskExecutors.class) {
+            if (mInjectedAsyncTaskExecutorFactory != null) {
+                return mInjectedAsyncTaskExecutorFactory.createAsyncTaskExeuctor();
+            }
+            return new SimpleAsyncTaskExecutor(getExecutor(domain));
+        }
+    }
+
+    /**
+     * Returns the executor of {@code domain}, for tasks that are not submitted through an
+     * {@link AsyncTaskExecutor}.
+     */
+    public static Executor getExecutor(Domain domain) {
+        synchronized (AsyncTaskExecutors.class) {
+            Executor executor = sDomainExecutors.get(domain);
+            if (executor == null) {
+                executor = new DomainExecutor(domain.mThreadName, domain.mThreads,
+                        domain.mQueueCapacity, domain.mQueueDepthMetric, domain.mQueueWaitMetric,
+                        AsyncTask.THREAD_POOL_EXECUTOR);
+                sDomainExecutors.put(domain, executor);
+            }
+            return executor;
+        }
+    }
+
     /** Interface for creating AsyncTaskExecutor objects. */
     public interface AsyncTaskExecutorFactory {
         AsyncTaskExecutor createAsyncTaskExeuctor();
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Executor for one {@link AsyncTaskExecutors.Domain}: a fixed number of named threads, which
+ * exit when idle, and a bounded queue. Each submitted task records the depth of the queue it
+ * joined and, once it starts, how long it waited.
+ * <p>
+ * A task that finds the queue full is not dropped, as callers cannot cope with that, but runs on
+ * the overflow executor instead and counts a {@link PerformanceMetric#EXECUTOR_OVERFLOW}.
+ */
+@ThreadSafe
+final class DomainExecutor implements Executor {
+    private static final String TAG = "DomainExecutor";
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private final String mName;
+    private final String mQueueDepthMetric;
+    private final String mQueueWaitMetric;
+    private final ThreadPoolExecutor mPool;
+    private final Executor mOverflowExecutor;
+
+    DomainExecutor(final String name, int threads, int queueCapacity, String queueDepthMetric,
+            String queueWaitMetric, Executor overflowExecutor) {
+        mName = name;
+        mQueueDepthMetric = queueDepthMetric;
+        mQueueWaitMetric = queueWaitMetric;
+        mOverflowExecutor = overflowExecutor;
+        mPool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, name + "-" + mCount.getAndIncrement());
+                    }
+                });
+        mPool.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        final long submittedNanos = SystemClock.elapsedRealtimeNanos();
+        Logger.recordHistogram(mQueueDepthMetric, mPool.getQueue().size());
+        try {
+            mPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Logger.recordTimingSince(mQueueWaitMetric, submittedNanos);
+                    command.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Queue of " + mName + " is full, running task on the overflow executor");
+            Logger.incrementCounter(PerformanceMetric.EXECUTOR_OVERFLOW);
+            mOverflowExecutor.execute(command);
+        }
+    }
+
+    @VisibleForTesting
+    int getQueueDepth() {
+        return mPool.getQueue().size();
+    }
+}
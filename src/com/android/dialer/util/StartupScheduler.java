@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.app.Activity;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Splits process startup work into what has to run before the first frame, which callers simply
+ * run, and what can wait: tasks passed to {@link #runAfterFirstFrame} run one after the other on
+ * a background thread once the first activity has drawn its first frame.
+ * <p>
+ * Also measures the startup: time to first frame, and time to interactive, when the first frame
+ * is drawn and the deferred tasks have all run. Both are measured from {@link #onProcessStart}
+ * and recorded as {@link PerformanceMetric#STARTUP_FIRST_FRAME} and
+ * {@link PerformanceMetric#STARTUP_INTERACTIVE}.
+ */
+@ThreadSafe
+public final class StartupScheduler {
+    private static final String TAG = "StartupScheduler";
+
+    /**
+     * Runs the deferred tasks anyway if no activity draws a frame within this long, e.g. when the
+     * process was started for a call or a broadcast.
+     */
+    private static final long FIRST_FRAME_TIMEOUT_MS = 2000;
+
+    private static StartupScheduler sInstance;
+
+    private final Executor mExecutor;
+    private final CountDownLatch mInteractiveLatch = new CountDownLatch(1);
+
+    @GuardedBy("this") private final List<NamedTask> mDeferredTasks = new ArrayList<>();
+    @GuardedBy("this") private boolean mDeferredTasksStarted;
+    @GuardedBy("this") private boolean mWatchingFirstFrame;
+    @GuardedBy("this") private long mStartNanos;
+    @GuardedBy("this") private long mFirstFrameNanos = -1;
+    @GuardedBy("this") private long mInteractiveNanos = -1;
+    @GuardedBy("this") private int mRunningTasks;
+
+    private static final class NamedTask {
+        final String name;
+        final Runnable task;
+
+        NamedTask(String name, Runnable task) {
+            this.name = name;
+            this.task = task;
+        }
+    }
+
+    public static synchronized StartupScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new StartupScheduler(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    StartupScheduler(Executor executor) {
+        mExecutor = executor;
+        mStartNanos = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Marks the start of the process, which the startup times are measured from. Called from
+     * {@link android.app.Application#onCreate}; it also starts the fallback for processes that
+     * never show an activity.
+     */
+    public void onProcessStart() {
+        synchronized (this) {
+            mStartNanos = SystemClock.elapsedRealtimeNanos();
+        }
+        TimingWheel.getInstance().schedule(new Runnable() {
+            @Override
+            public void run() {
+                startDeferredTasks();
+            }
+        }, FIRST_FRAME_TIMEOUT_MS);
+    }
+
+    /**
+     * Queues {@code task} to run on a background thread after the first frame. If the deferred
+     * tasks are already running or done, it runs right away, still on a background thread.
+     */
+    public void runAfterFirstFrame(String name, Runnable task) {
+        final NamedTask namedTask = new NamedTask(name, task);
+        synchronized (this) {
+            if (!mDeferredTasksStarted) {
+                mDeferredTasks.add(namedTask);
+                return;
+            }
+            mRunningTasks++;
+        }
+        final List<NamedTask> tasks = new ArrayList<>(1);
+        tasks.add(namedTask);
+        execute(tasks);
+    }
+
+    /**
+     * Watches for the first frame of {@code activity}, to run the deferred tasks and record the
+     * time to first frame. Only the first activity of the process is watched.
+     */
+    public void watchFirstFrame(Activity activity) {
+        synchronized (this) {
+            if (mWatchingFirstFrame || mFirstFrameNanos >= 0) {
+                return;
+            }
+            mWatchingFirstFrame = true;
+        }
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Posted, so that it runs once this frame has been drawn.
+                        decorView.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onFirstFrameDrawn();
+                            }
+                        });
+                        return true;
+                    }
+                });
+    }
+
+    @VisibleForTesting
+    void onFirstFrameDrawn() {
+        synchronized (this) {
+            if (mFirstFrameNanos >= 0) {
+                return;
+            }
+            mFirstFrameNanos = SystemClock.elapsedRealtimeNanos();
+            Logger.recordTimingSince(PerformanceMetric.STARTUP_FIRST_FRAME, mStartNanos);
+            Log.i(TAG, "First frame drawn "
+                    + TimeUnit.NANOSECONDS.toMillis(mFirstFrameNanos - mStartNanos) + "ms after"
+                    + " process start");
+        }
+        startDeferredTasks();
+        maybeBecomeInteractive();
+    }
+
+    private void startDeferredTasks() {
+        final List<NamedTask> tasks;
+        synchronized (this) {
+            if (mDeferredTasksStarted) {
+                return;
+            }
+            mDeferredTasksStarted = true;
+            tasks = new ArrayList<>(mDeferredTasks);
+            mDeferredTasks.clear();
+            mRunningTasks += tasks.size();
+        }
+        execute(tasks);
+    }
+
+    private void execute(final List<NamedTask> tasks) {
+        if (tasks.isEmpty()) {
+            maybeBecomeInteractive();
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (NamedTask namedTask : tasks) {
+                    Trace.beginSection(TAG + " " + namedTask.name);
+                    try {
+                        namedTask.task.run();
+                    } finally {
+                        Trace.endSection();
+                        synchronized (StartupScheduler.this) {
+                            mRunningTasks--;
+                        }
+                    }
+                }
+                maybeBecomeInteractive();
+            }
+        });
+    }
+
+    private void maybeBecomeInteractive() {
+        synchronized (this) {
+            if (mInteractiveNanos >= 0 || mFirstFrameNanos < 0 || !mDeferredTasksStarted
+                    || mRunningTasks > 0) {
+                return;
+            }
+            mInteractiveNanos = SystemClock.elapsedRealtimeNanos();
+            Logger.recordTimingSince(PerformanceMetric.STARTUP_INTERACTIVE, mStartNanos);
+        }
+        mInteractiveLatch.countDown();
+    }
+
+    /** Returns the time to first frame, or -1 if no frame has been drawn yet. */
+    public synchronized long getTimeToFirstFrameMillis() {
+        return mFirstFrameNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(
+                mFirstFrameNanos - mStartNanos);
+    }
+
+    /** Returns the time to interactive, or -1 if startup has not finished yet. */
+    public synchronized long getTimeToInteractiveMillis() {
+        return mInteractiveNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(
+                mInteractiveNanos - mStartNanos);
+    }
+
+    /**
+     * Waits for the first frame to be drawn and the deferred tasks to finish. Must not be
+     * called on the main thread.
+     *
+     * @return whether startup finished within the timeout.
+     */
+    public boolean awaitInteractive(long timeoutMs) throws InterruptedException {
+        return mInteractiveLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Process-wide timer service for the dialer and the in-call UI, running its tasks on the main
+ * thread. It is a hierarchical timing wheel: timers are kept in three levels of 64 slots, the
+ * first a tick wide, the next 64 ticks wide and so on, and move down a level as their deadline
+ * gets closer. However many timers are pending, at most one message is queued on the main looper,
+ * for the next tick that has work to do.
+ * <p>
+ * Deadlines are rounded up to a {@link #TICK_MS} tick, about one display frame, so timers due
+ * within the same frame run together. Periodic timers are aligned to multiples of their period
+ * on the uptime clock rather than to when they were started: all one second timers fire on the
+ * same tick, and none of them drift.
+ */
+@ThreadSafe
+public final class TimingWheel {
+
+    /** Resolution of the wheel; one display frame at 60Hz. */
+    public static final long TICK_MS = 16;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final long SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 3;
+
+    private static final long NO_EVENT = Long.MAX_VALUE;
+
+    private static TimingWheel sInstance;
+
+    /**
+     * A scheduled task, which can be cancelled. Cancelling a timer that already ran, or was
+     * already cancelled, does nothing.
+     */
+    public final class Timer {
+        private final Runnable mTask;
+        private final long mPeriodMs;
+        private long mDeadlineTick;
+        private List<Timer> mSlot;
+        private volatile boolean mCancelled;
+
+        private Timer(Runnable task, long periodMs) {
+            mTask = task;
+            mPeriodMs = periodMs;
+        }
+
+        public void cancel() {
+            TimingWheel.this.cancel(this);
+        }
+
+        public boolean isPending() {
+            synchronized (TimingWheel.this) {
+                return mSlot != null;
+            }
+        }
+    }
+
+    private final Handler mHandler;
+    private final Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            advance(SystemClock.uptimeMillis());
+        }
+    };
+
+    @GuardedBy("this") private final List<Timer>[][] mSlots;
+    @GuardedBy("this") private long mCurrentTick;
+    @GuardedBy("this") private int mPendingCount;
+    /** Tick the handler message is posted for, or {@link #NO_EVENT}. */
+    @GuardedBy("this") private long mPostedTick = NO_EVENT;
+
+    public static synchronized TimingWheel getInstance() {
+        if (sInstance == null) {
+            sInstance = new TimingWheel(new Handler(Looper.getMainLooper()),
+                    SystemClock.uptimeMillis());
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param handler Handler to run the timers on, or null if the test drives the wheel with
+     *         {@link #advance}.
+     */
+    @VisibleForTesting
+    @SuppressWarnings("unchecked")
+    TimingWheel(Handler handler, long nowMs) {
+        mHandler = handler;
+        mCurrentTick = nowMs / TICK_MS;
+        mSlots = new List[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < SLOTS; i++) {
+                mSlots[level][i] = new ArrayList<>(2);
+            }
+        }
+    }
+
+    /**
+     * Runs {@code task} once on the main thread, no earlier than {@code delayMs} from now and
+     * usually within a tick of it.
+     */
+    public Timer schedule(Runnable task, long delayMs) {
+        return schedule(task, delayMs, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Runs {@code task} on the main thread every {@code periodMs}, aligned to multiples of the
+     * period, starting with the next one.
+     */
+    public Timer schedulePeriodic(Runnable task, long periodMs) {
+        return schedulePeriodic(task, periodMs, SystemClock.uptimeMillis());
+    }
+
+    @VisibleForTesting
+    synchronized Timer schedule(Runnable task, long delayMs, long nowMs) {
+        final Timer timer = new Timer(task, 0);
+        add(timer, ceilTick(nowMs + Math.max(0, delayMs)), nowMs);
+        return timer;
+    }
+
+    @VisibleForTesting
+    synchronized Timer schedulePeriodic(Runnable task, long periodMs, long nowMs) {
+        if (periodMs <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMs);
+        }
+        final Timer timer = new Timer(task, periodMs);
+        add(timer, nextPeriodTick(periodMs, nowMs), nowMs);
+        return timer;
+    }
+
+    private synchronized void cancel(Timer timer) {
+        timer.mCancelled = true;
+        if (timer.mSlot == null) {
+            return;
+        }
+        timer.mSlot.remove(timer);
+        timer.mSlot = null;
+        mPendingCount--;
+        postNextTick();
+    }
+
+    /**
+     * Runs the timers that are due at {@code nowMs}, then queues the message for the next ones.
+     */
+    @VisibleForTesting
+    void advance(long nowMs) {
+        final long nowTick = nowMs / TICK_MS;
+        final List<Timer> due = new ArrayList<>();
+        synchronized (this) {
+            mPostedTick = NO_EVENT;
+            long tick;
+            while ((tick = findNextEventTick()) <= nowTick) {
+                mCurrentTick = tick;
+                cascade(tick);
+                final List<Timer> slot = mSlots[0][(int) (tick & SLOT_MASK)];
+                for (Timer timer : slot) {
+                    timer.mSlot = null;
+                    due.add(timer);
+                }
+                mPendingCount -= slot.size();
+                slot.clear();
+            }
+            mCurrentTick = Math.max(mCurrentTick, nowTick);
+            // Periodic timers are rescheduled before running, so a task may cancel its own timer.
+            for (Timer timer : due) {
+                if (timer.mPeriodMs > 0) {
+                    add(timer, nextPeriodTick(timer.mPeriodMs, nowMs), nowMs);
+                }
+            }
+            postNextTick();
+        }
+        for (Timer timer : due) {
+            // Skip timers cancelled by a task that ran before them.
+            if (!timer.mCancelled) {
+                timer.mTask.run();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getPendingCount() {
+        return mPendingCount;
+    }
+
+    @GuardedBy("this")
+    private void add(Timer timer, long deadlineTick, long nowMs) {
+        if (mPendingCount == 0) {
+            // Nothing is pending, so the wheel may have been idle for a while; catch it up.
+            mCurrentTick = Math.max(mCurrentTick, nowMs / TICK_MS);
+        }
+        timer.mDeadlineTick = deadlineTick;
+        place(timer, mCurrentTick + 1);
+        mPendingCount++;
+        postNextTick();
+    }
+
+    /**
+     * Puts the timer in the slot for its deadline, relative to the current tick, or in the one
+     * for {@code minTick} if its deadline is earlier.
+     */
+    @GuardedBy("this")
+    private void place(Timer timer, long minTick) {
+        final long deadline = Math.max(timer.mDeadlineTick, minTick);
+        final long delta = deadline - mCurrentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long slotTick = deadline;
+        if (delta >= 1L << (SLOT_BITS * LEVELS)) {
+            // Beyond the wheel; park it in the slot cascaded last, which places it again.
+            slotTick = mCurrentTick + (SLOT_MASK << (SLOT_BITS * level));
+        }
+        timer.mSlot = mSlots[level][(int) ((slotTick >>> (SLOT_BITS * level)) & SLOT_MASK)];
+        timer.mSlot.add(timer);
+    }
+
+    /** Moves the timers of the upper level slots that start at {@code tick} down a level. */
+    @GuardedBy("this")
+    private void cascade(long tick) {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                continue;
+            }
+            final List<Timer> slot =
+                    mSlots[level][(int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK)];
+            if (slot.isEmpty()) {
+                continue;
+            }
+            final List<Timer> timers = new ArrayList<>(slot);
+            slot.clear();
+            for (Timer timer : timers) {
+                // Timers due on this very tick go to its level 0 slot, which runs next.
+                place(timer, tick);
+            }
+        }
+    }
+
+    /** Whether {@link #cascade} at {@code tick} would move any timer. */
+    @GuardedBy("this")
+    private boolean hasCascade(long tick) {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                return false;
+            }
+            if (!mSlots[level][(int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK)].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the first tick after the current one at which a timer is due or has to be moved
+     * down a level, or {@link #NO_EVENT} if no timer is pending.
+     */
+    @GuardedBy("this")
+    private long findNextEventTick() {
+        if (mPendingCount == 0) {
+            return NO_EVENT;
+        }
+        long tick = mCurrentTick + 1;
+        for (int i = 0; i < SLOTS; i++, tick++) {
+            if (!mSlots[0][(int) (tick & SLOT_MASK)].isEmpty() || hasCascade(tick)) {
+                return tick;
+            }
+        }
+        // Level 0 is empty; the next event is a cascade, at a multiple of SLOTS ticks.
+        tick = (tick + SLOT_MASK) & ~SLOT_MASK;
+        for (int i = 0; i < SLOTS * SLOTS; i++, tick += SLOTS) {
+            if (hasCascade(tick)) {
+                return tick;
+            }
+        }
+        return NO_EVENT;
+    }
+
+    @GuardedBy("this")
+    private void postNextTick() {
+        final long tick = findNextEventTick();
+        if (tick == mPostedTick || mHandler == null) {
+            mPostedTick = tick;
+            return;
+        }
+        mHandler.removeCallbacks(mTickRunnable);
+        mPostedTick = tick;
+        if (tick != NO_EVENT) {
+            mHandler.postAtTime(mTickRunnable, tick * TICK_MS);
+        }
+    }
+
+    private static long ceilTick(long timeMs) {
+        return (timeMs + TICK_MS - 1) / TICK_MS;
+    }
+
+    private static long nextPeriodTick(long periodMs, long nowMs) {
+        return ceilTick((nowMs / periodMs + 1) * periodMs);
+    }
+}
@@ -21,8 +21,8 @@ import com.android.dialer.calllog.CallLogQuery;
 import com.android.dialer.database.VoicemailArchiveContract;
 import com.android.dialer.util.AsyncTaskExecutor;
 import com.android.dialer.util.AsyncTaskExecutors;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.io.ByteStreams;
 
 import android.content.ContentResolver;
 import android.content.ContentUris;
@@ -30,14 +30,18 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.ParcelFileDescriptor;
 import android.provider.CallLog;
 import android.provider.VoicemailContract;
 import android.util.Log;
+import android.util.LruCache;
 import com.android.common.io.MoreCloseables;
 
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 import javax.annotation.Nullable;
 
@@ -48,13 +52,27 @@ import javax.annotation.Nullable;
 public class VoicemailAsyncTaskUtil {
     private static final String TAG = "VoicemailAsyncTaskUtil";
 
-    /** The enumeration of {@link AsyncTask} objects we use in this class. */
+    /** Bytes copied per transfer. */
+    private static final long COPY_CHUNK_BYTES = 256 * 1024;
+
+    /** Number of voicemails whose peaks are kept in memory, for those not archived. */
+    private static final int PEAKS_CACHE_SIZE = 16;
+
+    /**
+     * The enumeration of {@link AsyncTask} objects we use in this class. Copying the content runs
+     * on {@link AsyncTaskExecutors.Domain#MEDIA}, decoding peaks on
+     * {@link AsyncTaskExecutors.Domain#CPU}, the rest on {@link AsyncTaskExecutors.Domain#DB_IO}.
+     */
     public enum Tasks {
         GET_VOICEMAIL_FILE_PATH,
         SET_VOICEMAIL_ARCHIVE_STATUS,
-        ARCHIVE_VOICEMAIL_CONTENT
+        ARCHIVE_VOICEMAIL_CONTENT,
+        GET_VOICEMAIL_PEAKS
     }
 
+    /** Peaks of recently played voicemails, by voicemail URI. */
+    private static final LruCache<Uri, byte[]> sPeaksCache = new LruCache<>(PEAKS_CACHE_SIZE);
+
     @NeededForTesting
     public interface OnArchiveVoicemailListener {
         /**
@@ -85,13 +103,28 @@ public class VoicemailAsyncTaskUtil {
         void onGetArchivedVoicemailFilePath(@Nullable String filePath);
     }
 
+    @NeededForTesting
+    public interface OnGetVoicemailPeaksListener {
+        /**
+         * Called after the peaks of the voicemail are obtained.
+         *
+         * @param peaks the peaks, see {@link VoicemailPeaks}, or {@code null} if the voicemail
+         *         could not be decoded
+         */
+        void onGetVoicemailPeaks(@Nullable byte[] peaks);
+    }
+
     private final ContentResolver mResolver;
     private final AsyncTaskExecutor mAsyncTaskExecutor;
+    private final AsyncTaskExecutor mMediaExecutor;
+    private final AsyncTaskExecutor mCpuExecutor;
 
     @NeededForTesting
     public VoicemailAsyncTaskUtil(ContentResolver contentResolver) {
         mResolver = Preconditions.checkNotNull(contentResolver);
-        mAsyncTaskExecutor = AsyncTaskExecutors.createThreadPoolExecutor();
+        mAsyncTaskExecutor = AsyncTaskExecutors.createExecutor(AsyncTaskExecutors.Domain.DB_IO);
+        mMediaExecutor = AsyncTaskExecutors.createExecutor(AsyncTaskExecutors.Domain.MEDIA);
+        mCpuExecutor = AsyncTaskExecutors.createExecutor(AsyncTaskExecutors.Domain.CPU);
     }
 
     /**
@@ -153,10 +186,80 @@ public class VoicemailAsyncTaskUtil {
                 });
     }
 
+    /**
+     * Returns the peaks of a voicemail, or of an archived voicemail. They are read from the
+     * archive if stored there; otherwise the voicemail is decoded, and the peaks stored in its
+     * archive row, if it has one, or kept in memory until it is archived.
+     */
+    @NeededForTesting
+    public void getVoicemailPeaks(final OnGetVoicemailPeaksListener listener,
+            final Uri voicemailUri) {
+        Preconditions.checkNotNull(listener);
+        Preconditions.checkNotNull(voicemailUri);
+        mCpuExecutor.submit(Tasks.GET_VOICEMAIL_PEAKS,
+                new AsyncTask<Void, Void, byte[]>() {
+                    @Nullable
+                    @Override
+                    protected byte[] doInBackground(Void... params) {
+                        final Uri archivedUri = VoicemailArchiveContract.AUTHORITY.equals(
+                                voicemailUri.getAuthority())
+                                ? voicemailUri : getArchivedVoicemailUri(voicemailUri);
+                        byte[] peaks = archivedUri != null
+                                ? getArchivedPeaks(archivedUri) : sPeaksCache.get(voicemailUri);
+                        if (peaks != null) {
+                            return peaks;
+                        }
+
+                        try (ParcelFileDescriptor fd =
+                                     mResolver.openFileDescriptor(voicemailUri, "r")) {
+                            if (fd != null) {
+                                peaks = VoicemailPeaks.decode(fd.getFileDescriptor());
+                            }
+                        } catch (IOException e) {
+                            Log.w(TAG, "Failed to open voicemail content: " + e.toString());
+                        }
+                        if (peaks == null) {
+                            return null;
+                        }
+                        if (archivedUri != null) {
+                            ContentValues values = new ContentValues();
+                            values.put(VoicemailArchiveContract.VoicemailArchive.PEAKS, peaks);
+                            mResolver.update(archivedUri, values, null, null);
+                        } else {
+                            sPeaksCache.put(voicemailUri, peaks);
+                        }
+                        return peaks;
+                    }
+
+                    @Override
+                    protected void onPostExecute(byte[] peaks) {
+                        listener.onGetVoicemailPeaks(peaks);
+                    }
+                });
+    }
+
+    @VisibleForTesting
+    static void clearPeaksCache() {
+        sPeaksCache.evictAll();
+    }
+
+    @Nullable
+    private byte[] getArchivedPeaks(Uri archivedUri) {
+        try (Cursor cursor = mResolver.query(archivedUri,
+                new String[] {VoicemailArchiveContract.VoicemailArchive.PEAKS},
+                null, null, null)) {
+            return hasContent(cursor) ? cursor.getBlob(0) : null;
+        }
+    }
+
     /**
      * Checks if a voicemail has already been archived, if so, return the previously archived URI.
      * Otherwise, copy the voicemail information to the local dialer database. If archive was
      * successful, archived voicemail URI is returned to listener, otherwise null.
+     * <p>
+     * The content is copied between file descriptors on a thread reserved for file copies,
+     * without going through the Java heap. If the process dies during the copy, the partial copy
+     * is kept, and archiving the same voicemail again copies the rest of it.
      */
     @NeededForTesting
     public void archiveVoicemailContent(
@@ -164,17 +267,29 @@ public class VoicemailAsyncTaskUtil {
             final Uri voicemailUri) {
         Preconditions.checkNotNull(listener);
         Preconditions.checkNotNull(voicemailUri);
-        mAsyncTaskExecutor.submit(Tasks.ARCHIVE_VOICEMAIL_CONTENT,
+        mMediaExecutor.submit(Tasks.ARCHIVE_VOICEMAIL_CONTENT,
                 new AsyncTask<Void, Void, Uri>() {
                     @Nullable
                     @Override
                     protected Uri doInBackground(Void... params) {
-                        Uri archivedVoicemailUri = getArchivedVoicemailUri(voicemailUri);
+                        Uri archivedVoicemailUri = null;
+                        boolean isContentComplete = false;
+                        try (Cursor cursor = getArchiveExistsCursor(voicemailUri)) {
+                            if (hasContent(cursor)) {
+                                archivedVoicemailUri = getArchivedVoicemailUri(cursor);
+                                isContentComplete = cursor.getInt(cursor.getColumnIndex(
+                                        VoicemailArchiveContract.VoicemailArchive
+                                                .CONTENT_COMPLETE)) != 0;
+                            }
+                        }
 
                         // If previously archived, return uri, otherwise archive everything.
-                        if (archivedVoicemailUri != null) {
+                        if (isContentComplete) {
                             return archivedVoicemailUri;
                         }
+                        if (archivedVoicemailUri != null) {
+                            return completeArchivedContent(voicemailUri, archivedVoicemailUri);
+                        }
 
                         // Combine call log and voicemail content info.
                         ContentValues values = getVoicemailContentValues(voicemailUri);
@@ -187,27 +302,7 @@ public class VoicemailAsyncTaskUtil {
                         if (insertedVoicemailUri == null) {
                             return null;
                         }
-
-                        // Copy voicemail content to a new file.
-                        boolean copiedFile = false;
-                        try (InputStream inputStream = mResolver.openInputStream(voicemailUri);
-                             OutputStream outputStream =
-                                     mResolver.openOutputStream(insertedVoicemailUri)) {
-                            if (inputStream != null && outputStream != null) {
-                                ByteStreams.copy(inputStream, outputStream);
-                                copiedFile = true;
-                                return insertedVoicemailUri;
-                            }
-                        } catch (IOException e) {
-                            Log.w(TAG, "Failed to copy voicemail content to new file: "
-                                    + e.toString());
-                        } finally {
-                            if (!copiedFile) {
-                                // Roll back insert if the voicemail content was not copied.
-                                mResolver.delete(insertedVoicemailUri, null, null);
-                            }
-                        }
-                        return null;
+                        return completeArchivedContent(voicemailUri, insertedVoicemailUri);
                     }
 
                     @Override
@@ -217,6 +312,77 @@ public class VoicemailAsyncTaskUtil {
                 });
     }
 
+    /**
+     * Copies the content of a voicemail into its archive row, or whatever an earlier attempt
+     * that was cut short left out of it, and marks the row complete. If that fails, the row and
+     * its partial copy are deleted.
+     *
+     * @return the archived voicemail URI, or {@code null} if the content could not be copied.
+     */
+    @Nullable
+    private Uri completeArchivedContent(Uri voicemailUri, Uri archivedVoicemailUri) {
+        boolean isComplete = false;
+        try {
+            copyVoicemailContent(voicemailUri, archivedVoicemailUri);
+            ContentValues values = new ContentValues(1);
+            values.put(VoicemailArchiveContract.VoicemailArchive.CONTENT_COMPLETE, true);
+            isComplete = mResolver.update(archivedVoicemailUri, values, null, null) > 0;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to copy voicemail content to archive: " + e.toString());
+        } finally {
+            if (!isComplete) {
+                // Roll back the archive if the voicemail content was not copied.
+                mResolver.delete(archivedVoicemailUri, null, null);
+            }
+        }
+        return isComplete ? archivedVoicemailUri : null;
+    }
+
+    /**
+     * Copies the content of {@code sourceUri} to {@code targetUri} with
+     * {@link FileChannel#transferTo}, which lets the kernel move the bytes from one file to the
+     * other. If the target already holds part of the content, from an earlier copy that was cut
+     * short, only the rest is copied. Sources whose size is unknown, such as pipes, are copied
+     * from the start.
+     *
+     * @throws FileNotFoundException if either file cannot be opened.
+     */
+    @VisibleForTesting
+    void copyVoicemailContent(Uri sourceUri, Uri targetUri) throws IOException {
+        try (ParcelFileDescriptor source = mResolver.openFileDescriptor(sourceUri, "r");
+             ParcelFileDescriptor target = mResolver.openFileDescriptor(targetUri, "rw")) {
+            if (source == null || target == null) {
+                throw new FileNotFoundException("Cannot open voicemail content");
+            }
+            // The descriptors stay owned by the ParcelFileDescriptors, which close them.
+            final FileChannel in = new FileInputStream(source.getFileDescriptor()).getChannel();
+            final FileChannel out = new FileOutputStream(target.getFileDescriptor()).getChannel();
+            final long totalBytes = source.getStatSize();
+            if (totalBytes < 0) {
+                out.truncate(0);
+                long copiedBytes = 0;
+                long transferred;
+                while ((transferred = out.transferFrom(in, copiedBytes, COPY_CHUNK_BYTES)) > 0) {
+                    copiedBytes += transferred;
+                }
+                return;
+            }
+
+            // What an earlier attempt wrote is the start of the content.
+            long copiedBytes = Math.min(out.size(), totalBytes);
+            out.truncate(copiedBytes);
+            out.position(copiedBytes);
+            while (copiedBytes < totalBytes) {
+                final long transferred = in.transferTo(copiedBytes,
+                        Math.min(COPY_CHUNK_BYTES, totalBytes - copiedBytes), out);
+                if (transferred <= 0) {
+                    throw new IOException("Voicemail content shrank while being copied");
+                }
+                copiedBytes += transferred;
+            }
+        }
+    }
+
     /**
      * Helper method to get the archived URI of a voicemail.
      *
@@ -227,14 +393,19 @@ public class VoicemailAsyncTaskUtil {
     private Uri getArchivedVoicemailUri(Uri voicemailUri) {
         try (Cursor cursor = getArchiveExistsCursor(voicemailUri)) {
             if (hasContent(cursor)) {
-                return VoicemailArchiveContract.VoicemailArchive
-                        .buildWithId(cursor.getInt(cursor.getColumnIndex(
-                                VoicemailArchiveContract.VoicemailArchive._ID)));
+                return getArchivedVoicemailUri(cursor);
             }
         }
         return null;
     }
 
+    /** Returns the URI of the archived voicemail at the position of an archive cursor. */
+    private Uri getArchivedVoicemailUri(Cursor cursor) {
+        return VoicemailArchiveContract.VoicemailArchive
+                .buildWithId(cursor.getInt(cursor.getColumnIndex(
+                        VoicemailArchiveContract.VoicemailArchive._ID)));
+    }
+
     /**
      * Helper method to make a copy of all the values needed to display a voicemail.
      *
@@ -303,6 +474,11 @@ public class VoicemailAsyncTaskUtil {
                 // Achived is false by default because it is updated after insertion.
                 values.put(VoicemailArchiveContract.VoicemailArchive.ARCHIVED, false);
 
+                final byte[] peaks = sPeaksCache.get(voicemailUri);
+                if (peaks != null) {
+                    values.put(VoicemailArchiveContract.VoicemailArchive.PEAKS, peaks);
+                }
+
                 return values;
             }
         }
@@ -337,7 +513,10 @@ public class VoicemailAsyncTaskUtil {
     @Nullable
     private Cursor getArchiveExistsCursor(Uri voicemailUri) {
         return mResolver.query(VoicemailArchiveContract.VoicemailArchive.CONTENT_URI,
-                new String[] {VoicemailArchiveContract.VoicemailArchive._ID},
+                new String[] {
+                        VoicemailArchiveContract.VoicemailArchive._ID,
+                        VoicemailArchiveContract.VoicemailArchive.CONTENT_COMPLETE
+                },
                 VoicemailArchiveContract.VoicemailArchive.SERVER_ID + "="
                         + ContentUris.parseId(voicemailUri),
                 null,
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.dialer.voicemail;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import javax.annotation.Nullable;
+
+/**
+ * Decodes voicemail audio into its peaks: the loudest sample of every {@link #MILLIS_PER_PEAK}
+ * of audio, scaled to an unsigned byte. A ten minute voicemail has 12000 of them, small enough to
+ * store with the voicemail and draw as its waveform without decoding the audio again.
+ */
+public final class VoicemailPeaks {
+    private static final String TAG = "VoicemailPeaks";
+
+    /** Length of audio summed up by each peak. */
+    public static final int MILLIS_PER_PEAK = 50;
+
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+    private VoicemailPeaks() {
+    }
+
+    /**
+     * Decodes the audio in {@code fd}. Blocks until the whole file has been decoded, so must not
+     * be called on the main thread.
+     *
+     * @return the peaks, or {@code null} if the audio could not be decoded.
+     */
+    @Nullable
+    public static byte[] decode(FileDescriptor fd) {
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
+        Trace.beginSection(TAG + ".decode");
+        final MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(fd);
+            final int track = findAudioTrack(extractor);
+            if (track < 0) {
+                Log.w(TAG, "No audio track to decode");
+                return null;
+            }
+            extractor.selectTrack(track);
+            final MediaFormat format = extractor.getTrackFormat(track);
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            final Accumulator accumulator = new Accumulator(
+                    format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                    format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            decode(extractor, codec, accumulator);
+            Logger.recordTimingSince(PerformanceMetric.VOICEMAIL_PEAKS_DECODE, startNanos);
+            return accumulator.finish();
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            Log.w(TAG, "Failed to decode voicemail", e);
+            return null;
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+            extractor.release();
+            Trace.endSection();
+        }
+    }
+
+    private static void decode(MediaExtractor extractor, MediaCodec codec,
+            Accumulator accumulator) {
+        final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputDone = false;
+        while (true) {
+            if (!inputDone) {
+                final int inputIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                if (inputIndex >= 0) {
+                    final int size = extractor.readSampleData(
+                            codec.getInputBuffer(inputIndex), 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0,
+                                MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            final int outputIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+            if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                final MediaFormat format = codec.getOutputFormat();
+                accumulator.setFormat(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                        format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            } else if (outputIndex >= 0) {
+                final ByteBuffer buffer = codec.getOutputBuffer(outputIndex);
+                buffer.position(info.offset);
+                buffer.limit(info.offset + info.size);
+                accumulator.add(buffer.order(ByteOrder.nativeOrder()).asShortBuffer());
+                codec.releaseOutputBuffer(outputIndex, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int findAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            final String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Turns 16 bit PCM, with any number of interleaved channels, into peaks.
+     */
+    @VisibleForTesting
+    static final class Accumulator {
+        private final ByteArrayOutputStream mPeaks = new ByteArrayOutputStream();
+        private int mSamplesPerPeak;
+        private int mSamples;
+        private int mPeak;
+
+        Accumulator(int sampleRate, int channelCount) {
+            setFormat(sampleRate, channelCount);
+        }
+
+        void setFormat(int sampleRate, int channelCount) {
+            mSamplesPerPeak = Math.max(1,
+                    (int) ((long) sampleRate * channelCount * MILLIS_PER_PEAK / 1000));
+        }
+
+        void add(ShortBuffer samples) {
+            while (samples.hasRemaining()) {
+                mPeak = Math.max(mPeak, Math.abs(samples.get()));
+                if (++mSamples >= mSamplesPerPeak) {
+                    flush();
+                }
+            }
+        }
+
+        /** Returns the peaks, including one for the audio after the last whole period. */
+        byte[] finish() {
+            if (mSamples > 0) {
+                flush();
+            }
+            return mPeaks.toByteArray();
+        }
+
+        private void flush() {
+            // The loudest sample is 32768, which is clamped to the top of the byte.
+            mPeaks.write(Math.min(mPeak >> 7, 0xff));
+            mPeak = 0;
+            mSamples = 0;
+        }
+    }
+}
@@ -45,15 +45,13 @@ import com.android.dialer.database.VoicemailArchiveContract;
 import com.android.dialer.database.VoicemailArchiveContract.VoicemailArchive;
 import com.android.dialer.util.AsyncTaskExecutor;
 import com.android.dialer.util.AsyncTaskExecutors;
+import com.android.dialer.util.TimingWheel;
 import com.android.dialerbind.ObjectFactory;
 import com.google.common.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledExecutorService;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
@@ -75,7 +73,10 @@ public class VoicemailPlaybackLayout extends LinearLayout
     private static final int VOICEMAIL_DELETE_DELAY_MS = 3000;
     private static final int VOICEMAIL_ARCHIVE_DELAY_MS = 3000;
 
-    /** The enumeration of {@link AsyncTask} objects we use in this class. */
+    /**
+     * The enumeration of {@link AsyncTask} objects we use in this class. They run on
+     * {@link AsyncTaskExecutors.Domain#DB_IO}.
+     */
     public enum Tasks {
         QUERY_ARCHIVED_STATUS
     }
@@ -84,22 +85,21 @@ public class VoicemailPlaybackLayout extends LinearLayout
      * Controls the animation of the playback slider.
      */
     @ThreadSafe
-    private final class PositionUpdater implements Runnable {
+    private final class PositionUpdater {
 
-        /** Update rate for the slider, 30fps. */
-        private static final int SLIDER_UPDATE_PERIOD_MILLIS = 1000 / 30;
+        /** Update rate for the slider, every other frame (30fps). */
+        private static final long SLIDER_UPDATE_PERIOD_MILLIS = 2 * TimingWheel.TICK_MS;
 
         private int mDurationMs;
-        private final ScheduledExecutorService mExecutorService;
         private final Object mLock = new Object();
-        @GuardedBy("mLock") private ScheduledFuture<?> mScheduledFuture;
+        @GuardedBy("mLock") private TimingWheel.Timer mTimer;
 
         private Runnable mUpdateClipPositionRunnable = new Runnable() {
             @Override
             public void run() {
                 int currentPositionMs = 0;
                 synchronized (mLock) {
-                    if (mScheduledFuture == null || mPresenter == null) {
+                    if (mTimer == null || mPresenter == null) {
                         // This task has been canceled. Just stop now.
                         return;
                     }
@@ -109,22 +109,18 @@ public class VoicemailPlaybackLayout extends LinearLayout
             }
         };
 
-        public PositionUpdater(int durationMs, ScheduledExecutorService executorService) {
+        public PositionUpdater(int durationMs) {
             mDurationMs = durationMs;
-            mExecutorService = executorService;
-        }
-
-        @Override
-        public void run() {
-            post(mUpdateClipPositionRunnable);
         }
 
         public void startUpdating() {
             synchronized (mLock) {
                 cancelPendingRunnables();
-                mScheduledFuture = mExecutorService.scheduleAtFixedRate(
-                        this, 0, SLIDER_UPDATE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                // The wheel runs its timers on the main thread, so they can update the views.
+                mTimer = TimingWheel.getInstance().schedulePeriodic(
+                        mUpdateClipPositionRunnable, SLIDER_UPDATE_PERIOD_MILLIS);
             }
+            post(mUpdateClipPositionRunnable);
         }
 
         public void stopUpdating() {
@@ -134,9 +130,9 @@ public class VoicemailPlaybackLayout extends LinearLayout
         }
 
         private void cancelPendingRunnables() {
-            if (mScheduledFuture != null) {
-                mScheduledFuture.cancel(true);
-                mScheduledFuture = null;
+            if (mTimer != null) {
+                mTimer.cancel();
+                mTimer = null;
             }
             removeCallbacks(mUpdateClipPositionRunnable);
         }
@@ -273,7 +269,7 @@ public class VoicemailPlaybackLayout extends LinearLayout
     private VoicemailPlaybackPresenter mPresenter;
     private Uri mVoicemailUri;
     private final AsyncTaskExecutor mAsyncTaskExecutor =
-            AsyncTaskExecutors.createAsyncTaskExecutor();
+            AsyncTaskExecutors.createExecutor(AsyncTaskExecutors.Domain.DB_IO);
     private boolean mIsPlaying = false;
     /**
      * Keeps track of which voicemails are currently being archived in order to update the voicemail
@@ -282,6 +278,7 @@ public class VoicemailPlaybackLayout extends LinearLayout
     private static final ArrayList<Uri> mIsArchiving = new ArrayList<>();
 
     private SeekBar mPlaybackSeek;
+    private VoicemailWaveformView mWaveform;
     private ImageButton mStartStopButton;
     private ImageButton mPlaybackSpeakerphone;
     private ImageButton mDeleteButton;
@@ -314,6 +311,9 @@ public class VoicemailPlaybackLayout extends LinearLayout
     @Override
     public void setPresenter(VoicemailPlaybackPresenter presenter, Uri voicemailUri) {
         mPresenter = presenter;
+        if (!Objects.equals(voicemailUri, mVoicemailUri)) {
+            mWaveform.setPeaks(null);
+        }
         mVoicemailUri = voicemailUri;
         if (ObjectFactory.isVoicemailArchiveEnabled(mContext)) {
             updateArchiveUI(mVoicemailUri);
@@ -332,6 +332,10 @@ public class VoicemailPlaybackLayout extends LinearLayout
         super.onFinishInflate();
 
         mPlaybackSeek = (SeekBar) findViewById(R.id.playback_seek);
+        mWaveform = (VoicemailWaveformView) findViewById(R.id.playback_waveform);
+        // Lines the waveform up with the track of the seek bar.
+        mWaveform.setPadding(mPlaybackSeek.getPaddingLeft(), 0,
+                mPlaybackSeek.getPaddingRight(), 0);
         mStartStopButton = (ImageButton) findViewById(R.id.playback_start_stop);
         mPlaybackSpeakerphone = (ImageButton) findViewById(R.id.playback_speakerphone);
         mDeleteButton = (ImageButton) findViewById(R.id.delete_voicemail);
@@ -362,7 +366,7 @@ public class VoicemailPlaybackLayout extends LinearLayout
     }
 
     @Override
-    public void onPlaybackStarted(int duration, ScheduledExecutorService executorService) {
+    public void onPlaybackStarted(int duration) {
         mIsPlaying = true;
 
         mStartStopButton.setImageResource(R.drawable.ic_pause);
@@ -371,7 +375,7 @@ public class VoicemailPlaybackLayout extends LinearLayout
             mPositionUpdater.stopUpdating();
             mPositionUpdater = null;
         }
-        mPositionUpdater = new PositionUpdater(duration, executorService);
+        mPositionUpdater = new PositionUpdater(duration);
         mPositionUpdater.startUpdating();
     }
 
@@ -421,11 +425,17 @@ public class VoicemailPlaybackLayout extends LinearLayout
         }
 
         mPlaybackSeek.setProgress(seekBarPositionMs);
+        mWaveform.setPosition(seekBarPositionMs, seekBarMax);
 
         mPositionText.setText(formatAsMinutesAndSeconds(seekBarPositionMs));
         mTotalDurationText.setText(formatAsMinutesAndSeconds(durationMs));
     }
 
+    @Override
+    public void setPeaks(@Nullable byte[] peaks) {
+        mWaveform.setPeaks(peaks);
+    }
+
     @Override
     public void setSuccess() {
         mStateText.setText(null);
@@ -465,6 +475,7 @@ public class VoicemailPlaybackLayout extends LinearLayout
     @Override
     public void resetSeekBar() {
         mPlaybackSeek.setProgress(0);
+        mWaveform.setPosition(0, mPlaybackSeek.getMax());
         mPlaybackSeek.setEnabled(false);
         mPlaybackSeek.setThumb(mVoicemailSeekHandleDisabled);
     }
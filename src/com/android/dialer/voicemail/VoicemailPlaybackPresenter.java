@@ -30,6 +30,7 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.provider.VoicemailContract;
 import android.support.v4.content.FileProvider;
 import android.util.Log;
@@ -37,6 +38,8 @@ import android.view.WindowManager.LayoutParams;
 
 import com.android.dialer.R;
 import com.android.dialer.calllog.CallLogAsyncTaskUtil;
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
 import com.android.dialer.util.AsyncTaskExecutor;
 import com.android.dialer.util.AsyncTaskExecutors;
 import com.android.common.io.MoreCloseables;
@@ -45,13 +48,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.annotation.concurrent.ThreadSafe;
 
@@ -80,10 +82,11 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         void disableUiElements();
         void enableUiElements();
         void onPlaybackError();
-        void onPlaybackStarted(int duration, ScheduledExecutorService executorService);
+        void onPlaybackStarted(int duration);
         void onPlaybackStopped();
         void onSpeakerphoneOn(boolean on);
         void setClipPosition(int clipPositionInMillis, int clipLengthInMillis);
+        void setPeaks(@Nullable byte[] peaks);
         void setSuccess();
         void setFetchContentTimeout();
         void setIsFetchingContent();
@@ -99,7 +102,10 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         void onVoicemailDeletedInDatabase();
     }
 
-    /** The enumeration of {@link AsyncTask} objects we use in this class. */
+    /**
+     * The enumeration of {@link AsyncTask} objects we use in this class. They run on
+     * {@link AsyncTaskExecutors.Domain#PROVIDER_IO}.
+     */
     public enum Tasks {
         CHECK_FOR_CONTENT,
         CHECK_CONTENT_AFTER_CHANGE,
@@ -115,7 +121,6 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         VoicemailContract.Voicemails.DURATION
     };
 
-    private static final int NUMBER_OF_THREADS_IN_POOL = 2;
     // Time to wait for content to be fetched before timing out.
     private static final long FETCH_CONTENT_TIMEOUT_MS = 20000;
 
@@ -150,6 +155,11 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
     protected Uri mVoicemailUri;
 
     protected MediaPlayer mMediaPlayer;
+    private final VoicemailPlayerPool mPlayerPool = new VoicemailPlayerPool();
+    /** The voicemail most likely to be played after the current one, to prepare ahead. */
+    @Nullable private Uri mNextVoicemailUri;
+    /** When a different voicemail was bound, or 0 once it has been prepared. */
+    private long mSwitchStartNanos;
     private int mPosition;
     private boolean mIsPlaying;
     // MediaPlayer crashes on some method calls if not prepared but does not have a method which
@@ -162,7 +172,6 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
 
     // Used to run async tasks that need to interact with the UI.
     protected AsyncTaskExecutor mAsyncTaskExecutor;
-    private static ScheduledExecutorService mScheduledExecutorService;
     /**
      * Used to handle the result of a successful or time-out fetch result.
      * <p>
@@ -201,7 +210,8 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
      */
     protected VoicemailPlaybackPresenter(Activity activity) {
         Context context = activity.getApplicationContext();
-        mAsyncTaskExecutor = AsyncTaskExecutors.createAsyncTaskExecutor();
+        mAsyncTaskExecutor =
+                AsyncTaskExecutors.createExecutor(AsyncTaskExecutors.Domain.PROVIDER_IO);
         mVoicemailAudioManager = new VoicemailAudioManager(context, this);
         mVoicemailAsyncTaskUtil = new VoicemailAsyncTaskUtil(context.getContentResolver());
         PowerManager powerManager =
@@ -269,6 +279,7 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         } else {
             if (!voicemailUri.equals(mVoicemailUri)) {
                 mVoicemailUri = voicemailUri;
+                mSwitchStartNanos = SystemClock.elapsedRealtimeNanos();
                 mPosition = 0;
                 // Default to earpiece.
                 setSpeakerphoneOn(false);
@@ -285,6 +296,8 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
             checkForContent(new OnContentCheckedListener() {
                 @Override
                 public void onContentChecked(boolean hasContent) {
+                    Logger.incrementCounter(hasContent ? PerformanceMetric.VOICEMAIL_CONTENT_HIT
+                            : PerformanceMetric.VOICEMAIL_CONTENT_MISS);
                     if (hasContent) {
                         prepareContent();
                     } else if (mView != null) {
@@ -311,18 +324,30 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
 
         mView = null;
         mVoicemailUri = null;
+        mNextVoicemailUri = null;
+    }
+
+    /**
+     * Sets the voicemail most likely to be played after the current one, such as the one in the
+     * next row, so that a player is prepared for it as soon as the current one is prepared.
+     */
+    public void setNextVoicemailUri(@Nullable Uri voicemailUri) {
+        mNextVoicemailUri = voicemailUri;
+        if (mIsPrepared) {
+            prepareNextVoicemail();
+        }
     }
 
     /**
-     * When navigating away from voicemail playback, we need to release the media player,
-     * pause the UI and save the position.
+     * When navigating away from voicemail playback, we need to return the media player to the
+     * pool, pause the UI and save the position.
      *
      * @param reset {@code true} if we want to reset the position of the playback, {@code false} if
      * we want to retain the current position (in case we return to the voicemail).
      */
     public void pausePresenter(boolean reset) {
         if (mMediaPlayer != null) {
-            mMediaPlayer.release();
+            mPlayerPool.recycle(mMediaPlayer);
             mMediaPlayer = null;
         }
 
@@ -366,8 +391,9 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
             return;
         }
 
-        // Release the media player, otherwise there may be failures.
+        // Release the media players, otherwise there may be failures.
         pausePresenter(false);
+        mPlayerPool.clear();
 
         if (mActivity != null) {
             mActivity.getWindow().clearFlags(LayoutParams.FLAG_KEEP_SCREEN_ON);
@@ -383,11 +409,6 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         mActivity = null;
         mContext = null;
 
-        if (mScheduledExecutorService != null) {
-            mScheduledExecutorService.shutdown();
-            mScheduledExecutorService = null;
-        }
-
         if (!mArchiveResultHandlers.isEmpty()) {
             for (FetchResultHandler fetchResultHandler : mArchiveResultHandlers) {
                 fetchResultHandler.destroy();
@@ -563,22 +584,34 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         }
         Log.d(TAG, "prepareContent");
 
-        // Release the previous media player, otherwise there may be failures.
+        // Reset the previous media player, otherwise there may be failures.
         if (mMediaPlayer != null) {
-            mMediaPlayer.release();
+            mPlayerPool.recycle(mMediaPlayer);
             mMediaPlayer = null;
         }
 
         mView.disableUiElements();
         mIsPrepared = false;
 
+        // Use the player prepared ahead for this voicemail, if there is one. If it is still
+        // preparing, it calls onPrepared() once done, like a player prepared below.
+        final boolean isPreparedAhead = mPlayerPool.isNextPrepared(mVoicemailUri);
+        mMediaPlayer = mPlayerPool.takeNext(mVoicemailUri);
+        if (mMediaPlayer != null) {
+            Logger.incrementCounter(isPreparedAhead
+                    ? PerformanceMetric.VOICEMAIL_PLAYER_PREPARED_AHEAD
+                    : PerformanceMetric.VOICEMAIL_PLAYER_PREPARING_AHEAD);
+            setMediaPlayerListeners();
+            if (isPreparedAhead) {
+                onPrepared(mMediaPlayer);
+            }
+            return;
+        }
+
         try {
-            mMediaPlayer = new MediaPlayer();
-            mMediaPlayer.setOnPreparedListener(this);
-            mMediaPlayer.setOnErrorListener(this);
-            mMediaPlayer.setOnCompletionListener(this);
+            mMediaPlayer = mPlayerPool.obtain();
+            setMediaPlayerListeners();
 
-            mMediaPlayer.reset();
             mMediaPlayer.setDataSource(mContext, mVoicemailUri);
             mMediaPlayer.setAudioStreamType(VoicemailAudioManager.PLAYBACK_STREAM);
             mMediaPlayer.prepareAsync();
@@ -587,6 +620,23 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         }
     }
 
+    private void setMediaPlayerListeners() {
+        mMediaPlayer.setOnPreparedListener(this);
+        mMediaPlayer.setOnErrorListener(this);
+        mMediaPlayer.setOnCompletionListener(this);
+    }
+
+    /**
+     * Starts preparing a player for {@link #mNextVoicemailUri}. Only done once the current
+     * voicemail is prepared, so that the two do not compete for the decoder.
+     */
+    private void prepareNextVoicemail() {
+        if (mNextVoicemailUri != null && mContext != null
+                && !mNextVoicemailUri.equals(mVoicemailUri)) {
+            mPlayerPool.prepareNext(mContext, mNextVoicemailUri);
+        }
+    }
+
     /**
      * Once the media player is prepared, enables the UI and adopts the appropriate playback state.
      */
@@ -597,6 +647,10 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         }
         Log.d(TAG, "onPrepared");
         mIsPrepared = true;
+        if (mSwitchStartNanos != 0) {
+            Logger.recordTimingSince(PerformanceMetric.VOICEMAIL_SWITCH, mSwitchStartNanos);
+            mSwitchStartNanos = 0;
+        }
 
         // Update the duration in the database if it was not previously retrieved
         CallLogAsyncTaskUtil.updateVoicemailDuration(mContext, mVoicemailUri,
@@ -608,6 +662,8 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         mView.setClipPosition(mPosition, mDuration.get());
         mView.enableUiElements();
         mView.setSuccess();
+        loadPeaks();
+        prepareNextVoicemail();
         mMediaPlayer.seekTo(mPosition);
 
         if (mIsPlaying) {
@@ -631,7 +687,7 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         Log.d(TAG, "handleError: Could not play voicemail " + e);
 
         if (mIsPrepared) {
-            mMediaPlayer.release();
+            mPlayerPool.recycle(mMediaPlayer);
             mMediaPlayer = null;
             mIsPrepared = false;
         }
@@ -730,7 +786,7 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         }
 
         Log.d(TAG, "Resumed playback at " + mPosition + ".");
-        mView.onPlaybackStarted(mDuration.get(), getScheduledExecutorServiceInstance());
+        mView.onPlaybackStarted(mDuration.get());
     }
 
     /**
@@ -898,13 +954,6 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         }
     }
 
-    private static synchronized ScheduledExecutorService getScheduledExecutorServiceInstance() {
-        if (mScheduledExecutorService == null) {
-            mScheduledExecutorService = Executors.newScheduledThreadPool(NUMBER_OF_THREADS_IN_POOL);
-        }
-        return mScheduledExecutorService;
-    }
-
     /**
      * If voicemail has already been downloaded, go straight to archiving. Otherwise, request
      * the voicemail content first.
@@ -945,6 +994,22 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
                 }, voicemailUri);
     }
 
+    /**
+     * Loads the waveform of the current voicemail into the view, once its content is available.
+     */
+    private void loadPeaks() {
+        final Uri voicemailUri = mVoicemailUri;
+        mVoicemailAsyncTaskUtil.getVoicemailPeaks(
+                new VoicemailAsyncTaskUtil.OnGetVoicemailPeaksListener() {
+                    @Override
+                    public void onGetVoicemailPeaks(@Nullable byte[] peaks) {
+                        if (mView != null && voicemailUri.equals(mVoicemailUri)) {
+                            mView.setPeaks(peaks);
+                        }
+                    }
+                }, voicemailUri);
+    }
+
     /**
      * Sends the intent for sharing the voicemail file.
      */
@@ -1004,6 +1069,16 @@ public class VoicemailPlaybackPresenter implements MediaPlayer.OnPreparedListene
         return mIsSpeakerphoneOn;
     }
 
+    @VisibleForTesting
+    public boolean isPrepared() {
+        return mIsPrepared;
+    }
+
+    @VisibleForTesting
+    /* package */ boolean isPreparedAhead(Uri voicemailUri) {
+        return mPlayerPool.isNextPrepared(voicemailUri);
+    }
+
     @VisibleForTesting
     public void clearInstance() {
         sInstance = null;
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.dialer.voicemail;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Media players for {@link VoicemailPlaybackPresenter}, so that switching between voicemails
+ * neither creates a player nor, for the voicemail it was told about ahead of time, waits for one
+ * to prepare.
+ * <p>
+ * It holds at most two players: an idle one, reset instead of released by {@link #recycle}, and
+ * one preparing or prepared for the next likely voicemail by {@link #prepareNext}.
+ * <p>
+ * All methods must be called on the main thread, which is also where the players deliver their
+ * callbacks.
+ */
+@NotThreadSafe
+class VoicemailPlayerPool implements MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnErrorListener {
+    private static final String TAG = "VoicemailPlayerPool";
+
+    @Nullable private MediaPlayer mIdlePlayer;
+    @Nullable private MediaPlayer mNextPlayer;
+    @Nullable private Uri mNextVoicemailUri;
+    private boolean mIsNextPrepared;
+
+    /**
+     * Returns an idle player, in its reset state. Its listeners may still be set from its last
+     * use, so callers must set their own.
+     */
+    MediaPlayer obtain() {
+        if (mIdlePlayer == null) {
+            return new MediaPlayer();
+        }
+        final MediaPlayer player = mIdlePlayer;
+        mIdlePlayer = null;
+        return player;
+    }
+
+    /**
+     * Takes back a player obtained from this pool, in any state but released. It is kept as the
+     * idle player if there is none yet, and released otherwise.
+     */
+    void recycle(MediaPlayer player) {
+        try {
+            player.reset();
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Could not reset player", e);
+            player.release();
+            return;
+        }
+        if (mIdlePlayer == null) {
+            mIdlePlayer = player;
+        } else {
+            player.release();
+        }
+    }
+
+    /**
+     * Starts preparing a player for {@code voicemailUri}, replacing the one prepared for any
+     * other voicemail. Failures are only logged; the voicemail is then prepared when it is played.
+     */
+    void prepareNext(Context context, Uri voicemailUri) {
+        if (voicemailUri.equals(mNextVoicemailUri)) {
+            return;
+        }
+        discardNext();
+
+        final MediaPlayer player = obtain();
+        player.setOnPreparedListener(this);
+        player.setOnErrorListener(this);
+        player.setOnCompletionListener(null);
+        try {
+            player.setDataSource(context, voicemailUri);
+            player.setAudioStreamType(VoicemailAudioManager.PLAYBACK_STREAM);
+            player.prepareAsync();
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            Log.d(TAG, "Could not prepare " + voicemailUri + " ahead of time: " + e);
+            recycle(player);
+            return;
+        }
+        mNextPlayer = player;
+        mNextVoicemailUri = voicemailUri;
+        mIsNextPrepared = false;
+    }
+
+    /**
+     * Whether a player for {@code voicemailUri} has finished preparing. {@link #takeNext} hands
+     * it over without delivering {@link MediaPlayer.OnPreparedListener#onPrepared} again.
+     */
+    boolean isNextPrepared(Uri voicemailUri) {
+        return mIsNextPrepared && voicemailUri.equals(mNextVoicemailUri);
+    }
+
+    /**
+     * Hands over the player started by {@link #prepareNext} for {@code voicemailUri}, if any. If
+     * it is still preparing, it notifies the listeners the caller sets next.
+     */
+    @Nullable
+    MediaPlayer takeNext(Uri voicemailUri) {
+        if (mNextPlayer == null || !voicemailUri.equals(mNextVoicemailUri)) {
+            return null;
+        }
+        final MediaPlayer player = mNextPlayer;
+        mNextPlayer = null;
+        mNextVoicemailUri = null;
+        mIsNextPrepared = false;
+        return player;
+    }
+
+    /** Releases all players, for when playback is left. */
+    void clear() {
+        discardNext();
+        if (mIdlePlayer != null) {
+            mIdlePlayer.release();
+            mIdlePlayer = null;
+        }
+    }
+
+    @Override
+    public void onPrepared(MediaPlayer player) {
+        if (player == mNextPlayer) {
+            mIsNextPrepared = true;
+        }
+    }
+
+    @Override
+    public boolean onError(MediaPlayer player, int what, int extra) {
+        if (player == mNextPlayer) {
+            Log.d(TAG, "Could not prepare " + mNextVoicemailUri + " ahead of time: " + extra);
+            discardNext();
+        }
+        return true;
+    }
+
+    private void discardNext() {
+        if (mNextPlayer != null) {
+            final MediaPlayer player = mNextPlayer;
+            mNextPlayer = null;
+            mNextVoicemailUri = null;
+            mIsNextPrepared = false;
+            recycle(player);
+        }
+    }
+}
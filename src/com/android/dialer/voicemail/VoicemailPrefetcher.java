@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.dialer.voicemail;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.media.MediaMetadataRetriever;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.BatteryManager;
+import android.provider.VoicemailContract;
+import android.provider.VoicemailContract.Voicemails;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.PerformanceMetric;
+import com.android.dialer.util.AsyncTaskExecutor;
+import com.android.dialer.util.AsyncTaskExecutors;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Gets voicemail content onto the device before the user taps play, so that playback starts
+ * without waiting for {@link android.provider.VoicemailContract#ACTION_FETCH_VOICEMAIL}.
+ * <p>
+ * The newest unheard voicemails are fetched whenever the call log is shown while the device is
+ * charging or on an unmetered network, and any unheard voicemail as soon as its row is shown.
+ * Voicemails that already have content get their duration probed, if the source did not provide
+ * it, so the player shows the right length before preparing.
+ * <p>
+ * The content itself is stored by the voicemail source. What is bounded here is how much of it
+ * is requested: {@link #PREFETCH_COUNT} voicemails at a time, each at most once per
+ * {@link #MAX_HANDLED_VOICEMAILS} voicemails seen. Whether a voicemail had content by the time it
+ * was played is counted by {@link VoicemailPlaybackPresenter}, as
+ * {@link PerformanceMetric#VOICEMAIL_CONTENT_HIT} and
+ * {@link PerformanceMetric#VOICEMAIL_CONTENT_MISS}.
+ * <p>
+ * All public methods must be called on the main thread.
+ */
+@NotThreadSafe
+public class VoicemailPrefetcher {
+    private static final String TAG = "VoicemailPrefetcher";
+
+    /** Number of the newest unheard voicemails fetched in the background. */
+    @VisibleForTesting
+    static final int PREFETCH_COUNT = 3;
+
+    /** Number of voicemails remembered as handled, so they are not requested again. */
+    private static final int MAX_HANDLED_VOICEMAILS = 32;
+
+    /** Voicemails not heard yet, leaving out the ones deleted but not yet synced. */
+    private static final String UNHEARD_SELECTION =
+            Voicemails.IS_READ + "=0 AND " + Voicemails.DELETED + "=0";
+
+    private static final String[] PROJECTION = new String[] {
+        Voicemails._ID,
+        Voicemails.HAS_CONTENT,
+        Voicemails.DURATION
+    };
+    private static final int ID = 0;
+    private static final int HAS_CONTENT = 1;
+    private static final int DURATION = 2;
+
+    /** The enumeration of {@link AsyncTask} objects we use in this class. */
+    public enum Tasks {
+        PREFETCH_RECENT,
+        PREFETCH_VOICEMAIL
+    }
+
+    private static VoicemailPrefetcher sInstance;
+
+    private final Context mContext;
+    private final AsyncTaskExecutor mAsyncTaskExecutor;
+    /**
+     * Voicemails requested or probed already, least recently handled first. Also read in the
+     * background; {@link LruCache} is thread safe.
+     */
+    private final LruCache<Uri, Boolean> mHandled = new LruCache<>(MAX_HANDLED_VOICEMAILS);
+
+    public static VoicemailPrefetcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new VoicemailPrefetcher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    VoicemailPrefetcher(Context context) {
+        mContext = context;
+        mAsyncTaskExecutor =
+                AsyncTaskExecutors.createExecutor(AsyncTaskExecutors.Domain.PROVIDER_IO);
+    }
+
+    /**
+     * Fetches the newest unheard voicemails, if the device is charging or on an unmetered
+     * network.
+     */
+    public void prefetchRecent() {
+        if (!isGoodTimeToPrefetch()) {
+            return;
+        }
+        mAsyncTaskExecutor.submit(Tasks.PREFETCH_RECENT, new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                try (Cursor cursor = mContext.getContentResolver().query(Voicemails.CONTENT_URI,
+                        PROJECTION, UNHEARD_SELECTION, null, Voicemails.DATE + " DESC")) {
+                    for (int i = 0; cursor != null && i < PREFETCH_COUNT && cursor.moveToNext();
+                            i++) {
+                        final Uri voicemailUri = ContentUris.withAppendedId(
+                                Voicemails.CONTENT_URI, cursor.getLong(ID));
+                        // Skipped if its row was shown meanwhile; that prefetched it.
+                        if (mHandled.get(voicemailUri) == null) {
+                            mHandled.put(voicemailUri, true);
+                            prefetch(voicemailUri, cursor);
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Fetches an unheard voicemail whose row has just been shown, unless that was done already.
+     */
+    public void onVoicemailVisible(final Uri voicemailUri) {
+        if (mHandled.get(voicemailUri) != null) {
+            return;
+        }
+        mHandled.put(voicemailUri, true);
+        mAsyncTaskExecutor.submit(Tasks.PREFETCH_VOICEMAIL, new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                try (Cursor cursor = mContext.getContentResolver().query(
+                        voicemailUri, PROJECTION, null, null, null)) {
+                    if (cursor != null && cursor.moveToFirst()) {
+                        prefetch(voicemailUri, cursor);
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Requests the content of the voicemail at the cursor's position, or probes its duration if
+     * it has content already. Runs in the background.
+     */
+    private void prefetch(Uri voicemailUri, Cursor cursor) {
+        if (cursor.getInt(HAS_CONTENT) != 1) {
+            Log.d(TAG, "Requesting content of " + voicemailUri);
+            Logger.incrementCounter(PerformanceMetric.VOICEMAIL_PREFETCH_REQUEST);
+            mContext.sendBroadcast(new Intent(VoicemailContract.ACTION_FETCH_VOICEMAIL,
+                    voicemailUri));
+        } else if (cursor.getLong(DURATION) <= 0) {
+            probeDuration(voicemailUri);
+        }
+    }
+
+    private void probeDuration(Uri voicemailUri) {
+        final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(mContext, voicemailUri);
+            final String durationMs =
+                    retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (durationMs == null) {
+                return;
+            }
+            final ContentValues values = new ContentValues(1);
+            values.put(Voicemails.DURATION,
+                    TimeUnit.MILLISECONDS.toSeconds(Long.parseLong(durationMs)));
+            mContext.getContentResolver().update(voicemailUri, values, null, null);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to probe the duration of " + voicemailUri, e);
+        } finally {
+            retriever.release();
+        }
+    }
+
+    private boolean isGoodTimeToPrefetch() {
+        final Intent battery = mContext.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+            return true;
+        }
+        final ConnectivityManager connectivityManager =
+                (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected()
+                && !connectivityManager.isActiveNetworkMetered();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.dialer.voicemail;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.android.dialer.R;
+
+import javax.annotation.Nullable;
+
+/**
+ * Draws the waveform of a voicemail from its {@link VoicemailPeaks}, as bars mirrored around the
+ * middle, with the part already played in the theme color. The bars are computed once per peaks
+ * and size, so moving the position only redraws.
+ */
+public class VoicemailWaveformView extends View {
+    private final Paint mPlayedPaint = new Paint();
+    private final Paint mUnplayedPaint = new Paint();
+    private final float mBarWidth;
+    private final float mBarSpacing;
+
+    @Nullable private byte[] mPeaks;
+    /** Height of each bar, from 0 to 1, or null if not computed for the current size yet. */
+    @Nullable private float[] mBars;
+    private float mProgress;
+
+    public VoicemailWaveformView(Context context) {
+        this(context, null);
+    }
+
+    public VoicemailWaveformView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mPlayedPaint.setColor(
+                context.getColor(R.color.voicemail_playback_seek_bar_already_played));
+        mUnplayedPaint.setColor(
+                context.getColor(R.color.voicemail_playback_seek_bar_yet_to_play));
+        mBarWidth = getResources().getDimension(R.dimen.voicemail_waveform_bar_width);
+        mBarSpacing = getResources().getDimension(R.dimen.voicemail_waveform_bar_spacing);
+    }
+
+    /** Sets the peaks to draw; the view hides itself if there are none. */
+    public void setPeaks(@Nullable byte[] peaks) {
+        mPeaks = peaks;
+        mBars = null;
+        setVisibility(peaks == null || peaks.length == 0 ? View.GONE : View.VISIBLE);
+        invalidate();
+    }
+
+    /** Colors the bars up to {@code positionMs} of {@code durationMs} as played. */
+    public void setPosition(int positionMs, int durationMs) {
+        final float progress = durationMs > 0
+                ? Math.min(1f, Math.max(0f, (float) positionMs / durationMs)) : 0f;
+        if (progress != mProgress) {
+            mProgress = progress;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mBars = null;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mPeaks == null || mPeaks.length == 0) {
+            return;
+        }
+        final int left = getPaddingLeft();
+        final int width = getWidth() - left - getPaddingRight();
+        if (mBars == null) {
+            mBars = computeBars(mPeaks, (int) ((width + mBarSpacing) / (mBarWidth + mBarSpacing)));
+        }
+        final float centerY = getHeight() / 2f;
+        final float maxHalfHeight = (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f;
+        final float playedX = left + width * mProgress;
+        for (int i = 0; i < mBars.length; i++) {
+            final float x = left + i * (mBarWidth + mBarSpacing);
+            // Silence still shows as a dot, so that the length of the voicemail is visible.
+            final float halfHeight = Math.max(mBarWidth / 2, mBars[i] * maxHalfHeight);
+            canvas.drawRect(x, centerY - halfHeight, x + mBarWidth, centerY + halfHeight,
+                    x < playedX ? mPlayedPaint : mUnplayedPaint);
+        }
+    }
+
+    /** Splits the peaks into {@code barCount} runs and returns the loudest of each. */
+    private static float[] computeBars(byte[] peaks, int barCount) {
+        final float[] bars = new float[Math.max(0, barCount)];
+        for (int i = 0; i < bars.length; i++) {
+            final int start = (int) ((long) i * peaks.length / bars.length);
+            final int end = Math.max(start + 1,
+                    (int) ((long) (i + 1) * peaks.length / bars.length));
+            int peak = 0;
+            for (int j = start; j < end && j < peaks.length; j++) {
+                peak = Math.max(peak, peaks[j] & 0xff);
+            }
+            bars[i] = peak / 255f;
+        }
+        return bars;
+    }
+}
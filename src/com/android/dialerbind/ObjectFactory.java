@@ -24,7 +24,9 @@ import android.support.annotation.Nullable;
 import com.android.dialer.calllog.CallLogAdapter;
 import com.android.dialer.calllog.ContactInfoHelper;
 import com.android.dialer.list.RegularSearchFragment;
+import com.android.dialer.logging.LocalMetricsSink;
 import com.android.dialer.logging.Logger;
+import com.android.dialer.logging.MetricsSink;
 import com.android.dialer.service.CachedNumberLookupService;
 import com.android.dialer.service.ExtendedBlockingButtonRenderer;
 import com.android.dialer.voicemail.VoicemailPlaybackPresenter;
@@ -91,6 +93,10 @@ public class ObjectFactory {
         return null;
     }
 
+    public static MetricsSink getMetricsSink() {
+        return LocalMetricsSink.getInstance();
+    }
+
     public static RegularSearchFragment newRegularSearchFragment() {
         return new RegularSearchFragment();
     }
@@ -20,13 +20,18 @@ import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Intent;
 import android.os.Bundle;
+import android.util.Log;
 
 import com.android.contacts.common.test.LaunchPerformanceBase;
+import com.android.dialer.util.StartupScheduler;
 
 /**
  * Instrumentation class for Address Book launch performance testing.
  */
 public class DialerLaunchPerformance extends LaunchPerformanceBase {
+    private static final String TAG = "DialerLaunchPerformance";
+
+    private static final long INTERACTIVE_TIMEOUT_MS = 10000;
 
     @Override
     public void onCreate(Bundle arguments) {
@@ -39,12 +44,24 @@ public class DialerLaunchPerformance extends LaunchPerformanceBase {
     }
 
     /**
-     * Calls LaunchApp and finish.
+     * Calls LaunchApp, waits for the work deferred past the first frame, and finish. Besides the
+     * launch time, reports the time to first frame and to interactive, measured from the start
+     * of the process.
      */
     @Override
     public void onStart() {
         super.onStart();
         LaunchApp();
+        final StartupScheduler startupScheduler = StartupScheduler.getInstance();
+        try {
+            if (!startupScheduler.awaitInteractive(INTERACTIVE_TIMEOUT_MS)) {
+                Log.w(TAG, "Timed out waiting for startup to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mResults.putLong("time_to_first_frame", startupScheduler.getTimeToFirstFrameMillis());
+        mResults.putLong("time_to_interactive", startupScheduler.getTimeToInteractiveMillis());
         finish(Activity.RESULT_OK, mResults);
     }
 }
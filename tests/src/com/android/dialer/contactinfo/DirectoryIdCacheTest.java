@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.dialer.contactinfo;
+
+import android.content.ContentResolver;
+import android.content.ContextWrapper;
+import android.net.Uri;
+import android.provider.ContactsContract;
+import android.provider.ContactsContract.Directory;
+import android.test.AndroidTestCase;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.contacts.common.ContactsUtils;
+import com.android.contacts.common.test.mocks.MockContentProvider;
+import com.android.contacts.common.test.mocks.MockContentProvider.Query;
+
+import java.util.Arrays;
+
+@SmallTest
+public class DirectoryIdCacheTest extends AndroidTestCase {
+    private static final long REMOTE_DIRECTORY_ID = 10;
+    private static final long OTHER_REMOTE_DIRECTORY_ID = 11;
+
+    private final MockContentResolver mContentResolver = new MockContentResolver();
+    private final MockContentProvider mContactsProvider = new MockContentProvider();
+
+    private DirectoryIdCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContentResolver.addProvider(ContactsContract.AUTHORITY, mContactsProvider);
+        mCache = new DirectoryIdCache(new ContextWrapper(getContext()) {
+            @Override
+            public ContentResolver getContentResolver() {
+                return mContentResolver;
+            }
+        });
+    }
+
+    public void testGetRemoteDirectoryIds_skipsLocalDirectories() {
+        newDirectoryQuery()
+                .returnRow(Directory.DEFAULT)
+                .returnRow(Directory.LOCAL_INVISIBLE)
+                .returnRow(REMOTE_DIRECTORY_ID);
+
+        assertRemoteDirectoryIds(REMOTE_DIRECTORY_ID);
+        mContactsProvider.verify();
+    }
+
+    public void testGetRemoteDirectoryIds_cacheHit() {
+        newDirectoryQuery().returnRow(REMOTE_DIRECTORY_ID);
+
+        assertRemoteDirectoryIds(REMOTE_DIRECTORY_ID);
+        // The provider only expects one query, so a second one would fail here.
+        assertRemoteDirectoryIds(REMOTE_DIRECTORY_ID);
+        mContactsProvider.verify();
+    }
+
+    public void testGetRemoteDirectoryIds_reloadsAfterInvalidate() {
+        newDirectoryQuery().returnRow(REMOTE_DIRECTORY_ID);
+        assertRemoteDirectoryIds(REMOTE_DIRECTORY_ID);
+
+        mCache.invalidate();
+        newDirectoryQuery()
+                .returnRow(REMOTE_DIRECTORY_ID)
+                .returnRow(OTHER_REMOTE_DIRECTORY_ID);
+
+        assertRemoteDirectoryIds(REMOTE_DIRECTORY_ID, OTHER_REMOTE_DIRECTORY_ID);
+        assertRemoteDirectoryIds(REMOTE_DIRECTORY_ID, OTHER_REMOTE_DIRECTORY_ID);
+        mContactsProvider.verify();
+    }
+
+    private Query newDirectoryQuery() {
+        Uri uri = Directory.CONTENT_URI;
+        if (ContactsUtils.FLAG_N_FEATURE) {
+            uri = Uri.withAppendedPath(ContactsContract.AUTHORITY_URI, "directories_enterprise");
+        }
+        return mContactsProvider.expectQuery(uri)
+                .withProjection(Directory._ID)
+                .withAnySelection();
+    }
+
+    private void assertRemoteDirectoryIds(long... expected) {
+        long[] actual = mCache.getRemoteDirectoryIds();
+        assertTrue("Expected " + Arrays.toString(expected) + " but was "
+                + Arrays.toString(actual), Arrays.equals(expected, actual));
+    }
+}
@@ -20,6 +20,7 @@ import android.database.MatrixCursor;
 import android.provider.ContactsContract.Contacts;
 import android.provider.ContactsContract.Data;
 import android.provider.ContactsContract.CommonDataKinds.Phone;
+import android.provider.ContactsContract.RawContacts;
 import android.text.TextUtils;
 
 import com.android.dialer.database.DialerDatabaseHelper.ContactNumber;
@@ -48,7 +49,9 @@ public class DatabaseTestUtils {
                     Data.IS_SUPER_PRIMARY,              // 11
                     Contacts.IN_VISIBLE_GROUP,          // 12
                     Data.IS_PRIMARY,                    // 13
-                    Data.CARRIER_PRESENCE});            // 14
+                    Data.CARRIER_PRESENCE,              // 14
+                    RawContacts.ACCOUNT_TYPE,           // 15
+                    RawContacts.ACCOUNT_NAME});         // 16
         return cursor;
     }
 
@@ -74,7 +77,7 @@ public class DatabaseTestUtils {
 
         contactCursor.addRow(new Object[]{id, "", "", number, contactId, lookupKey, displayName,
                 photoId, lastTimeUsed, timesUsed, starred, isSuperPrimary, inVisibleGroup,
-                isPrimary, carrierPresence});
+                isPrimary, carrierPresence, null, null});
         nameCursor.addRow(new Object[]{displayName, contactId});
 
         return new ContactNumber(contactId, id, displayName, number, lookupKey, 0, 0);
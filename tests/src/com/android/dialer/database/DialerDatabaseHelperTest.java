@@ -18,20 +18,29 @@ package com.android.dialer.database;
 
 import static com.android.dialer.database.DatabaseTestUtils.*;
 
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
 import android.test.suitebuilder.annotation.SmallTest;
 import android.test.suitebuilder.annotation.Suppress;
 import android.test.AndroidTestCase;
+import android.util.Log;
 
 import com.android.dialer.database.DialerDatabaseHelper;
 import com.android.dialer.database.DialerDatabaseHelper.ContactNumber;
+import com.android.dialer.database.DialerDatabaseHelper.PropertiesColumns;
+import com.android.dialer.database.DialerDatabaseHelper.Tables;
+import com.android.dialer.database.VoicemailArchiveContract.VoicemailArchive;
 import com.android.dialer.dialpad.SmartDialNameMatcher;
 import com.android.dialer.dialpad.SmartDialPrefix;
 
 import java.lang.Exception;
 import java.lang.Override;
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Validates the behavior of the smart dial database helper with regards to contact updates and
@@ -42,6 +51,9 @@ import java.util.ArrayList;
  */
 @SmallTest
 public class DialerDatabaseHelperTest extends AndroidTestCase {
+    private static final String TAG = "DialerDatabaseHelperTest";
+
+    private static final String WAL_TEST_DATABASE_NAME = "dialer_wal_test.db";
 
     private DialerDatabaseHelper mTestHelper;
     private SQLiteDatabase mDb;
@@ -146,9 +158,180 @@ public class DialerDatabaseHelperTest extends AndroidTestCase {
         assertEquals(0, getMatchesFromDb("5105272357").size());
     }
 
+    /**
+     * Measures the update of 10000 changed contacts: deleting their old rows, then inserting
+     * the new ones. Contacts that did not change are kept.
+     */
+    public void testUpdateManyContacts() {
+        final int changedContacts = 10000;
+        final MatrixCursor nameCursor = constructNewNameCursor();
+        final MatrixCursor contactCursor = constructNewContactCursor();
+        for (int i = 0; i <= changedContacts; i++) {
+            constructNewContactWithDummyIds(contactCursor, nameCursor,
+                    "510-52" + (10000 + i), i, "James " + i);
+        }
+        mTestHelper.insertUpdatedContactsAndNumberPrefix(mDb, contactCursor, 0L);
+        mTestHelper.insertNamePrefixes(mDb, nameCursor);
+
+        // Every contact but the first changed its number.
+        final MatrixCursor updatedContactCursor =
+                new MatrixCursor(DialerDatabaseHelper.UpdatedContactQuery.PROJECTION);
+        final MatrixCursor newNameCursor = constructNewNameCursor();
+        final MatrixCursor newContactCursor = constructNewContactCursor();
+        for (int i = 1; i <= changedContacts; i++) {
+            updatedContactCursor.addRow(new Object[] {i});
+            constructNewContactWithDummyIds(newContactCursor, newNameCursor,
+                    "650-52" + (10000 + i), i, "James " + i);
+        }
+
+        final long startNanos = SystemClock.elapsedRealtimeNanos();
+        mTestHelper.removeUpdatedContacts(mDb, updatedContactCursor);
+        final long deleteMillis = TimeUnit.NANOSECONDS.toMillis(
+                SystemClock.elapsedRealtimeNanos() - startNanos);
+        assertEquals(0, DatabaseUtils.longForQuery(mDb,
+                "SELECT COUNT(*) FROM prefix_table WHERE contact_id != 0", null));
+        assertTrue(mTestHelper.countPrefixTableRows(mDb) > 0);
+        mTestHelper.insertUpdatedContactsAndNumberPrefix(mDb, newContactCursor, 1L);
+        mTestHelper.insertNamePrefixes(mDb, newNameCursor);
+        final long updateMillis = TimeUnit.NANOSECONDS.toMillis(
+                SystemClock.elapsedRealtimeNanos() - startNanos);
+        Log.i(TAG, "Updating " + changedContacts + " contacts took " + updateMillis
+                + "ms, of which " + deleteMillis + "ms deleting");
+
+        assertEquals(1, getMatchesFromDb("5105210000").size());
+        assertEquals(0, getMatchesFromDb("5105210001").size());
+        assertEquals(1, getMatchesFromDb("6505210001").size());
+        assertEquals(1, getMatchesFromDb("6505220000").size());
+    }
+
+    /**
+     * Verifies that properties are stored, replaced, and fall back to the default if missing.
+     */
+    public void testProperties() {
+        assertEquals("default", mTestHelper.getProperty(mDb, "key", "default"));
+        mTestHelper.setProperty(mDb, "key", "value");
+        assertEquals("value", mTestHelper.getProperty(mDb, "key", "default"));
+        mTestHelper.setProperty(mDb, "key", "other value");
+        assertEquals("other value", mTestHelper.getProperty(mDb, "key", "default"));
+    }
+
+    /**
+     * Measures a smart dial query made while an update has a write transaction open. With
+     * write-ahead logging, the query reads the last committed contacts instead of waiting for
+     * the update. Needs a database file, as in-memory databases do not support it.
+     */
+    public void testQueryLatencyDuringUpdate() throws Exception {
+        getContext().deleteDatabase(WAL_TEST_DATABASE_NAME);
+        final DialerDatabaseHelper helper =
+                new DialerDatabaseHelper(getContext(), WAL_TEST_DATABASE_NAME, true);
+        try {
+            final SQLiteDatabase db = helper.getWritableDatabase();
+            assertTrue(db.isWriteAheadLoggingEnabled());
+            final MatrixCursor nameCursor = constructNewNameCursor();
+            final MatrixCursor contactCursor = constructNewContactCursor();
+            constructNewContactWithDummyIds(contactCursor, nameCursor, "510-527-2357", 0, "James");
+            helper.insertUpdatedContactsAndNumberPrefix(db, contactCursor, 0L);
+            helper.insertNamePrefixes(db, nameCursor);
+
+            final CountDownLatch updating = new CountDownLatch(1);
+            final CountDownLatch queried = new CountDownLatch(1);
+            final Thread updater = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    db.beginTransactionNonExclusive();
+                    try {
+                        final MatrixCursor newNameCursor = constructNewNameCursor();
+                        final MatrixCursor newContactCursor = constructNewContactCursor();
+                        for (int i = 1; i <= 1000; i++) {
+                            constructNewContactWithDummyIds(newContactCursor, newNameCursor,
+                                    "510-527-" + (1000 + i), i, "James " + i);
+                        }
+                        helper.insertUpdatedContactsAndNumberPrefix(db, newContactCursor, 1L);
+                        helper.insertNamePrefixes(db, newNameCursor);
+                        updating.countDown();
+                        queried.await(10, TimeUnit.SECONDS);
+                        db.setTransactionSuccessful();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+            });
+            updater.start();
+            assertTrue(updating.await(10, TimeUnit.SECONDS));
+
+            final long startNanos = SystemClock.elapsedRealtimeNanos();
+            final SmartDialNameMatcher nameMatcher = new SmartDialNameMatcher("5105272357",
+                    SmartDialPrefix.getMap(), getContext());
+            final ArrayList<ContactNumber> matches =
+                    helper.getLooseMatches("5105272357", nameMatcher);
+            final long latencyMillis = TimeUnit.NANOSECONDS.toMillis(
+                    SystemClock.elapsedRealtimeNanos() - startNanos);
+            queried.countDown();
+            updater.join();
+            Log.i(TAG, "Smart dial query during an update took " + latencyMillis + "ms");
+
+            // Only the committed contact is visible to the query.
+            assertEquals(1, matches.size());
+            assertEquals("James", matches.get(0).displayName);
+            // The update's contacts are, once it commits.
+            assertEquals(1, helper.getLooseMatches("5105271001", new SmartDialNameMatcher(
+                    "5105271001", SmartDialPrefix.getMap(), getContext())).size());
+        } finally {
+            helper.close();
+            getContext().deleteDatabase(WAL_TEST_DATABASE_NAME);
+        }
+    }
+
     private ArrayList<ContactNumber> getMatchesFromDb(String query) {
         final SmartDialNameMatcher nameMatcher = new SmartDialNameMatcher(query,
                 SmartDialPrefix.getMap(), getContext());
         return mTestHelper.getLooseMatches(query, nameMatcher);
     }
+
+    /**
+     * Verifies that a database from before the voicemail archive was rebuilt in version 9 is
+     * upgraded to the current version, with each later column added once.
+     */
+    public void testUpgradeFromVersion8() {
+        final SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE " + Tables.PROPERTIES + " ("
+                    + PropertiesColumns.PROPERTY_KEY + " TEXT PRIMARY KEY, "
+                    + PropertiesColumns.PROPERTY_VALUE + " TEXT "
+                    + ");");
+            mTestHelper.setProperty(db, DialerDatabaseHelper.DATABASE_VERSION_PROPERTY, "8");
+
+            mTestHelper.onUpgrade(db, 8, DialerDatabaseHelper.DATABASE_VERSION);
+
+            assertEquals(DialerDatabaseHelper.DATABASE_VERSION, mTestHelper.getPropertyAsInt(
+                    db, DialerDatabaseHelper.DATABASE_VERSION_PROPERTY, 0));
+            assertTrue(hasVoicemailArchiveColumn(db, VoicemailArchive.PEAKS));
+            assertTrue(hasVoicemailArchiveColumn(db, VoicemailArchive.CONTENT_COMPLETE));
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Verifies that a new database has the same voicemail archive columns as an upgraded one.
+     */
+    public void testCreate_hasUpgradedVoicemailArchiveColumns() {
+        assertTrue(hasVoicemailArchiveColumn(mDb, VoicemailArchive.PEAKS));
+        assertTrue(hasVoicemailArchiveColumn(mDb, VoicemailArchive.CONTENT_COMPLETE));
+    }
+
+    private static boolean hasVoicemailArchiveColumn(SQLiteDatabase db, String column) {
+        try (Cursor cursor = db.rawQuery(
+                "PRAGMA table_info(" + Tables.VOICEMAIL_ARCHIVE_TABLE + ")", null)) {
+            final int nameIndex = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(nameIndex))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 }
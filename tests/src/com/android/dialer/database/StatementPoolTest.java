@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.dialer.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Unit tests for {@link StatementPool}.
+ */
+@SmallTest
+public class StatementPoolTest extends AndroidTestCase {
+    private static final String SELECT_ONE = "SELECT 1";
+    private static final String SELECT_TWO = "SELECT 2";
+
+    private SQLiteDatabase mDb;
+    private StatementPool mPool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = SQLiteDatabase.create(null);
+        mPool = new StatementPool(1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPool.clear();
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testReleasedStatementIsReused() {
+        final SQLiteStatement statement = mPool.acquire(mDb, SELECT_ONE);
+        assertEquals(1, statement.simpleQueryForLong());
+        mPool.release(mDb, SELECT_ONE, statement);
+
+        assertSame(statement, mPool.acquire(mDb, SELECT_ONE));
+    }
+
+    public void testStatementInUseIsNotShared() {
+        final SQLiteStatement first = mPool.acquire(mDb, SELECT_ONE);
+        final SQLiteStatement second = mPool.acquire(mDb, SELECT_ONE);
+        assertNotSame(first, second);
+
+        mPool.release(mDb, SELECT_ONE, first);
+        mPool.release(mDb, SELECT_ONE, second);
+        assertSame(first, mPool.acquire(mDb, SELECT_ONE));
+    }
+
+    public void testLeastRecentlyUsedStatementIsEvicted() {
+        final SQLiteStatement one = mPool.acquire(mDb, SELECT_ONE);
+        final SQLiteStatement two = mPool.acquire(mDb, SELECT_TWO);
+        mPool.release(mDb, SELECT_ONE, one);
+        mPool.release(mDb, SELECT_TWO, two);
+
+        assertNotSame(one, mPool.acquire(mDb, SELECT_ONE));
+        assertSame(two, mPool.acquire(mDb, SELECT_TWO));
+    }
+
+    public void testOtherDatabaseClearsPool() {
+        final SQLiteStatement statement = mPool.acquire(mDb, SELECT_ONE);
+        mPool.release(mDb, SELECT_ONE, statement);
+
+        final SQLiteDatabase otherDb = SQLiteDatabase.create(null);
+        try {
+            final SQLiteStatement other = mPool.acquire(otherDb, SELECT_ONE);
+            assertNotSame(statement, other);
+            mPool.release(otherDb, SELECT_ONE, other);
+            mPool.clear();
+        } finally {
+            otherDb.close();
+        }
+    }
+}
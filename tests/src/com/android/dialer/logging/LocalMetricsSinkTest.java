@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.logging;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+@SmallTest
+public class LocalMetricsSinkTest extends AndroidTestCase {
+
+    private LocalMetricsSink mSink;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mSink = new LocalMetricsSink();
+    }
+
+    public void testIncrementCounter() {
+        mSink.incrementCounter(PerformanceMetric.CONTACT_LOOKUP_FAILED, 1);
+        mSink.incrementCounter(PerformanceMetric.CONTACT_LOOKUP_FAILED, 2);
+
+        assertEquals(3, mSink.getCounter(PerformanceMetric.CONTACT_LOOKUP_FAILED));
+        assertEquals(0, mSink.getCounter(PerformanceMetric.SMART_DIAL_QUERY_DURING_UPDATE));
+    }
+
+    public void testGetBucket() {
+        assertEquals(0, LocalMetricsSink.getBucket(0));
+        assertEquals(1, LocalMetricsSink.getBucket(1));
+        assertEquals(2, LocalMetricsSink.getBucket(2));
+        assertEquals(2, LocalMetricsSink.getBucket(3));
+        assertEquals(11, LocalMetricsSink.getBucket(1024));
+        assertEquals(LocalMetricsSink.BUCKET_COUNT - 1, LocalMetricsSink.getBucket(Long.MAX_VALUE));
+    }
+
+    public void testRecordTiming_percentiles() {
+        for (int i = 0; i < 90; i++) {
+            mSink.recordTiming(PerformanceMetric.SMART_DIAL_QUERY, 100);
+        }
+        for (int i = 0; i < 10; i++) {
+            mSink.recordTiming(PerformanceMetric.SMART_DIAL_QUERY, 5000);
+        }
+
+        final LocalMetricsSink.Histogram timer = mSink.getTimer(PerformanceMetric.SMART_DIAL_QUERY);
+        assertEquals(100, timer.count.get());
+        assertEquals(5000, timer.max.get());
+        // 100 falls in [64, 128) and 5000 in [4096, 8192), capped at the maximum sample.
+        assertEquals(127, timer.getPercentile(50));
+        assertEquals(127, timer.getPercentile(90));
+        assertEquals(5000, timer.getPercentile(99));
+    }
+
+    public void testDump() {
+        mSink.incrementCounter(PerformanceMetric.CONTACT_LOOKUP_FAILED, 1);
+        mSink.recordTiming(PerformanceMetric.CALL_LOG_LOAD, 40);
+        mSink.recordHistogram(PerformanceMetric.SMART_DIAL_RESULTS, 3);
+
+        final StringWriter writer = new StringWriter();
+        mSink.dump(new PrintWriter(writer));
+        final String dump = writer.toString();
+
+        assertTrue(dump.contains("contact_lookup_failed: 1"));
+        assertTrue(dump.contains("call_log_load: 1, 40, 40 / 40 / 40, 40"));
+        assertTrue(dump.contains("smart_dial_results: 1, 3, 3 / 3 / 3, 3"));
+    }
+}
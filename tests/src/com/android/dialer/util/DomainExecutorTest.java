@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for {@link DomainExecutor}, with one thread and room for one queued task.
+ */
+@SmallTest
+public class DomainExecutorTest extends AndroidTestCase {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final List<Runnable> mOverflow = new ArrayList<>();
+    private DomainExecutor mExecutor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mExecutor = new DomainExecutor("DomainExecutorTest", 1, 1, "test_queue_depth",
+                "test_queue_wait", new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        mOverflow.add(command);
+                    }
+                });
+    }
+
+    public void testExecute_runsTasksInOrder() throws Exception {
+        final List<Integer> ran = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(2);
+        mExecutor.execute(newTask(ran, 1, done));
+        mExecutor.execute(newTask(ran, 2, done));
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        synchronized (ran) {
+            assertEquals(2, ran.size());
+            assertEquals(1, (int) ran.get(0));
+            assertEquals(2, (int) ran.get(1));
+        }
+    }
+
+    public void testExecute_fullQueueOverflows() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final List<Integer> ran = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        mExecutor.execute(newTask(ran, 1, done));
+        assertEquals(1, mExecutor.getQueueDepth());
+        assertTrue(mOverflow.isEmpty());
+
+        final Runnable overflowing = newTask(ran, 2, done);
+        mExecutor.execute(overflowing);
+        assertEquals(1, mOverflow.size());
+        assertSame(overflowing, mOverflow.get(0));
+
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        synchronized (ran) {
+            assertEquals(1, ran.size());
+            assertEquals(1, (int) ran.get(0));
+        }
+    }
+
+    private static Runnable newTask(final List<Integer> ran, final int id,
+            final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ran) {
+                    ran.add(id);
+                }
+                done.countDown();
+            }
+        };
+    }
+}
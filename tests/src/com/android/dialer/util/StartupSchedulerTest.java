@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Unit tests for {@link StartupScheduler}. The deferred tasks run on a queue drained by hand.
+ */
+@SmallTest
+public class StartupSchedulerTest extends AndroidTestCase {
+
+    private final List<Runnable> mQueued = new ArrayList<>();
+    private final List<String> mRan = new ArrayList<>();
+    private StartupScheduler mScheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mScheduler = new StartupScheduler(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mQueued.add(command);
+            }
+        });
+    }
+
+    public void testDeferredTasks_runAfterFirstFrameInOrder() throws Exception {
+        mScheduler.runAfterFirstFrame("first", newTask("first"));
+        mScheduler.runAfterFirstFrame("second", newTask("second"));
+        assertTrue(mQueued.isEmpty());
+        assertEquals(-1, mScheduler.getTimeToFirstFrameMillis());
+
+        mScheduler.onFirstFrameDrawn();
+        assertTrue(mScheduler.getTimeToFirstFrameMillis() >= 0);
+        assertEquals(-1, mScheduler.getTimeToInteractiveMillis());
+        assertFalse(mScheduler.awaitInteractive(0));
+
+        runQueued();
+        assertEquals(2, mRan.size());
+        assertEquals("first", mRan.get(0));
+        assertEquals("second", mRan.get(1));
+        assertTrue(mScheduler.awaitInteractive(0));
+        assertTrue(mScheduler.getTimeToInteractiveMillis()
+                >= mScheduler.getTimeToFirstFrameMillis());
+    }
+
+    public void testNoDeferredTasks_interactiveOnFirstFrame() throws Exception {
+        mScheduler.onFirstFrameDrawn();
+        assertTrue(mQueued.isEmpty());
+        assertTrue(mScheduler.awaitInteractive(0));
+    }
+
+    public void testTaskAddedAfterFirstFrame_runsRightAway() {
+        mScheduler.onFirstFrameDrawn();
+        mScheduler.runAfterFirstFrame("late", newTask("late"));
+        runQueued();
+        assertEquals(1, mRan.size());
+        assertEquals("late", mRan.get(0));
+    }
+
+    private Runnable newTask(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mRan.add(name);
+            }
+        };
+    }
+
+    private void runQueued() {
+        while (!mQueued.isEmpty()) {
+            mQueued.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.dialer.util;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * Unit tests for {@link TimingWheel}. The wheel is driven by hand, with no handler.
+ */
+@SmallTest
+public class TimingWheelTest extends AndroidTestCase {
+
+    private static final long START_MS = 1000 * TimingWheel.TICK_MS;
+
+    private TimingWheel mWheel;
+
+    private static final class CountingTask implements Runnable {
+        int runs;
+
+        @Override
+        public void run() {
+            runs++;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mWheel = new TimingWheel(null, START_MS);
+    }
+
+    public void testSchedule_runsOnceAfterDelay() {
+        CountingTask task = new CountingTask();
+        mWheel.schedule(task, 100, START_MS);
+
+        mWheel.advance(START_MS + 99);
+        assertEquals(0, task.runs);
+
+        mWheel.advance(START_MS + 100 + TimingWheel.TICK_MS);
+        assertEquals(1, task.runs);
+
+        mWheel.advance(START_MS + 10000);
+        assertEquals(1, task.runs);
+        assertEquals(0, mWheel.getPendingCount());
+    }
+
+    public void testSchedule_longDelayCascades() {
+        CountingTask task = new CountingTask();
+        // Several seconds and several minutes out: levels 1 and 2 of the wheel.
+        mWheel.schedule(task, 5000, START_MS);
+        mWheel.schedule(task, 10 * 60 * 1000, START_MS);
+
+        mWheel.advance(START_MS + 4999);
+        assertEquals(0, task.runs);
+        mWheel.advance(START_MS + 5000 + TimingWheel.TICK_MS);
+        assertEquals(1, task.runs);
+
+        mWheel.advance(START_MS + 10 * 60 * 1000 - 1);
+        assertEquals(1, task.runs);
+        mWheel.advance(START_MS + 10 * 60 * 1000 + TimingWheel.TICK_MS);
+        assertEquals(2, task.runs);
+    }
+
+    public void testSchedule_beyondWheelRange() {
+        CountingTask task = new CountingTask();
+        final long delayMs = 3 * 60 * 60 * 1000;
+        mWheel.schedule(task, delayMs, START_MS);
+
+        mWheel.advance(START_MS + delayMs - 1);
+        assertEquals(0, task.runs);
+        mWheel.advance(START_MS + delayMs + TimingWheel.TICK_MS);
+        assertEquals(1, task.runs);
+    }
+
+    public void testCancel() {
+        CountingTask task = new CountingTask();
+        TimingWheel.Timer timer = mWheel.schedule(task, 100, START_MS);
+        assertTrue(timer.isPending());
+
+        timer.cancel();
+        assertFalse(timer.isPending());
+        mWheel.advance(START_MS + 1000);
+        assertEquals(0, task.runs);
+        assertEquals(0, mWheel.getPendingCount());
+    }
+
+    public void testSchedulePeriodic_alignedToPeriod() {
+        CountingTask first = new CountingTask();
+        CountingTask second = new CountingTask();
+        mWheel.schedulePeriodic(first, 1000, START_MS + 100);
+        mWheel.schedulePeriodic(second, 1000, START_MS + 700);
+
+        // Both were started within the same second, so they tick together on its boundary.
+        final long boundaryMs = (START_MS / 1000 + 1) * 1000;
+        mWheel.advance(boundaryMs - 1);
+        assertEquals(0, first.runs);
+        assertEquals(0, second.runs);
+
+        mWheel.advance(boundaryMs + TimingWheel.TICK_MS);
+        assertEquals(1, first.runs);
+        assertEquals(1, second.runs);
+
+        mWheel.advance(boundaryMs + 3000 + TimingWheel.TICK_MS);
+        assertEquals(2, first.runs);
+        assertEquals(2, second.runs);
+        assertEquals(2, mWheel.getPendingCount());
+    }
+
+    public void testSchedulePeriodic_cancelFromTask() {
+        final TimingWheel.Timer[] timer = new TimingWheel.Timer[1];
+        final CountingTask task = new CountingTask();
+        timer[0] = mWheel.schedulePeriodic(new Runnable() {
+            @Override
+            public void run() {
+                task.run();
+                timer[0].cancel();
+            }
+        }, 100, START_MS);
+
+        mWheel.advance(START_MS + 1000);
+        mWheel.advance(START_MS + 2000);
+        assertEquals(1, task.runs);
+        assertEquals(0, mWheel.getPendingCount());
+    }
+}
@@ -151,19 +151,24 @@ public class VoicemailActivityInstrumentationTestCase2<T extends Activity>
 
     protected void setUriForRealFileVoicemailEntry() throws IOException {
         assertNull(mVoicemailUri);
+        mVoicemailUri = insertRealFileVoicemailEntry();
+    }
+
+    protected Uri insertRealFileVoicemailEntry() throws IOException {
         ContentValues values = new ContentValues();
         values.put(VoicemailContract.Voicemails.DATE, String.valueOf(System.currentTimeMillis()));
         values.put(VoicemailContract.Voicemails.NUMBER, CONTACT_NUMBER);
         values.put(VoicemailContract.Voicemails.MIME_TYPE, MIME_TYPE);
         values.put(VoicemailContract.Voicemails.HAS_CONTENT, 1);
         String packageName = getInstrumentation().getTargetContext().getPackageName();
-        mVoicemailUri = getContentResolver().insert(
+        Uri voicemailUri = getContentResolver().insert(
                 VoicemailContract.Voicemails.buildSourceUri(packageName), values);
         AssetManager assets = getAssets();
         try (InputStream inputStream = assets.open(TEST_ASSET_NAME);
-             OutputStream outputStream = getContentResolver().openOutputStream(mVoicemailUri)) {
+             OutputStream outputStream = getContentResolver().openOutputStream(voicemailUri)) {
             copyBetweenStreams(inputStream, outputStream);
         }
+        return voicemailUri;
     }
 
     protected void setUriForUnfetchedVoicemailEntry() {
@@ -190,10 +195,14 @@ public class VoicemailActivityInstrumentationTestCase2<T extends Activity>
     }
 
     protected void setPlaybackViewForPresenter() {
+        setPlaybackViewForPresenter(mVoicemailUri);
+    }
+
+    protected void setPlaybackViewForPresenter(final Uri voicemailUri) {
         getInstrumentation().runOnMainSync(new Runnable() {
             @Override
             public void run() {
-                mPresenter.setPlaybackView(mLayout, mVoicemailUri, false);
+                mPresenter.setPlaybackView(mLayout, voicemailUri, false);
             }
         });
     }
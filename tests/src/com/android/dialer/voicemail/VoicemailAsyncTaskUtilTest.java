@@ -41,8 +41,11 @@ import org.junit.Rule;
 import org.junit.rules.TemporaryFolder;
 import static org.mockito.Mockito.*;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 
 public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
     private static final String TEST_MIME_TYPE = "audio/mp3";
@@ -51,6 +54,8 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
     private static final String TEST_TRANSCRIPTION = "TEST_TRANSCRIPTION";
     private static final long TEST_DATE = 0;
     private static final long TEST_DURATION = 0;
+    /** About the size of ten minutes of voicemail at 64kbps. */
+    private static final int LONG_VOICEMAIL_BYTES = 5 * 1024 * 1024;
     private static final int TEST_SERVER_ID = 1;
     private static final int TEST_ID = 2;
     private static final Uri ARCHIVED_VOICEMAIL_URI =
@@ -94,7 +99,7 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
 
     private final MockContentResolver mContentResolver = new MockContentResolver();
     private final MockContentProvider mArchiveContentProvider = new TestVoicemailContentProvider();
-    private final MockContentProvider mVoicemailContentProvider =
+    private final TestVoicemailContentProvider mVoicemailContentProvider =
             new TestVoicemailContentProvider();
     private final MockContentProvider mCallLogContentProvider = new MockContentProvider();
     @Rule
@@ -106,6 +111,7 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
     @Override
     protected void setUp() throws Exception {
         super.setUp();
+        mTemporaryFolder.create();
         mFakeAsyncTaskExecutor = new FakeAsyncTaskExecutor(getInstrumentation());
         AsyncTaskExecutors.setFactoryForTest(mFakeAsyncTaskExecutor.getFactory());
         mContentResolver.addProvider(VoicemailArchiveContract.AUTHORITY, mArchiveContentProvider);
@@ -117,6 +123,7 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
     @Override
     protected void tearDown() throws Exception {
         AsyncTaskExecutors.setFactoryForTest(null);
+        mTemporaryFolder.delete();
         super.tearDown();
     }
 
@@ -188,6 +195,7 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
         newQueryCallLogInfo().returnRow(getCallLogContentValues());
         newVoicemailQuery().returnRow(getVoicemailContentValues());
         newVoicemailArchiveInsert();
+        newVoicemailArchiveCompleteUpdate();
         final OnArchiveVoicemailListener listener = mock(OnArchiveVoicemailListener.class);
         runTestOnUiThread(new Runnable() {
             @Override
@@ -201,7 +209,7 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
     }
 
     public void testArchiveVoicemailContent_ArchiveExists() throws Throwable {
-        newVoicemailArchiveExistsQuery().returnRow(getCombinedValuesWithId());
+        newVoicemailArchiveExistsQuery().returnRow(getArchiveExistsValues(true));
         final OnArchiveVoicemailListener listener = mock(OnArchiveVoicemailListener.class);
         runTestOnUiThread(new Runnable() {
             @Override
@@ -214,6 +222,38 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
         verifyQueries();
     }
 
+    public void testArchiveVoicemailContent_PartialArchiveCompleted() throws Throwable {
+        newVoicemailArchiveExistsQuery().returnRow(getArchiveExistsValues(false));
+        newVoicemailArchiveCompleteUpdate();
+        final OnArchiveVoicemailListener listener = mock(OnArchiveVoicemailListener.class);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mVoicemailAsyncTaskUtil.archiveVoicemailContent(listener, VOICEMAIL_URI);
+            }
+        });
+        mFakeAsyncTaskExecutor.runTask(VoicemailAsyncTaskUtil.Tasks.ARCHIVE_VOICEMAIL_CONTENT);
+        verify(listener).onArchiveVoicemail(ARCHIVED_VOICEMAIL_URI);
+        verifyQueries();
+    }
+
+    public void testArchiveVoicemailContent_PartialArchiveWithoutContent() throws Throwable {
+        newVoicemailArchiveExistsQuery().returnRow(getArchiveExistsValues(false));
+        mVoicemailContentProvider.mHasContent = false;
+        mArchiveContentProvider.expectDelete(ARCHIVED_VOICEMAIL_URI).returnRowsAffected(1);
+        final OnArchiveVoicemailListener listener = mock(OnArchiveVoicemailListener.class);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mVoicemailAsyncTaskUtil.archiveVoicemailContent(listener, VOICEMAIL_URI);
+            }
+        });
+        mFakeAsyncTaskExecutor.runTask(VoicemailAsyncTaskUtil.Tasks.ARCHIVE_VOICEMAIL_CONTENT);
+        // A partial copy is never handed out as the archived voicemail.
+        verify(listener).onArchiveVoicemail(null);
+        verifyQueries();
+    }
+
     public void testArchiveVoicemailContent_CallLogInfoNotExists() throws Throwable {
         newVoicemailArchiveExistsQuery().returnEmptyCursor();
         newQueryCallLogInfo().returnEmptyCursor();
@@ -230,6 +270,90 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
         verifyQueries();
     }
 
+    public void testCopyVoicemailContent_LongVoicemail() throws Exception {
+        final File source = newContentFile(LONG_VOICEMAIL_BYTES);
+        final File target = mTemporaryFolder.newFile();
+        final VoicemailAsyncTaskUtil util = newFileBackedUtil(source, target);
+
+        final Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        final long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        util.copyVoicemailContent(VOICEMAIL_URI, ARCHIVED_VOICEMAIL_URI);
+        final long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        android.util.Log.i("VoicemailAsyncTaskUtilTest", "Copied " + LONG_VOICEMAIL_BYTES
+                + " bytes, heap grew by " + (heapAfter - heapBefore) + " bytes");
+
+        assertSameContent(source, target);
+    }
+
+    public void testCopyVoicemailContent_ResumesPartialCopy() throws Exception {
+        final File source = newContentFile(LONG_VOICEMAIL_BYTES);
+        final File target = mTemporaryFolder.newFile();
+        final VoicemailAsyncTaskUtil util = newFileBackedUtil(source, target);
+
+        // The start of the content, as left by a process that died during the copy.
+        try (RandomAccessFile in = new RandomAccessFile(source, "r");
+             FileOutputStream out = new FileOutputStream(target)) {
+            final byte[] buffer = new byte[LONG_VOICEMAIL_BYTES / 3];
+            in.readFully(buffer);
+            out.write(buffer);
+        }
+
+        util.copyVoicemailContent(VOICEMAIL_URI, ARCHIVED_VOICEMAIL_URI);
+        assertSameContent(source, target);
+    }
+
+    private VoicemailAsyncTaskUtil newFileBackedUtil(File voicemailFile, File archiveFile) {
+        final MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider(VoicemailContract.AUTHORITY, new FileProvider(voicemailFile));
+        resolver.addProvider(VoicemailArchiveContract.AUTHORITY, new FileProvider(archiveFile));
+        return new VoicemailAsyncTaskUtil(resolver);
+    }
+
+    private File newContentFile(int size) throws IOException {
+        final File file = mTemporaryFolder.newFile();
+        final byte[] buffer = new byte[64 * 1024];
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            for (int written = 0; written < size; written += buffer.length) {
+                for (int i = 0; i < buffer.length; i++) {
+                    buffer[i] = (byte) (written / buffer.length + i);
+                }
+                out.write(buffer, 0, Math.min(buffer.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    private static void assertSameContent(File expected, File actual) throws IOException {
+        assertEquals(expected.length(), actual.length());
+        final byte[] expectedBuffer = new byte[64 * 1024];
+        final byte[] actualBuffer = new byte[expectedBuffer.length];
+        try (RandomAccessFile expectedIn = new RandomAccessFile(expected, "r");
+             RandomAccessFile actualIn = new RandomAccessFile(actual, "r")) {
+            int read;
+            while ((read = expectedIn.read(expectedBuffer)) > 0) {
+                actualIn.readFully(actualBuffer, 0, read);
+                for (int i = 0; i < read; i++) {
+                    assertEquals(expectedBuffer[i], actualBuffer[i]);
+                }
+            }
+        }
+    }
+
+    /** Serves one file, for any URI of its authority. */
+    private static class FileProvider extends android.test.mock.MockContentProvider {
+        private final File mFile;
+
+        FileProvider(File file) {
+            mFile = file;
+        }
+
+        @Override
+        public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+            return ParcelFileDescriptor.open(mFile, ParcelFileDescriptor.parseMode(mode));
+        }
+    }
+
     private Query newVoicemailArchiveQuery() {
         return mArchiveContentProvider.expectQuery(ARCHIVED_VOICEMAIL_URI);
     }
@@ -254,7 +378,8 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
                 VoicemailArchiveContract.VoicemailArchive.CONTENT_URI)
                 .withSelection(VoicemailArchiveContract.VoicemailArchive.SERVER_ID + "="
                         + ContentUris.parseId(VOICEMAIL_URI), (String[]) null)
-                .withProjection(VoicemailArchiveContract.VoicemailArchive._ID);
+                .withProjection(VoicemailArchiveContract.VoicemailArchive._ID,
+                        VoicemailArchiveContract.VoicemailArchive.CONTENT_COMPLETE);
     }
 
     private void newVoicemailArchiveInsert() {
@@ -263,6 +388,13 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
                 ARCHIVED_VOICEMAIL_URI);
     }
 
+    private void newVoicemailArchiveCompleteUpdate() {
+        ContentValues values = new ContentValues();
+        values.put(VoicemailArchiveContract.VoicemailArchive.CONTENT_COMPLETE, true);
+        mArchiveContentProvider.expectUpdate(ARCHIVED_VOICEMAIL_URI, values, null, null)
+                .returnRowsAffected(1);
+    }
+
     private void newVoicemailArchiveNotExistsUpdateQuery(boolean status) {
         mArchiveContentProvider.expectUpdate(getFakeVoicemailUri(),
                 getArchiveStatusUpdateValues(status), null, null).returnRowsAffected(0);
@@ -341,9 +473,11 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
         return values;
     }
 
-    private static ContentValues getCombinedValuesWithId() {
-        ContentValues values = getCombinedContentValuesWithData();
+    private static ContentValues getArchiveExistsValues(boolean contentComplete) {
+        ContentValues values = new ContentValues();
         values.put(VoicemailArchiveContract.VoicemailArchive._ID, TEST_ID);
+        values.put(VoicemailArchiveContract.VoicemailArchive.CONTENT_COMPLETE,
+                contentComplete ? 1 : 0);
         return values;
     }
 
@@ -364,8 +498,14 @@ public class VoicemailAsyncTaskUtilTest extends InstrumentationTestCase {
     }
 
     private class TestVoicemailContentProvider extends MockContentProvider {
+        /** Whether the content can be opened; false as if it had been deleted. */
+        boolean mHasContent = true;
+
         @Override
         public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+            if (!mHasContent) {
+                throw new FileNotFoundException(uri.toString());
+            }
             int modeBits = ParcelFileDescriptor.parseMode(mode);
             try {
                 return ParcelFileDescriptor.open(mTemporaryFolder.newFile(), modeBits);
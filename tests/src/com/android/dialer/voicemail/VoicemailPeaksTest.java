@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.dialer.voicemail;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Unit tests for the PCM to peaks reduction of {@link VoicemailPeaks}.
+ */
+@SmallTest
+public class VoicemailPeaksTest extends AndroidTestCase {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int SAMPLES_PER_PEAK = SAMPLE_RATE * VoicemailPeaks.MILLIS_PER_PEAK / 1000;
+
+    public void testAccumulator_onePeakPerPeriod() {
+        final VoicemailPeaks.Accumulator accumulator =
+                new VoicemailPeaks.Accumulator(SAMPLE_RATE, 1);
+        final short[] samples = new short[SAMPLES_PER_PEAK * 3];
+        samples[10] = 1000;
+        samples[SAMPLES_PER_PEAK + 5] = -16384;
+        samples[2 * SAMPLES_PER_PEAK] = Short.MIN_VALUE;
+        // Fed in uneven pieces, as the decoder hands them out.
+        accumulator.add(ShortBuffer.wrap(samples, 0, 7));
+        accumulator.add(ShortBuffer.wrap(samples, 7, samples.length - 7));
+
+        final byte[] peaks = accumulator.finish();
+        assertEquals(3, peaks.length);
+        assertEquals(1000 >> 7, peaks[0] & 0xff);
+        assertEquals(16384 >> 7, peaks[1] & 0xff);
+        assertEquals(0xff, peaks[2] & 0xff);
+    }
+
+    public void testAccumulator_stereoAndPartialPeriod() {
+        final VoicemailPeaks.Accumulator accumulator =
+                new VoicemailPeaks.Accumulator(SAMPLE_RATE, 2);
+        // One and a half periods of interleaved stereo.
+        final short[] samples = new short[SAMPLES_PER_PEAK * 3];
+        samples[2 * SAMPLES_PER_PEAK - 1] = 2560;
+        samples[2 * SAMPLES_PER_PEAK] = 1280;
+        accumulator.add(ShortBuffer.wrap(samples));
+
+        final byte[] peaks = accumulator.finish();
+        assertEquals(2, peaks.length);
+        assertEquals(2560 >> 7, peaks[0] & 0xff);
+        assertEquals(1280 >> 7, peaks[1] & 0xff);
+    }
+
+    public void testAccumulator_noAudio() {
+        assertEquals(0, new VoicemailPeaks.Accumulator(SAMPLE_RATE, 1).finish().length);
+    }
+}
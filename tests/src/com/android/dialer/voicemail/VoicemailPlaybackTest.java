@@ -19,7 +19,10 @@ package com.android.dialer.voicemail;
 import android.content.ContentUris;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.VoicemailContract;
 import android.test.suitebuilder.annotation.Suppress;
+import android.util.Log;
 
 import com.android.dialer.calllog.CallLogActivity;
 import com.android.dialer.database.VoicemailArchiveContract;
@@ -31,6 +34,11 @@ import static com.android.dialer.voicemail.VoicemailPlaybackPresenter.Tasks.CHEC
  */
 public class VoicemailPlaybackTest
         extends VoicemailActivityInstrumentationTestCase2<CallLogActivity> {
+    private static final String TAG = "VoicemailPlaybackTest";
+    private static final long PREPARE_TIMEOUT_MS = 5000;
+    private static final long POLL_INTERVAL_MS = 10;
+
+    private Uri mNextVoicemailUri;
 
     public VoicemailPlaybackTest() {
         super(CallLogActivity.class);
@@ -45,6 +53,11 @@ public class VoicemailPlaybackTest
     @Override
     public void tearDown() throws Exception {
         cleanUpArchivedVoicemailUri();
+        if (mNextVoicemailUri != null) {
+            getContentResolver().delete(VoicemailContract.Voicemails.CONTENT_URI, "_ID = ?",
+                    new String[] { String.valueOf(ContentUris.parseId(mNextVoicemailUri)) });
+            mNextVoicemailUri = null;
+        }
         super.tearDown();
     }
 
@@ -99,6 +112,85 @@ public class VoicemailPlaybackTest
         assertVoicemailArchived();
     }
 
+    public void testSwitchVoicemail_preparedAhead() throws Throwable {
+        setUriForRealFileVoicemailEntry();
+        mNextVoicemailUri = insertRealFileVoicemailEntry();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPresenter.setNextVoicemailUri(mNextVoicemailUri);
+            }
+        });
+        setPlaybackViewForPresenter();
+        mFakeAsyncTaskExecutor.runTask(CHECK_FOR_CONTENT);
+        waitUntilPrepared();
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mPresenter.isPreparedAhead(mNextVoicemailUri);
+            }
+        });
+
+        // The player prepared ahead is handed over as soon as the content check completes.
+        final long preparedAheadStartMs = SystemClock.elapsedRealtime();
+        switchToVoicemail(mNextVoicemailUri);
+        assertTrue(mPresenter.isPrepared());
+        final long preparedAheadMs = SystemClock.elapsedRealtime() - preparedAheadStartMs;
+
+        // Nothing was prepared ahead for switching back.
+        final long coldStartMs = SystemClock.elapsedRealtime();
+        switchToVoicemail(mVoicemailUri);
+        waitUntilPrepared();
+        final long coldMs = SystemClock.elapsedRealtime() - coldStartMs;
+
+        Log.i(TAG, "Switching voicemails took " + preparedAheadMs + "ms when prepared ahead, "
+                + coldMs + "ms otherwise");
+    }
+
+    /** Switches voicemails the way expanding another row does. */
+    private void switchToVoicemail(Uri voicemailUri) throws Throwable {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPresenter.resetAll();
+            }
+        });
+        setPlaybackViewForPresenter(voicemailUri);
+        mFakeAsyncTaskExecutor.runTask(CHECK_FOR_CONTENT);
+    }
+
+    private void waitUntilPrepared() throws InterruptedException {
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mPresenter.isPrepared();
+            }
+        });
+    }
+
+    /** Polls {@code condition} on the main thread, where the media player calls back. */
+    private void waitUntil(final Condition condition) throws InterruptedException {
+        final long deadlineMs = SystemClock.elapsedRealtime() + PREPARE_TIMEOUT_MS;
+        final boolean[] isMet = new boolean[1];
+        while (true) {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    isMet[0] = condition.isMet();
+                }
+            });
+            if (isMet[0]) {
+                return;
+            }
+            assertTrue("Timed out preparing voicemail", SystemClock.elapsedRealtime() < deadlineMs);
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
     private void assertVoicemailArchived() {
         try (Cursor cursor = getArchivedVoicemailCursor()) {
             assertTrue(hasContent(cursor));
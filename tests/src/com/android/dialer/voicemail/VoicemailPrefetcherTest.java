@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.dialer.voicemail;
+
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.provider.VoicemailContract;
+import android.provider.VoicemailContract.Voicemails;
+import android.test.InstrumentationTestCase;
+import android.test.mock.MockContentResolver;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.contacts.common.test.mocks.MockContentProvider;
+import com.android.contacts.common.test.mocks.MockContentProvider.Query;
+import com.android.dialer.util.AsyncTaskExecutors;
+import com.android.dialer.util.FakeAsyncTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link VoicemailPrefetcher}, on a device that is charging.
+ */
+@SmallTest
+public class VoicemailPrefetcherTest extends InstrumentationTestCase {
+    private static final String[] PROJECTION = new String[] {
+            Voicemails._ID,
+            Voicemails.HAS_CONTENT,
+            Voicemails.DURATION
+    };
+    private static final int NO_CONTENT = 0;
+    private static final long NO_DURATION = 0;
+
+    private final MockContentResolver mContentResolver = new MockContentResolver();
+    private final MockContentProvider mVoicemailContentProvider = new MockContentProvider();
+    private final List<Uri> mFetchRequests = new ArrayList<>();
+
+    private FakeAsyncTaskExecutor mFakeAsyncTaskExecutor;
+    private VoicemailPrefetcher mPrefetcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFakeAsyncTaskExecutor = new FakeAsyncTaskExecutor(getInstrumentation());
+        AsyncTaskExecutors.setFactoryForTest(mFakeAsyncTaskExecutor.getFactory());
+        mContentResolver.addProvider(VoicemailContract.AUTHORITY, mVoicemailContentProvider);
+        mPrefetcher = new VoicemailPrefetcher(
+                new ContextWrapper(getInstrumentation().getTargetContext()) {
+                    @Override
+                    public ContentResolver getContentResolver() {
+                        return mContentResolver;
+                    }
+
+                    @Override
+                    public Intent registerReceiver(BroadcastReceiver receiver,
+                            IntentFilter filter) {
+                        return new Intent(Intent.ACTION_BATTERY_CHANGED).putExtra(
+                                BatteryManager.EXTRA_PLUGGED, BatteryManager.BATTERY_PLUGGED_AC);
+                    }
+
+                    @Override
+                    public void sendBroadcast(Intent intent) {
+                        assertEquals(VoicemailContract.ACTION_FETCH_VOICEMAIL,
+                                intent.getAction());
+                        synchronized (mFetchRequests) {
+                            mFetchRequests.add(intent.getData());
+                        }
+                    }
+                });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        AsyncTaskExecutors.setFactoryForTest(null);
+        super.tearDown();
+    }
+
+    public void testPrefetchRecent_limitedToPrefetchCount() throws Throwable {
+        final Query query = newRecentQuery();
+        for (int id = 1; id <= VoicemailPrefetcher.PREFETCH_COUNT + 2; id++) {
+            query.returnRow(id, NO_CONTENT, NO_DURATION);
+        }
+
+        prefetchRecent();
+
+        assertFetchRequests(1, 2, 3);
+        mVoicemailContentProvider.verify();
+    }
+
+    public void testPrefetchRecent_skipsHandledVoicemails() throws Throwable {
+        mVoicemailContentProvider.expectQuery(getVoicemailUri(1)).withProjection(PROJECTION)
+                .withAnySelection().returnRow(1, NO_CONTENT, NO_DURATION);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPrefetcher.onVoicemailVisible(getVoicemailUri(1));
+            }
+        });
+        mFakeAsyncTaskExecutor.runTask(VoicemailPrefetcher.Tasks.PREFETCH_VOICEMAIL);
+
+        newRecentQuery()
+                .returnRow(1, NO_CONTENT, NO_DURATION)
+                .returnRow(2, NO_CONTENT, NO_DURATION)
+                .returnRow(3, NO_CONTENT, NO_DURATION)
+                .returnRow(4, NO_CONTENT, NO_DURATION);
+        prefetchRecent();
+
+        // The first voicemail was handled when its row was shown, and still counts as one of the
+        // newest.
+        assertFetchRequests(1, 2, 3);
+        mVoicemailContentProvider.verify();
+    }
+
+    private Query newRecentQuery() {
+        return mVoicemailContentProvider.expectQuery(Voicemails.CONTENT_URI)
+                .withProjection(PROJECTION)
+                .withSelection(Voicemails.IS_READ + "=0 AND " + Voicemails.DELETED + "=0",
+                        (String[]) null)
+                .withSortOrder(Voicemails.DATE + " DESC");
+    }
+
+    private void prefetchRecent() throws Throwable {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPrefetcher.prefetchRecent();
+            }
+        });
+        mFakeAsyncTaskExecutor.runTask(VoicemailPrefetcher.Tasks.PREFETCH_RECENT);
+    }
+
+    private void assertFetchRequests(long... ids) {
+        final List<Uri> expected = new ArrayList<>();
+        for (long id : ids) {
+            expected.add(getVoicemailUri(id));
+        }
+        synchronized (mFetchRequests) {
+            assertEquals(expected, mFetchRequests);
+        }
+    }
+
+    private static Uri getVoicemailUri(long id) {
+        return ContentUris.withAppendedId(Voicemails.CONTENT_URI, id);
+    }
+}